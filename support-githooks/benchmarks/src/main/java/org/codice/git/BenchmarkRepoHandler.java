@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory repository handler providing a generated blacklist and diff such that the benchmarks
+ * don't measure any I/Os.
+ */
+public class BenchmarkRepoHandler extends RepositoryHandler {
+    private final Map<String, Pattern> dirtyWords = new LinkedHashMap<String, Pattern>();
+
+    private final String diff;
+
+    private final Map<String, String> cfg = new HashMap<String, String>();
+
+    public BenchmarkRepoHandler(List<String> words, String diff) {
+        super(null);
+        for (final String w: words) {
+            dirtyWords.put(w, getPatternFor(w));
+        }
+        this.diff = diff;
+    }
+
+    /**
+     * Compiles the pattern for the specified dirty word as it is done when loading the blacklist.
+     *
+     * @param dirtyWord the dirty word to compile
+     * @return the corresponding pattern
+     */
+    public Pattern compile(String dirtyWord) {
+        return getPatternFor(dirtyWord);
+    }
+
+    @Override
+    public File getMetadir() {
+        return null;
+    }
+
+    @Override
+    public Map<String, Pattern> getDirtyWords() {
+        return dirtyWords;
+    }
+
+    @Override
+    public Map<String, Map<String, Pattern>> getScopedDirtyWords() {
+        return Collections.singletonMap(RepositoryHandler.GLOBAL_SCOPE, dirtyWords);
+    }
+
+    @Override
+    public String getFileAsString(String filename) throws Exception {
+        throw new FileNotFoundException(filename);
+    }
+
+    @Override
+    public String getDiff() {
+        return diff;
+    }
+
+    @Override
+    public String getConfigString(String section, String subsection, String key) {
+        return cfg.get(section + ':' + subsection + ':' + key);
+    }
+
+    @Override
+    public void setConfigString(String section, String subsection, String key, String value) {
+        cfg.put(section + ':' + subsection + ':' + key, value);
+    }
+}
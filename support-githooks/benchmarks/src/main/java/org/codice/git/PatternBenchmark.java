@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of loading a blacklist: compiling the pattern for each dirty word with
+ * {@link RepositoryHandler#getPatternFor(String)} and building the {@link DirtyWordMatcher} from
+ * them. Each operation processes the complete blacklist.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int words;
+
+    @Param({"0", "10", "100"})
+    public int regexPercent;
+
+    private List<String> blacklist;
+
+    private BenchmarkRepoHandler handler;
+
+    @Setup
+    public void setUp() {
+        SyntheticData.quietLogging();
+        this.blacklist = SyntheticData.words(words, regexPercent, new Random(SyntheticData.SEED));
+        this.handler = new BenchmarkRepoHandler(blacklist, "");
+    }
+
+    @Benchmark
+    public void getPatternFor(Blackhole bh) {
+        for (final String w: blacklist) {
+            bh.consume(handler.compile(w));
+        }
+    }
+
+    @Benchmark
+    public DirtyWordMatcher buildMatcher() {
+        return new DirtyWordMatcher(handler.getDirtyWords());
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generates reproducible blacklists and diffs for the benchmarks. The same seed always generates the
+ * same data such that baselines can be compared across runs and implementations.
+ * <p/>
+ * Blacklisted words are made of syllables that don't appear in the vocabulary used to generate the
+ * content of the diffs such that the generated diffs are clean unless explicitly made dirty.
+ */
+public final class SyntheticData {
+    public static final long SEED = 0x5eedL;
+
+    // the approximate size of each file in the generated diffs
+    private static final int FILE_SIZE = 4096;
+
+    private static final String[] SYLLABLES = {"zor", "qua", "vex", "kly", "jub", "wix", "pyz", "gro",
+            "fyx", "zuk", "xal", "quo", "vyn", "kez", "jor", "wub"};
+
+    private static final String[] VOCABULARY = {"final", "String", "return", "public", "private",
+            "static", "void", "int", "new", "this", "if", "else", "for", "while", "null", "true",
+            "false", "List", "Map", "get", "set", "add", "value", "result", "index", "count", "name",
+            "path", "file", "handler", "builder", "(", ")", "{", "}", ";", "=", "+", ".", ",",
+            "//", "the", "of", "to", "a", "is", "with", "from", "and", "or"};
+
+    // the logger is only weakly referenced by the log manager so keep it around
+    private static final Logger LOGGER = Logger.getLogger("org.codice.git");
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Silences the logging done by the hooks which is otherwise configured to log everything to a
+     * file and would dominate the measurements.
+     */
+    public static void quietLogging() {
+        LOGGER.setLevel(Level.WARNING);
+    }
+
+    /**
+     * Generates a blacklist.
+     *
+     * @param count        the number of words to generate
+     * @param regexPercent the percentage of the words that should be regex patterns (i.e. prefixed
+     *                     with {@link RepositoryHandler#REGEX_PREFIX})
+     * @param random       the random generator to use
+     * @return the corresponding words
+     */
+    public static List<String> words(int count, int regexPercent, Random random) {
+        final Set<String> words = new LinkedHashSet<String>();
+        final int regexes = count * regexPercent / 100;
+
+        while (words.size() < count - regexes) {
+            words.add(SyntheticData.word(random));
+        }
+        while (words.size() < count) {
+            final String w = SyntheticData.word(random);
+
+            switch (random.nextInt(3)) {
+                case 0:
+                    words.add(RepositoryHandler.REGEX_PREFIX + w + "[0-9]{2,4}");
+                    break;
+                case 1:
+                    words.add(RepositoryHandler.REGEX_PREFIX + w + "\\s+" + SyntheticData.word(random));
+                    break;
+                default:
+                    words.add(RepositoryHandler.REGEX_PREFIX + w.substring(0, 3) + "[a-z]*" + w.substring(3));
+                    break;
+            }
+        }
+        return new ArrayList<String>(words);
+    }
+
+    /**
+     * Generates a diff in the same format as {@link RepositoryHandler#getDiff()} which only reports
+     * added lines.
+     *
+     * @param size   the approximate number of characters to generate
+     * @param dirty  a dirty word to add to the last file or <code>null</code> to keep the diff clean
+     * @param random the random generator to use
+     * @return the corresponding diff
+     */
+    public static String diff(int size, String dirty, Random random) {
+        final StringBuilder sb = new StringBuilder(size + 256);
+
+        for (int f = 0; sb.length() < size; f++) {
+            final int end = Math.min(size, sb.length() + FILE_SIZE);
+
+            sb.append("diff --git a/src/File")
+                    .append(f)
+                    .append(".java b/src/File")
+                    .append(f)
+                    .append(".java\n+++ b/src/File")
+                    .append(f)
+                    .append(".java\n");
+            while (sb.length() < end) {
+                sb.append('+');
+                SyntheticData.line(sb, random);
+                sb.append('\n');
+            }
+        }
+        if (dirty != null) {
+            sb.append('+')
+                    .append(dirty)
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Extracts the added lines from the specified diff as they would be provided to a
+     * {@link DiffListener}.
+     *
+     * @param diff the diff as returned by {@link #diff}
+     * @return the added lines without their '+' prefix
+     */
+    public static String content(String diff) {
+        final StringBuilder sb = new StringBuilder(diff.length());
+
+        for (final String line: diff.split("\n")) {
+            if (line.startsWith("+") && !line.startsWith("+++ ")) {
+                sb.append(line, 1, line.length())
+                        .append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String word(Random random) {
+        final StringBuilder sb = new StringBuilder(12);
+        final int n = 2 + random.nextInt(3);
+
+        for (int i = 0; i < n; i++) {
+            sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static void line(StringBuilder sb, Random random) {
+        final int n = 4 + random.nextInt(12);
+
+        for (int i = 0; i < 4 * random.nextInt(3); i++) {
+            sb.append(' ');
+        }
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.codice.git.BenchmarkRepoHandler;
+import org.codice.git.SyntheticData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the scanning of added lines for dirty words, both directly through
+ * {@link Hook#containsDirtyWords(CharSequence, Set)} (decoded text),
+ * {@link Hook#containsDirtyWords(String, byte[], int, int, Set)} (raw text as streamed from the diff),
+ * and end to end through {@link PreCommit#executeHook(String[])} which also includes streaming the diff file by file.
+ * Each operation scans the complete generated diff; divide the throughput by <code>diffSize</code>
+ * to compare the per character cost across sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int words;
+
+    @Param({"0", "10"})
+    public int regexPercent;
+
+    @Param({"1024", "65536", "1048576"})
+    public int diffSize;
+
+    // whether the last file of the diff contains one of the dirty words
+    @Param({"false", "true"})
+    public boolean dirty;
+
+    private String content;
+
+    private byte[] raw;
+
+    private PreCommit hook;
+
+    private PrintStream out;
+
+    @Setup
+    public void setUp() throws Exception {
+        final Random random = new Random(SyntheticData.SEED);
+        final List<String> blacklist = SyntheticData.words(words, regexPercent, random);
+        final String literal = blacklist.get(0); // literals are generated first
+        final String diff = SyntheticData.diff(diffSize, dirty ? literal : null, random);
+
+        this.content = SyntheticData.content(diff);
+        this.raw = content.getBytes(StandardCharsets.UTF_8);
+        this.hook = new PreCommit(new BenchmarkRepoHandler(blacklist, diff));
+        SyntheticData.quietLogging();
+        // the hook reports its result on stdout
+        this.out = System.out;
+        System.setOut(new PrintStream((OutputStream) new NullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public boolean containsDirtyWords() throws Exception {
+        return hook.containsDirtyWords(content, new HashSet<String>());
+    }
+
+    @Benchmark
+    public boolean containsDirtyWordsRaw() throws Exception {
+        return hook.containsDirtyWords("dirty-file", raw, 0, raw.length, new HashSet<String>());
+    }
+
+    @Benchmark
+    public boolean executeHook() throws Exception {
+        return hook.executeHook(new String[0]);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the paths and the content of all files found while auditing a repository (see
+ * {@link RepositoryHandler#streamBlobs} and {@link RepositoryHandler#streamWorkTree}).
+ * <p/>
+ * {@link #path} is called once for each distinct path of a file or a directory from the thread
+ * walking the repository while {@link #content} is called once for each distinct content and
+ * {@link #scope}, potentially from different threads concurrently; implementations must be
+ * thread-safe.
+ */
+public interface AuditListener {
+    /**
+     * Called the first time a given path is found.
+     *
+     * @param commit the hex id of the first commit where the path was found or <code>null</code>
+     *               when auditing the working tree
+     * @param path   the path of the file or directory in the repository
+     * @throws IOException if an error occurs while processing the path
+     */
+    public void path(String commit, String path) throws IOException;
+
+    /**
+     * Called from the thread walking the repository to get the scope of the dirty words checked in
+     * the specified file. A content already reported for a file in the same scope is not reported
+     * again for other files.
+     * <p/>
+     * The default implementation returns {@link RepositoryHandler#GLOBAL_SCOPE} for all files.
+     *
+     * @param path the path of the file in the repository
+     * @return the corresponding scope
+     */
+    public default String scope(String path) {
+        return RepositoryHandler.GLOBAL_SCOPE;
+    }
+
+    /**
+     * Called with the content of a file the first time it is found. Large files are reported in
+     * consecutive chunks from the same thread, each one ending on a line boundary unless a single
+     * line is larger than a chunk.
+     * <p/>
+     * <i>Note:</i> The provided buffer is reused once this method returns and should not be retained.
+     *
+     * @param commit the hex id of the first commit where the content was found or <code>null</code>
+     *               when auditing the working tree
+     * @param path   the path of the file where the content was first found
+     * @param raw    the buffer containing the raw content of the file
+     * @param start  the index of the first byte of the content in <code>raw</code>
+     * @param end    the index after the last byte of the content in <code>raw</code>
+     * @throws IOException if an error occurs while processing the content
+     */
+    public void content(String commit, String path, byte[] raw, int start, int end)
+            throws IOException;
+
+    /**
+     * Called with the content of a large file the first time it is found, in consecutive chunks
+     * from the same thread, each one ending on a line boundary unless a single line is larger than
+     * a chunk. The buffers are typically memory mapped from the file.
+     * <p/>
+     * The default implementation copies the content from the buffer's position to its limit and
+     * calls {@link #content(String, String, byte[], int, int)}. Implementations able to work on the
+     * buffer directly can override it to avoid copying it on the heap.
+     * <p/>
+     * <i>Note:</i> The provided buffer should not be retained once this method returns.
+     *
+     * @param commit the hex id of the first commit where the content was found or <code>null</code>
+     *               when auditing the working tree
+     * @param path   the path of the file where the content was first found
+     * @param buf    the buffer containing the raw content of the file
+     * @throws IOException if an error occurs while processing the content
+     */
+    public default void content(String commit, String path, ByteBuffer buf) throws IOException {
+        if (buf.hasArray()) {
+            content(commit, path, buf.array(), buf.arrayOffset() + buf.position(), buf.arrayOffset() + buf.limit());
+        } else {
+            final byte[] raw = new byte[buf.remaining()];
+
+            buf.duplicate()
+                    .get(raw);
+            content(commit, path, raw, 0, raw.length);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Keeps track of the blobs whose changes were already scanned and found to be clean for a given set
+ * of dirty words such that they don't have to be scanned again.
+ * <p/>
+ * Since only the added lines are scanned, a blob is only known to be entirely clean if it was added
+ * or if it was derived from a blob which was itself entirely clean. Otherwise, only the change from
+ * the old blob to the new one is known to be clean. Both cases are recorded in the index.
+ * <p/>
+ * As dirty words can be scoped to directories (see {@link RepositoryHandler#getScopedDirtyWords()}),
+ * a change is only known to be clean for the scope it was scanned with. Entries for scoped
+ * directories are therefore prefixed with their scope.
+ * <p/>
+ * The index is stored as a text file where the first line is the hash of the dirty words sources
+ * (see {@link RepositoryHandler#getDirtyWordsHash()}) followed by one entry per line. The whole index
+ * is discarded whenever the hash changes. When full, the least recently used entries are dropped.
+ */
+public class CleanBlobIndex {
+    private static final Logger LOGGER = Logger.getLogger(CleanBlobIndex.class.getName());
+
+    private final File file;
+
+    private final String hash;
+
+    private final int capacity;
+
+    private final Set<String> entries = new LinkedHashSet<String>();
+
+    private boolean modified = false;
+
+    /**
+     * Instantiates a new index and loads its entries from the specified file if it was generated for
+     * the same dirty words.
+     *
+     * @param file     the file where the index is stored
+     * @param hash     the hash of the dirty words sources
+     * @param capacity the maximum number of entries to keep
+     */
+    public CleanBlobIndex(File file, String hash, int capacity) {
+        this.file = file;
+        this.hash = hash;
+        this.capacity = capacity;
+        if (file.exists()) {
+            try {
+                final List<String> lines = FileUtils.readLines(file, Charsets.UTF_8);
+
+                if (!lines.isEmpty() && hash.equals(lines.get(0))) {
+                    entries.addAll(lines.subList(Math.max(1, lines.size() - capacity), lines.size()));
+                    LOGGER.log(Level.FINE, "Loaded {0} clean blob entries", entries.size());
+                } else {
+                    LOGGER.log(Level.FINE, "Clean blob index is out of date: {0}", file);
+                    this.modified = true;
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Unable to read clean blob index from: " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Checks if changing a file from the specified old blob to the specified new one is known to be
+     * clean.
+     *
+     * @param oldId the id of the old blob or <code>null</code> if the file is being added
+     * @param newId the id of the new blob
+     * @return <code>true</code> if the change is known to be clean; <code>false</code> otherwise
+     */
+    public boolean isClean(String oldId, String newId) {
+        return isClean(RepositoryHandler.GLOBAL_SCOPE, oldId, newId);
+    }
+
+    /**
+     * Checks if changing a file from the specified old blob to the specified new one is known to be
+     * clean for the dirty words of the given scope.
+     *
+     * @param scope the scope of the dirty words that apply to the file
+     * @param oldId the id of the old blob or <code>null</code> if the file is being added
+     * @param newId the id of the new blob
+     * @return <code>true</code> if the change is known to be clean; <code>false</code> otherwise
+     */
+    public synchronized boolean isClean(String scope, String oldId, String newId) {
+        return touch(CleanBlobIndex.key(scope, newId))
+                || ((oldId != null) && touch(CleanBlobIndex.key(scope, oldId + ' ' + newId)));
+    }
+
+    /**
+     * Records that changing a file from the specified old blob to the specified new one was found
+     * to be clean.
+     *
+     * @param oldId the id of the old blob or <code>null</code> if the file is being added
+     * @param newId the id of the new blob
+     */
+    public void addClean(String oldId, String newId) {
+        addClean(RepositoryHandler.GLOBAL_SCOPE, oldId, newId);
+    }
+
+    /**
+     * Records that changing a file from the specified old blob to the specified new one was found
+     * to be clean for the dirty words of the given scope.
+     *
+     * @param scope the scope of the dirty words that apply to the file
+     * @param oldId the id of the old blob or <code>null</code> if the file is being added
+     * @param newId the id of the new blob
+     */
+    public synchronized void addClean(String scope, String oldId, String newId) {
+        if ((oldId == null) || entries.contains(CleanBlobIndex.key(scope, oldId))) {
+            add(CleanBlobIndex.key(scope, newId));
+        } else {
+            add(CleanBlobIndex.key(scope, oldId + ' ' + newId));
+        }
+    }
+
+    /**
+     * Gets the number of entries in this index.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Saves this index if it was modified. Errors are logged and otherwise ignored as the index is only
+     * an optimization.
+     */
+    public synchronized void save() {
+        if (!modified) {
+            return;
+        }
+        File tmp = null;
+
+        try {
+            final List<String> lines = new ArrayList<String>(entries.size() + 1);
+
+            lines.add(hash);
+            lines.addAll(entries);
+            FileUtils.forceMkdir(file.getParentFile());
+            tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+            FileUtils.writeLines(tmp, Charsets.UTF_8.name(), lines, "\n");
+            // replace atomically so concurrent hooks never see a partial file
+            Files.move(tmp.toPath(),
+                    file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            this.modified = false;
+            LOGGER.log(Level.FINE, "Saved {0} clean blob entries", entries.size());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to save clean blob index in: " + file, e);
+        } finally {
+            FileUtils.deleteQuietly(tmp);
+        }
+    }
+
+    private static String key(String scope, String entry) {
+        // entries for the global scope are kept as is to stay compatible with existing indexes
+        return scope.isEmpty() ? entry : (scope + ' ' + entry);
+    }
+
+    private boolean touch(String entry) {
+        if (entries.remove(entry)) { // move it to the end as it was just used
+            entries.add(entry);
+            this.modified = true;
+            return true;
+        }
+        return false;
+    }
+
+    private void add(String entry) {
+        entries.remove(entry);
+        entries.add(entry);
+        this.modified = true;
+        for (final Iterator<String> i = entries.iterator(); (entries.size() > capacity) && i.hasNext(); ) {
+            i.next();
+            i.remove();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import java.io.IOException;
+
+/**
+ * Receives the commit messages and new content for each commit in a revision range as they are
+ * being walked (see {@link RepositoryHandler#streamCommits}).
+ * <p/>
+ * For each commit, {@link #startCommit} is called first followed by the files with changes in that
+ * commit, reported to the returned diff listener, and finally {@link #endCommit}. All calls for a
+ * given commit are made in order from the same thread but different commits might be streamed
+ * concurrently from different threads in which case implementations must be thread-safe.
+ */
+public interface CommitListener {
+    /**
+     * Called when a new commit starts.
+     *
+     * @param id      the hex id of the commit
+     * @param message the full commit message
+     * @return the listener to notify of the new content in the commit or <code>null</code> to skip
+     * its content
+     * @throws IOException if an error occurs while processing the commit
+     */
+    public DiffListener startCommit(String id, String message) throws IOException;
+
+    /**
+     * Called when all changes in a commit have been reported.
+     *
+     * @param id the hex id of the commit
+     * @throws IOException if an error occurs while processing the commit
+     */
+    public void endCommit(String id) throws IOException;
+}
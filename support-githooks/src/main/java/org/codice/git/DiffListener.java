@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import java.io.IOException;
+
+/**
+ * Receives the new content from a diff as it is being generated, file by file.
+ * <p/>
+ * For each file with changes, {@link #startFile} is called first followed by zero or more calls to
+ * {@link #addedLines} and finally {@link #endFile}. All calls for a given file are made in order from
+ * the same thread but different files might be streamed concurrently from different threads (see
+ * {@link RepositoryHandler#streamDiff(DiffListener, int)}) in which case implementations must be
+ * thread-safe.
+ */
+public interface DiffListener {
+    /**
+     * Called when the diff for a new file starts.
+     *
+     * @param path the path of the file in the repository
+     * @throws IOException if an error occurs while processing the file
+     */
+    public void startFile(String path) throws IOException;
+
+    /**
+     * Called after {@link #startFile} when the ids of the blobs being compared are known to check
+     * if the content of the file can be skipped. When skipped, {@link #endFile} is called right away.
+     * <p/>
+     * The default implementation never skips any content.
+     *
+     * @param path  the path of the file in the repository
+     * @param oldId the hex id of the old blob or <code>null</code> if the file is being added
+     * @param newId the hex id of the new blob
+     * @return <code>true</code> to skip the content of the file; <code>false</code> to have it
+     * streamed
+     * @throws IOException if an error occurs while processing the file
+     */
+    public default boolean skipContent(String path, String oldId, String newId) throws IOException {
+        return false;
+    }
+
+    /**
+     * Called with a block of lines that were added to a file (e.g. one hunk). Each line
+     * is terminated with a new line character.
+     * <p/>
+     * <i>Note:</i> The provided character sequence is reused once this method returns and should not
+     * be retained.
+     *
+     * @param path  the path of the file in the repository
+     * @param lines the lines added to the file
+     * @throws IOException if an error occurs while processing the lines
+     */
+    public void addedLines(String path, CharSequence lines) throws IOException;
+
+    /**
+     * Called with a block of lines that were added to a file (e.g. one hunk) in their raw encoded
+     * form as stored in the repository. Each line is terminated with a new line character.
+     * <p/>
+     * The default implementation decodes the lines the same way git content is decoded and calls
+     * {@link #addedLines(String, CharSequence)}. Implementations able to work on the raw bytes can
+     * override it to avoid decoding.
+     * <p/>
+     * <i>Note:</i> The provided buffer is reused once this method returns and should not be retained.
+     *
+     * @param path  the path of the file in the repository
+     * @param raw   the buffer containing the lines added to the file
+     * @param start the index of the first byte of the lines in <code>raw</code>
+     * @param end   the index after the last byte of the lines in <code>raw</code>
+     * @throws IOException if an error occurs while processing the lines
+     */
+    public default void addedLines(String path, byte[] raw, int start, int end) throws IOException {
+        addedLines(path, DirtyWordMatcher.decode(raw, start, end));
+    }
+
+    /**
+     * Called with a block of lines that were added to a file (e.g. one hunk) in their raw encoded
+     * form as stored in the repository along with the line number of each one in the new content
+     * of the file. Each line is terminated with a new line character.
+     * <p/>
+     * The default implementation ignores the line numbers and calls
+     * {@link #addedLines(String, byte[], int, int)}.
+     * <p/>
+     * <i>Note:</i> The provided buffer is reused once this method returns and should not be retained.
+     *
+     * @param path        the path of the file in the repository
+     * @param raw         the buffer containing the lines added to the file
+     * @param start       the index of the first byte of the lines in <code>raw</code>
+     * @param end         the index after the last byte of the lines in <code>raw</code>
+     * @param lineNumbers the 1-based line number in the new content of each line in the block
+     * @throws IOException if an error occurs while processing the lines
+     */
+    public default void addedLines(String path, byte[] raw, int start, int end, int[] lineNumbers)
+            throws IOException {
+        addedLines(path, raw, start, end);
+    }
+
+    /**
+     * Called when the diff for a file is complete.
+     *
+     * @param path the path of the file in the repository
+     * @throws IOException if an error occurs while processing the file
+     */
+    public void endFile(String path) throws IOException;
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * On-disk cache for a compiled {@link DirtyWordRouter}. The router is stored along with the format
+ * version of the cache and the hash of all the files it was built from (see
+ * {@link RepositoryHandler#getDirtyWordsHash()}) and is only reloaded if both still match.
+ * <p/>
+ * The cache is only an optimization; any errors reading or writing it are logged and otherwise
+ * ignored.
+ */
+class DirtyWordCache {
+    /**
+     * Version of the cached format. This must be bumped whenever the serialized form or the meaning
+     * of {@link DirtyWordMatcher} or {@link DirtyWordRouter} changes (e.g. how entries are parsed,
+     * compiled, or matched) such that routers cached by a previous version are never reused.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    private static final Logger LOGGER = Logger.getLogger(DirtyWordCache.class.getName());
+
+    private final File file;
+
+    /**
+     * Instantiates a new cache stored in the specified file.
+     *
+     * @param file the cache file
+     */
+    DirtyWordCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Checks if routers can be cached on disk. Native executables of the hooks (see
+     * <code>org.codice.git.hook.Hook#isNativeImage</code>) are built without any java serialization
+     * configuration for the routers and would fail with an error rather than an exception.
+     *
+     * @return <code>true</code> if routers can be cached; <code>false</code> otherwise
+     */
+    static boolean isSupported() {
+        return System.getProperty("org.graalvm.nativeimage.imagecode") == null;
+    }
+
+    /**
+     * Loads the cached router if it was built from sources with the specified hash.
+     *
+     * @param hash the hash of the current dirty words sources
+     * @return the cached router or <code>null</code> if none or if it is out of date
+     */
+    DirtyWordRouter load(String hash) {
+        if (!file.exists()) {
+            return null;
+        }
+        ObjectInputStream in = null;
+
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            final int version = in.readInt();
+
+            if (version != DirtyWordCache.FORMAT_VERSION) {
+                LOGGER.log(Level.FINE,
+                        "Cached dirty words are from format version {0}: {1}",
+                        new Object[] {version, file});
+                return null;
+            }
+            if (!hash.equals(in.readUTF())) {
+                LOGGER.log(Level.FINE, "Cached dirty words are out of date: {0}", file);
+                return null;
+            }
+            final DirtyWordRouter router = (DirtyWordRouter) in.readObject();
+
+            LOGGER.log(Level.FINE, "Loaded cached dirty words from: {0}", file);
+            return router;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // most likely written by an older version; it will simply be replaced
+            LOGGER.log(Level.FINE, "Unable to read cached dirty words from: " + file, e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Saves the specified router along with the current format version and the hash of the sources
+     * it was built from.
+     *
+     * @param hash   the hash of the dirty words sources
+     * @param router the router to cache
+     */
+    void save(String hash, DirtyWordRouter router) {
+        File tmp = null;
+        ObjectOutputStream out = null;
+
+        try {
+            FileUtils.forceMkdir(file.getParentFile());
+            tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(DirtyWordCache.FORMAT_VERSION);
+            out.writeUTF(hash);
+            out.writeObject(router);
+            out.close();
+            out = null;
+            // replace atomically so concurrent hooks never see a partial file
+            Files.move(tmp.toPath(),
+                    file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            LOGGER.log(Level.FINE, "Cached dirty words in: {0}", file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to cache dirty words in: " + file, e);
+        } finally {
+            IOUtils.closeQuietly(out);
+            FileUtils.deleteQuietly(tmp);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+/**
+ * A dirty word found at a specific location in a file.
+ */
+public class DirtyWordHit implements Comparable<DirtyWordHit> {
+    private final String path;
+
+    private final int line;
+
+    private final int column;
+
+    private final String word;
+
+    /**
+     * Instantiates a new hit.
+     *
+     * @param path   the path of the file in the repository
+     * @param line   the 1-based line number in the file
+     * @param column the 1-based column in the line where the match starts
+     * @param word   the dirty word as returned by {@link RepositoryHandler#getDirtyWords()}
+     */
+    public DirtyWordHit(String path, int line, int column, String word) {
+        this.path = path;
+        this.line = line;
+        this.column = column;
+        this.word = word;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    @Override
+    public int compareTo(DirtyWordHit h) {
+        if (line != h.line) {
+            return (line < h.line) ? -1 : 1;
+        }
+        if (column != h.column) {
+            return (column < h.column) ? -1 : 1;
+        }
+        return word.compareTo(h.word);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DirtyWordHit)) {
+            return false;
+        }
+        final DirtyWordHit h = (DirtyWordHit) o;
+
+        return (line == h.line) && (column == h.column) && word.equals(h.word) && ((path != null) ?
+                path.equals(h.path) :
+                (h.path == null));
+    }
+
+    @Override
+    public int hashCode() {
+        return ((line * 31) + column) * 31 + word.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path + ':' + line + ':' + column + ": " + word;
+    }
+}
@@ -0,0 +1,1009 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * Matches a complete set of dirty words against a given text in a single pass.
+ * <p/>
+ * Literal dirty words are located using an Aho-Corasick automaton built over their case folded
+ * characters. Each candidate found by the automaton is then confirmed using the word's own regex
+ * pattern restricted to the candidate's region such that the word boundary semantics stay exactly
+ * the same as when each pattern was applied on its own. All <code>REGEX:</code> entries are merged
+ * into a single alternation where each entry is wrapped in its own capturing group which allows us
+ * to report which entry matched.
+ * <p/>
+ * As <code>REGEX:</code> entries are matched with a backtracking engine, a single badly written
+ * entry could take exponential time on some text. A guarded copy of a matcher can be obtained
+ * (see {@link #withRegexLimits(int, int)}) where each regex search is given a budget of steps
+ * proportional to the length of the text along with a timeout. When the merged alternation
+ * exceeds its budget, the entries are retried one at a time to identify the culprit. An entry
+ * exceeding its budget is logged and reported as found such that the text is never accepted
+ * without having been fully checked.
+ * <p/>
+ * Instances of this class are immutable and can safely be shared between threads. They are also
+ * serializable such that they can be cached on disk (see {@link DirtyWordCache}); the patterns for
+ * literal words are not serialized but recompiled on demand when a candidate is found. The regex
+ * limits are not serialized either.
+ */
+public class DirtyWordMatcher implements Serializable {
+    // bump DirtyWordCache.FORMAT_VERSION as well whenever the meaning of this class changes
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(DirtyWordMatcher.class.getName());
+
+    // regex constructs which would change meaning or fail once merged with other entries
+    // (back references, named groups, and inline flags which are not scoped to a group)
+    private static final Pattern UNMERGEABLE = Pattern.compile(
+            "\\\\[1-9]|\\\\k<|\\(\\?<[a-zA-Z]|\\(\\?[idmsuxU-]+\\)");
+
+    // the number of steps always allowed such that short texts are never a problem
+    private static final long MIN_REGEX_STEPS = 1L << 20;
+
+    // how often, in steps, to check for the timeout as reading the clock is not free
+    private static final long TIMEOUT_CHECK_MASK = 0xFFFL;
+
+    private static final int ROOT = 0;
+
+    // the maximum number of bytes copied at a time when decoding text from a buffer
+    private static final int DECODE_SIZE = 1024 * 1024;
+
+    private final int size;
+
+    private final String[] literals;
+
+    private transient AtomicReferenceArray<Pattern> literalPatterns;
+
+    private final int[] literalLengths;
+
+    // the Aho-Corasick automaton (state 0 is the root)
+    private final char[][] keys;
+
+    private final int[][] targets;
+
+    private final int[] fail;
+
+    private final int[] dict;
+
+    private final int[][] outputs;
+
+    private final int[] rootAscii;
+
+    private final String[] regexes;
+
+    private final Pattern[] regexPatterns;
+
+    private final Pattern merged;
+
+    private final String[] isolated;
+
+    private final Pattern[] isolatedPatterns;
+
+    // the maximum number of characters read per character scanned by a regex search (0 for no limit)
+    private transient int regexStepsPerChar;
+
+    // the maximum time for a regex search in nanoseconds (0 for no limit)
+    private transient long regexTimeoutNanos;
+
+    // the regex entries already reported as exceeding their budget
+    private transient Set<String> overBudget;
+
+    /**
+     * Instantiates a new matcher for the specified dirty words.
+     *
+     * @param dirtyWords map containing each of the dirty words as a string with its corresponding
+     *                   regex pattern as returned by {@link RepositoryHandler#getDirtyWords()}
+     */
+    public DirtyWordMatcher(Map<String, Pattern> dirtyWords) {
+        final List<String> lwords = new ArrayList<String>();
+        final List<Pattern> lpatterns = new ArrayList<Pattern>();
+        final List<String> rwords = new ArrayList<String>();
+        final List<Pattern> rpatterns = new ArrayList<Pattern>();
+        final List<String> iwords = new ArrayList<String>();
+        final List<Pattern> ipatterns = new ArrayList<Pattern>();
+
+        // sort the words to get a deterministic automaton and alternation
+        for (final Map.Entry<String, Pattern> e: new TreeMap<String, Pattern>(dirtyWords).entrySet()) {
+            final String w = e.getKey();
+            final Pattern p = e.getValue();
+
+            if (DirtyWordMatcher.isLiteral(w, p)) {
+                lwords.add(w);
+                lpatterns.add(p);
+            } else if ((p.flags() == RepositoryHandler.PATTERN_FLAGS) && !UNMERGEABLE.matcher(p.pattern())
+                    .find()) {
+                rwords.add(w);
+                rpatterns.add(p);
+            } else {
+                iwords.add(w);
+                ipatterns.add(p);
+            }
+        }
+        this.size = dirtyWords.size();
+        this.literals = lwords.toArray(new String[lwords.size()]);
+        this.literalPatterns = new AtomicReferenceArray<Pattern>(lpatterns.toArray(new Pattern[lpatterns
+                .size()]));
+        this.literalLengths = new int[literals.length];
+        for (int i = 0; i < literals.length; i++) {
+            literalLengths[i] = literals[i].length();
+        }
+        Pattern m = null;
+
+        try {
+            m = DirtyWordMatcher.merge(rpatterns);
+        } catch (PatternSyntaxException e) { // fallback to checking them one at a time
+            LOGGER.log(Level.WARNING, "Unable to merge dirty regex patterns; checking them individually", e);
+            iwords.addAll(rwords);
+            ipatterns.addAll(rpatterns);
+            rwords.clear();
+            rpatterns.clear();
+        }
+        this.merged = m;
+        this.regexes = rwords.toArray(new String[rwords.size()]);
+        this.regexPatterns = rpatterns.toArray(new Pattern[rpatterns.size()]);
+        this.isolated = iwords.toArray(new String[iwords.size()]);
+        this.isolatedPatterns = ipatterns.toArray(new Pattern[ipatterns.size()]);
+        // finally build the automaton
+        final Builder builder = new Builder(literals);
+
+        this.keys = builder.keys;
+        this.targets = builder.targets;
+        this.fail = builder.fail;
+        this.dict = builder.dict;
+        this.outputs = builder.outputs;
+        this.rootAscii = builder.rootAscii;
+        this.overBudget = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        LOGGER.log(Level.FINE,
+                "Dirty word matcher built with {0} literals ({1} states), {2} merged and {3} individual regex patterns",
+                new Object[] {literals.length, keys.length, regexes.length, isolated.length});
+    }
+
+    /**
+     * Instantiates a copy of the specified matcher sharing all its compiled state but with
+     * different regex limits.
+     */
+    private DirtyWordMatcher(DirtyWordMatcher m, int stepsPerChar, int timeoutMillis) {
+        this.size = m.size;
+        this.literals = m.literals;
+        this.literalPatterns = m.literalPatterns;
+        this.literalLengths = m.literalLengths;
+        this.keys = m.keys;
+        this.targets = m.targets;
+        this.fail = m.fail;
+        this.dict = m.dict;
+        this.outputs = m.outputs;
+        this.rootAscii = m.rootAscii;
+        this.regexes = m.regexes;
+        this.regexPatterns = m.regexPatterns;
+        this.merged = m.merged;
+        this.isolated = m.isolated;
+        this.isolatedPatterns = m.isolatedPatterns;
+        this.regexStepsPerChar = Math.max(0, stepsPerChar);
+        this.regexTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMillis));
+        this.overBudget = m.overBudget;
+    }
+
+    /**
+     * Gets a copy of this matcher which limits each search for <code>REGEX:</code> entries. A
+     * search exceeding the limits is aborted and the entry is reported as found in the text being
+     * searched.
+     *
+     * @param stepsPerChar  the maximum number of characters a search may read per character of the
+     *                      searched text (on top of a fixed allowance) or <code>0</code> for no limit
+     * @param timeoutMillis the maximum time a search may take in milliseconds or <code>0</code> for
+     *                      no limit
+     * @return the corresponding matcher or <code>this</code> if it already has the same limits
+     */
+    public DirtyWordMatcher withRegexLimits(int stepsPerChar, int timeoutMillis) {
+        if ((Math.max(0, stepsPerChar) == regexStepsPerChar)
+                && (TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMillis)) == regexTimeoutNanos)) {
+            return this;
+        }
+        return new DirtyWordMatcher(this, stepsPerChar, timeoutMillis);
+    }
+
+    /**
+     * Checks if this matcher has no dirty words to check for.
+     *
+     * @return <code>true</code> if there are no dirty words; <code>false</code> otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the number of dirty words this matcher checks for.
+     *
+     * @return the number of dirty words
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Scans the specified text for all dirty words.
+     *
+     * @param s     the text to be scanned
+     * @param found a set where to report the dirty words found
+     * @return <code>true</code> if dirty words are found in <code>s</code>; <code>false</code> otherwise
+     */
+    public boolean find(CharSequence s, Set<String> found) {
+        boolean dirty = false;
+
+        if (literals.length > 0) {
+            dirty |= findLiterals(s, found);
+        }
+        return findPatterns(s, found) || dirty;
+    }
+
+    /**
+     * Scans the specified raw text as stored in the repository for all dirty words. Text made only
+     * of ASCII characters, which is the case for most source files, is scanned for literals byte by
+     * byte after folding ASCII letters without being decoded; it is only decoded if there are regex
+     * patterns to check for. Other text is decoded line by line the same way git content is decoded
+     * before being scanned.
+     *
+     * @param raw   the buffer containing the text to be scanned
+     * @param start the index of the first byte to scan in <code>raw</code>
+     * @param end   the index after the last byte to scan in <code>raw</code>
+     * @param found a set where to report the dirty words found
+     * @return <code>true</code> if dirty words are found; <code>false</code> otherwise
+     */
+    public boolean find(byte[] raw, int start, int end, Set<String> found) {
+        for (int i = start; i < end; i++) {
+            if (raw[i] < 0) {
+                return find(DirtyWordMatcher.decode(raw, start, end), found);
+            }
+        }
+        boolean dirty = false;
+
+        if (literals.length > 0) {
+            dirty |= findLiterals(raw, start, end, found);
+        }
+        if ((merged != null) || (isolated.length > 0)) { // regexes are faster on strings than on views
+            dirty |= findPatterns(new String(raw, start, end - start, StandardCharsets.US_ASCII), found);
+        }
+        return dirty;
+    }
+
+    /**
+     * Scans the specified raw text, from the buffer's position to its limit, for all dirty words the
+     * same way as {@link #find(byte[], int, int, Set)}. Buffers without an accessible array (e.g.
+     * memory mapped ones) are scanned in place when made only of ASCII characters; other text is
+     * copied and decoded in bounded chunks of lines.
+     *
+     * @param buf   the buffer containing the text to be scanned
+     * @param found a set where to report the dirty words found
+     * @return <code>true</code> if dirty words are found; <code>false</code> otherwise
+     */
+    public boolean find(ByteBuffer buf, Set<String> found) {
+        if (buf.hasArray()) {
+            return find(buf.array(), buf.arrayOffset() + buf.position(), buf.arrayOffset() + buf.limit(), found);
+        }
+        final int start = buf.position();
+        final int end = buf.limit();
+
+        for (int i = start; i < end; i++) {
+            if (buf.get(i) < 0) {
+                return findDecoded(buf, start, end, found);
+            }
+        }
+        final CharSequence s = new AsciiBufferSequence(buf, start, end);
+        boolean dirty = false;
+
+        if (literals.length > 0) {
+            dirty |= findLiterals(s, found);
+        }
+        if ((merged != null) || (isolated.length > 0)) { // regexes are faster on strings than on views
+            dirty |= findPatterns(s.toString(), found);
+        }
+        return dirty;
+    }
+
+    /**
+     * Locates the occurrences of all dirty words in the specified line of text. This is slower than
+     * {@link #find(CharSequence, Set)} as every occurrence is reported and is meant to be used on
+     * lines already known to be dirty.
+     *
+     * @param path the path of the file containing the line
+     * @param line the 1-based number of the line in the file
+     * @param s    the text of the line
+     * @param max  the maximum number of occurrences to report
+     * @return the occurrences found sorted by column and limited to <code>max</code> of them
+     */
+    public List<DirtyWordHit> locate(String path, int line, CharSequence s, int max) {
+        final List<DirtyWordHit> hits = new ArrayList<DirtyWordHit>();
+
+        if (literals.length > 0) {
+            int state = ROOT;
+
+            for (int i = 0; i < s.length(); i++) {
+                state = next(state, DirtyWordMatcher.fold(s.charAt(i)));
+                for (int o = (outputs[state] != null) ? state : dict[state]; o != -1; o = dict[o]) {
+                    for (final int w: outputs[o]) {
+                        if (confirmLiteral(s, w, i)) {
+                            hits.add(new DirtyWordHit(path, line, i + 2 - literalLengths[w], literals[w]));
+                        }
+                    }
+                }
+            }
+        }
+        locatePatterns(path, line, s, regexes, regexPatterns, hits);
+        locatePatterns(path, line, s, isolated, isolatedPatterns, hits);
+        Collections.sort(hits);
+        return (hits.size() > max) ? new ArrayList<DirtyWordHit>(hits.subList(0, Math.max(0, max))) : hits;
+    }
+
+    private void locatePatterns(String path, int line, CharSequence s, String[] words,
+            Pattern[] patterns, List<DirtyWordHit> hits) {
+        for (int i = 0; i < words.length; i++) {
+            // the budget covers all searches for a given entry as they share the same sequence
+            final Matcher m = patterns[i].matcher(guard(s, 1));
+            int from = 0;
+
+            try {
+                while (m.find()) {
+                    hits.add(new DirtyWordHit(path, line, m.start() + 1, words[i]));
+                    from = m.end();
+                }
+            } catch (RegexBudgetExceededException e) { // report it where the search was aborted
+                reportOverBudget(words[i], s);
+                hits.add(new DirtyWordHit(path, line, Math.min(from, Math.max(0, s.length() - 1)) + 1, words[i]));
+            }
+        }
+    }
+
+    /**
+     * Wraps the specified text such that searching it with regexes is aborted once the limits of
+     * this matcher are exceeded.
+     *
+     * @param s            the text to be searched
+     * @param alternatives the number of entries searched for at once
+     * @return the text to search or <code>s</code> itself if there are no limits
+     */
+    private CharSequence guard(CharSequence s, int alternatives) {
+        final int steps = regexStepsPerChar;
+        final long timeout = regexTimeoutNanos;
+
+        if ((steps == 0) && (timeout == 0L)) {
+            return s;
+        }
+        return new GuardedSequence(s,
+                (steps == 0) ?
+                        Long.MAX_VALUE :
+                        DirtyWordMatcher.MIN_REGEX_STEPS + (long) s.length() * steps * alternatives,
+                (timeout == 0L) ? 0L : System.nanoTime() + timeout);
+    }
+
+    private void reportOverBudget(String word, CharSequence s) {
+        if (overBudget.add(word)) {
+            LOGGER.log(Level.WARNING,
+                    "Dirty regex pattern exceeded its matching budget on a text of {0} characters and "
+                            + "is reported as found; it should be rewritten to avoid excessive backtracking: {1}",
+                    new Object[] {s.length(), word});
+        } else {
+            LOGGER.log(Level.FINE,
+                    "Dirty regex pattern exceeded its matching budget again: {0}",
+                    word);
+        }
+    }
+
+    private boolean findDecoded(ByteBuffer buf, int start, int end, Set<String> found) {
+        final byte[] raw = new byte[Math.min(end - start, DirtyWordMatcher.DECODE_SIZE)];
+        final ByteBuffer src = buf.duplicate();
+        boolean dirty = false;
+
+        for (int s = start; s < end; ) {
+            int e = Math.min(end, s + raw.length);
+
+            if (e < end) { // stop at the last line boundary unless a single line is too big
+                int eol = e - 1;
+
+                while ((eol >= s) && (buf.get(eol) != '\n')) {
+                    eol--;
+                }
+                if (eol >= s) {
+                    e = eol + 1;
+                }
+            }
+            // casts to stay binary compatible with Java 8
+            ((Buffer) src).limit(e);
+            ((Buffer) src).position(s);
+            src.get(raw, 0, e - s);
+            dirty |= find(raw, 0, e - s, found);
+            s = e;
+        }
+        return dirty;
+    }
+
+    private boolean findPatterns(CharSequence s, Set<String> found) {
+        boolean dirty = false;
+
+        if (merged != null) {
+            dirty |= findRegexes(s, found);
+        }
+        for (int i = 0; i < isolated.length; i++) {
+            dirty |= findPattern(isolated[i], isolatedPatterns[i], s, found);
+        }
+        return dirty;
+    }
+
+    private boolean findPattern(String word, Pattern p, CharSequence s, Set<String> found) {
+        try {
+            if (p.matcher(guard(s, 1))
+                    .find()) {
+                found.add(word);
+                return true;
+            }
+        } catch (RegexBudgetExceededException e) { // fail closed as the text was not fully checked
+            reportOverBudget(word, s);
+            found.add(word);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Decodes the specified raw text line by line the same way git content is decoded (i.e. as
+     * UTF-8 unless a line is not valid UTF-8).
+     *
+     * @param raw   the buffer containing the text to be decoded
+     * @param start the index of the first byte to decode in <code>raw</code>
+     * @param end   the index after the last byte to decode in <code>raw</code>
+     * @return the corresponding decoded text
+     */
+    static CharSequence decode(byte[] raw, int start, int end) {
+        final StringBuilder sb = new StringBuilder(end - start);
+
+        for (int s = start; s < end; ) {
+            final int e = Math.min(end, RawParseUtils.nextLF(raw, s));
+
+            sb.append(RawParseUtils.decode(raw, s, e));
+            s = e;
+        }
+        return sb;
+    }
+
+    private boolean findLiterals(CharSequence s, Set<String> found) {
+        final int len = s.length();
+        BitSet matched = null;
+        int state = ROOT;
+
+        for (int i = 0; i < len; i++) {
+            state = next(state, DirtyWordMatcher.fold(s.charAt(i)));
+            for (int o = (outputs[state] != null) ? state : dict[state]; o != -1; o = dict[o]) {
+                for (final int w: outputs[o]) {
+                    if ((matched != null) && matched.get(w)) {
+                        continue;
+                    }
+                    if (confirmLiteral(s, w, i)) {
+                        if (matched == null) {
+                            matched = new BitSet(literals.length);
+                        }
+                        matched.set(w);
+                        found.add(literals[w]);
+                    }
+                }
+            }
+        }
+        return matched != null;
+    }
+
+    private boolean findLiterals(byte[] raw, int start, int end, Set<String> found) {
+        CharSequence s = null; // only needed to confirm candidates
+        BitSet matched = null;
+        int state = ROOT;
+
+        for (int i = start; i < end; i++) {
+            state = next(state, DirtyWordMatcher.fold((char) raw[i]));
+            for (int o = (outputs[state] != null) ? state : dict[state]; o != -1; o = dict[o]) {
+                for (final int w: outputs[o]) {
+                    if ((matched != null) && matched.get(w)) {
+                        continue;
+                    }
+                    if (s == null) {
+                        s = new AsciiSequence(raw, start, end);
+                    }
+                    if (confirmLiteral(s, w, i - start)) {
+                        if (matched == null) {
+                            matched = new BitSet(literals.length);
+                        }
+                        matched.set(w);
+                        found.add(literals[w]);
+                    }
+                }
+            }
+        }
+        return matched != null;
+    }
+
+    /**
+     * Confirms the word boundaries of a literal candidate found by the automaton using the word's
+     * own pattern.
+     *
+     * @param s the text being scanned
+     * @param w the index of the literal word
+     * @param i the index in <code>s</code> of the last character of the candidate
+     * @return <code>true</code> if the word matches; <code>false</code> otherwise
+     */
+    private boolean confirmLiteral(CharSequence s, int w, int i) {
+        final int start = i + 1 - literalLengths[w];
+
+        return getLiteralPattern(w).matcher(s)
+                .region(Math.max(0, start - 1), Math.min(s.length(), i + 2))
+                .useTransparentBounds(true)
+                .useAnchoringBounds(false)
+                .find();
+    }
+
+    private boolean findRegexes(CharSequence s, Set<String> found) {
+        try {
+            return findMerged(guard(s, regexes.length), found);
+        } catch (RegexBudgetExceededException e) { // find out which one it is by checking them individually
+            LOGGER.log(Level.FINE, "Merged dirty regex patterns exceeded their budget; checking them individually");
+            boolean dirty = false;
+
+            for (int i = 0; i < regexes.length; i++) {
+                dirty |= findPattern(regexes[i], regexPatterns[i], s, found);
+            }
+            return dirty;
+        }
+    }
+
+    private boolean findMerged(CharSequence s, Set<String> found) {
+        final BitSet matched = new BitSet(regexes.length);
+        final Matcher m = merged.matcher(s);
+        Matcher[] matchers = null; // to check the entries individually once something is found
+        int from = 0;
+
+        while ((from <= s.length()) && m.find(from)) {
+            final int at = m.start();
+            int group = 1;
+            int k = 0;
+
+            while ((k < regexes.length) && (m.start(group) == -1)) {
+                group += DirtyWordMatcher.groupCount(regexPatterns[k++]) + 1;
+            }
+            if (k == regexes.length) { // should not happen but better check them all than miss any
+                for (int r = matched.nextClearBit(0); r < regexes.length; r = matched.nextClearBit(r + 1)) {
+                    if (findPattern(regexes[r], regexPatterns[r], s, found)) {
+                        matched.set(r);
+                    }
+                }
+                break;
+            }
+            matched.set(k);
+            found.add(regexes[k]);
+            // the alternation only reports the first entry matching at a given location so check the
+            // ones following it that were not found yet from the same location on their own
+            if (matchers == null) {
+                matchers = new Matcher[regexes.length];
+            }
+            for (int r = matched.nextClearBit(k + 1); r < regexes.length; r = matched.nextClearBit(r + 1)) {
+                if (matchers[r] == null) {
+                    matchers[r] = regexPatterns[r].matcher(s)
+                            .useTransparentBounds(true)
+                            .useAnchoringBounds(false);
+                }
+                if (matchers[r].region(at, s.length())
+                        .lookingAt()) {
+                    matched.set(r);
+                    found.add(regexes[r]);
+                }
+            }
+            if (matched.cardinality() == regexes.length) {
+                break;
+            }
+            from = at + 1;
+        }
+        return !matched.isEmpty();
+    }
+
+    private Pattern getLiteralPattern(int w) {
+        Pattern p = literalPatterns.get(w);
+
+        if (p == null) { // compile it the same way RepositoryHandler does for literals
+            p = Pattern.compile(String.format(RepositoryHandler.REGEX_PATTERN, Pattern.quote(literals[w])),
+                    RepositoryHandler.PATTERN_FLAGS);
+            literalPatterns.set(w, p);
+        }
+        return p;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.literalPatterns = new AtomicReferenceArray<Pattern>(literals.length);
+        this.overBudget = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+
+    private int next(int state, char c) {
+        if ((state == ROOT) && (c < 128)) {
+            return rootAscii[c];
+        }
+        while (true) {
+            final char[] k = keys[state];
+            final int i = (k != null) ? Arrays.binarySearch(k, c) : -1;
+
+            if (i >= 0) {
+                return targets[state][i];
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+            if ((state == ROOT) && (c < 128)) {
+                return rootAscii[c];
+            }
+        }
+    }
+
+    private static boolean isLiteral(String word, Pattern p) {
+        return !word.startsWith(RepositoryHandler.REGEX_PREFIX) && !word.isEmpty() && (p.flags()
+                == RepositoryHandler.PATTERN_FLAGS) && p.pattern()
+                .equals(String.format(RepositoryHandler.REGEX_PATTERN, Pattern.quote(word)));
+    }
+
+    private static Pattern merge(List<Pattern> patterns) {
+        if (patterns.isEmpty()) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder();
+
+        for (final Pattern p: patterns) {
+            if (sb.length() > 0) {
+                sb.append('|');
+            }
+            sb.append('(')
+                    .append(p.pattern())
+                    .append(')');
+        }
+        return Pattern.compile(sb.toString(), RepositoryHandler.PATTERN_FLAGS);
+    }
+
+    private static int groupCount(Pattern p) {
+        return p.matcher("")
+                .groupCount();
+    }
+
+    /**
+     * Folds the specified character the same way {@link Pattern#CASE_INSENSITIVE} and
+     * {@link Pattern#UNICODE_CASE} compare characters.
+     *
+     * @param c the character to fold
+     * @return the corresponding folded character
+     */
+    static char fold(char c) {
+        if (c < 128) {
+            return ((c >= 'A') && (c <= 'Z')) ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * View of a text which counts the characters read by a regex search and aborts it by throwing
+     * {@link RegexBudgetExceededException} once it reads too many of them or takes too long.
+     */
+    private static class GuardedSequence implements CharSequence {
+        private final CharSequence s;
+
+        private final long deadline;
+
+        private long remaining;
+
+        GuardedSequence(CharSequence s, long steps, long deadline) {
+            this.s = s;
+            this.remaining = steps;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int length() {
+            return s.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if ((--remaining < 0L) || (((remaining & DirtyWordMatcher.TIMEOUT_CHECK_MASK) == 0L) && (deadline != 0L)
+                    && (System.nanoTime() - deadline > 0L))) {
+                throw new RegexBudgetExceededException();
+            }
+            return s.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return s.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return s.toString();
+        }
+    }
+
+    /**
+     * Thrown to abort a regex search which exceeded its budget.
+     */
+    private static class RegexBudgetExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() { // only used for control flow
+            return this;
+        }
+    }
+
+    /**
+     * Character sequence view over raw bytes known to only contain ASCII characters.
+     */
+    private static class AsciiSequence implements CharSequence {
+        private final byte[] raw;
+
+        private final int start;
+
+        private final int end;
+
+        AsciiSequence(byte[] raw, int start, int end) {
+            this.raw = raw;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) raw[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int s, int e) {
+            return new AsciiSequence(raw, start + s, start + e);
+        }
+
+        @Override
+        public String toString() {
+            return new String(raw, start, end - start, StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * Character sequence view over a byte buffer known to only contain ASCII characters.
+     */
+    private static class AsciiBufferSequence implements CharSequence {
+        private final ByteBuffer buf;
+
+        private final int start;
+
+        private final int end;
+
+        AsciiBufferSequence(ByteBuffer buf, int start, int end) {
+            this.buf = buf;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) buf.get(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int s, int e) {
+            return new AsciiBufferSequence(buf, start + s, start + e);
+        }
+
+        @Override
+        public String toString() {
+            final char[] chars = new char[end - start];
+
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) buf.get(start + i);
+            }
+            return new String(chars);
+        }
+    }
+
+    /**
+     * Builds the Aho-Corasick automaton for a set of literal words.
+     */
+    private static class Builder {
+        private final List<StringBuilder> keyList = new ArrayList<StringBuilder>();
+
+        private final List<List<Integer>> targetList = new ArrayList<List<Integer>>();
+
+        private final List<List<Integer>> outputList = new ArrayList<List<Integer>>();
+
+        private char[][] keys;
+
+        private int[][] targets;
+
+        private int[] fail;
+
+        private int[] dict;
+
+        private int[][] outputs;
+
+        private int[] rootAscii;
+
+        Builder(String[] words) {
+            newState();
+            for (int w = 0; w < words.length; w++) {
+                final String word = words[w];
+                int state = ROOT;
+
+                for (int i = 0; i < word.length(); i++) {
+                    final char c = DirtyWordMatcher.fold(word.charAt(i));
+                    int t = child(state, c);
+
+                    if (t == -1) {
+                        t = newState();
+                        keyList.get(state)
+                                .append(c);
+                        targetList.get(state)
+                                .add(t);
+                    }
+                    state = t;
+                }
+                outputList.get(state)
+                        .add(w);
+            }
+            freeze();
+            link();
+        }
+
+        private int newState() {
+            keyList.add(new StringBuilder());
+            targetList.add(new ArrayList<Integer>());
+            outputList.add(new ArrayList<Integer>());
+            return keyList.size() - 1;
+        }
+
+        private int child(int state, char c) {
+            final StringBuilder k = keyList.get(state);
+
+            for (int i = 0; i < k.length(); i++) {
+                if (k.charAt(i) == c) {
+                    return targetList.get(state)
+                            .get(i);
+                }
+            }
+            return -1;
+        }
+
+        private void freeze() {
+            final int n = keyList.size();
+
+            this.keys = new char[n][];
+            this.targets = new int[n][];
+            this.outputs = new int[n][];
+            for (int s = 0; s < n; s++) {
+                final StringBuilder k = keyList.get(s);
+                final List<Integer> t = targetList.get(s);
+                final List<Integer> o = outputList.get(s);
+
+                if (k.length() > 0) {
+                    // sort transitions by character for binary searching
+                    final Integer[] order = new Integer[k.length()];
+
+                    for (int i = 0; i < order.length; i++) {
+                        order[i] = i;
+                    }
+                    Arrays.sort(order, (a, b) -> Character.compare(k.charAt(a), k.charAt(b)));
+                    keys[s] = new char[order.length];
+                    targets[s] = new int[order.length];
+                    for (int i = 0; i < order.length; i++) {
+                        keys[s][i] = k.charAt(order[i]);
+                        targets[s][i] = t.get(order[i]);
+                    }
+                }
+                if (!o.isEmpty()) {
+                    outputs[s] = new int[o.size()];
+                    for (int i = 0; i < outputs[s].length; i++) {
+                        outputs[s][i] = o.get(i);
+                    }
+                }
+            }
+            keyList.clear();
+            targetList.clear();
+            outputList.clear();
+        }
+
+        private void link() {
+            final int n = keys.length;
+            final Deque<Integer> queue = new ArrayDeque<Integer>();
+
+            this.fail = new int[n];
+            this.dict = new int[n];
+            this.rootAscii = new int[128];
+            Arrays.fill(dict, -1);
+            if (keys[ROOT] != null) {
+                for (int i = 0; i < keys[ROOT].length; i++) {
+                    final int t = targets[ROOT][i];
+
+                    fail[t] = ROOT;
+                    if (keys[ROOT][i] < 128) {
+                        rootAscii[keys[ROOT][i]] = t;
+                    }
+                    queue.add(t);
+                }
+            }
+            // breadth first so that all failure links of shallower states are known
+            while (!queue.isEmpty()) {
+                final int s = queue.remove();
+
+                if (keys[s] == null) {
+                    continue;
+                }
+                for (int i = 0; i < keys[s].length; i++) {
+                    final char c = keys[s][i];
+                    final int t = targets[s][i];
+                    int f = fail[s];
+
+                    while (true) {
+                        final int j = (keys[f] != null) ? Arrays.binarySearch(keys[f], c) : -1;
+
+                        if (j >= 0) {
+                            fail[t] = targets[f][j];
+                            break;
+                        }
+                        if (f == ROOT) {
+                            fail[t] = ROOT;
+                            break;
+                        }
+                        f = fail[f];
+                    }
+                    final int ft = fail[t];
+
+                    dict[t] = (outputs[ft] != null) ? ft : dict[ft];
+                    queue.add(t);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Routes each file to the matcher for the dirty words that apply to it. Dirty words can be scoped
+ * to directories (see {@link RepositoryHandler#getScopedDirtyWords()}) in which case a matcher is
+ * compiled for each scope. The scopes are organized in a trie of path segments such that finding
+ * the most specific scope for a path only costs one lookup per directory in that path.
+ * <p/>
+ * The router is immutable and safe to use from multiple threads.
+ */
+public class DirtyWordRouter implements Serializable {
+    // bump DirtyWordCache.FORMAT_VERSION as well whenever the meaning of this class changes
+    private static final long serialVersionUID = 1L;
+
+    private final Node root;
+
+    private final Set<String> scopes;
+
+    private final boolean empty;
+
+    /**
+     * Instantiates a new router.
+     *
+     * @param scopedWords a map of scopes to their dirty words along with their corresponding
+     *                    regex patterns; scopes are directory prefixes ending with a
+     *                    <code>/</code> or {@link RepositoryHandler#GLOBAL_SCOPE} for the words
+     *                    that apply everywhere else
+     */
+    public DirtyWordRouter(Map<String, Map<String, Pattern>> scopedWords) {
+        boolean e = true;
+
+        this.root = new Node();
+        this.scopes = new TreeSet<String>();
+        for (final Map.Entry<String, Map<String, Pattern>> s: scopedWords.entrySet()) {
+            final DirtyWordMatcher matcher = new DirtyWordMatcher((s.getValue() != null) ?
+                    s.getValue() :
+                    Collections.<String, Pattern>emptyMap());
+            Node node = root;
+
+            for (final String segment: s.getKey()
+                    .split("/")) {
+                if (!segment.isEmpty()) {
+                    node = node.child(segment);
+                }
+            }
+            node.matcher = matcher;
+            node.scope = s.getKey();
+            e &= matcher.isEmpty();
+            scopes.add(s.getKey());
+        }
+        if (root.matcher == null) {
+            root.matcher = new DirtyWordMatcher(Collections.<String, Pattern>emptyMap());
+            root.scope = RepositoryHandler.GLOBAL_SCOPE;
+            scopes.add(RepositoryHandler.GLOBAL_SCOPE);
+        }
+        this.empty = e;
+    }
+
+    /**
+     * Checks if there are no dirty words in any scopes.
+     *
+     * @return <code>true</code> if no files need to be checked; <code>false</code> otherwise
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Instantiates a copy of the specified router where all matchers limit each search for
+     * <code>REGEX:</code> entries.
+     */
+    private DirtyWordRouter(DirtyWordRouter router, int stepsPerChar, int timeoutMillis) {
+        this.root = router.root.copy(stepsPerChar, timeoutMillis);
+        this.scopes = router.scopes;
+        this.empty = router.empty;
+    }
+
+    /**
+     * Gets a copy of this router where all matchers limit each search for <code>REGEX:</code>
+     * entries. This router is left untouched.
+     *
+     * @param stepsPerChar  the maximum number of characters a search may read per character of the
+     *                      searched text or <code>0</code> for no limit
+     * @param timeoutMillis the maximum time a search may take in milliseconds or <code>0</code> for
+     *                      no limit
+     * @return the corresponding router
+     * @see DirtyWordMatcher#withRegexLimits(int, int)
+     */
+    public DirtyWordRouter withRegexLimits(int stepsPerChar, int timeoutMillis) {
+        return new DirtyWordRouter(this, stepsPerChar, timeoutMillis);
+    }
+
+    /**
+     * Gets all scopes for which a matcher was compiled.
+     *
+     * @return the scopes sorted alphabetically
+     */
+    public Set<String> getScopes() {
+        return Collections.unmodifiableSet(scopes);
+    }
+
+    /**
+     * Gets the matcher for the dirty words that apply outside of all scoped directories (e.g. to
+     * commit messages).
+     *
+     * @return the global matcher
+     */
+    public DirtyWordMatcher getGlobalMatcher() {
+        return root.matcher;
+    }
+
+    /**
+     * Gets the matcher for the dirty words that apply to the specified file. This is the one for the
+     * deepest scope containing the file.
+     *
+     * @param path the path of the file in the repository (e.g. <code>vendor/lib/a.js</code>)
+     * @return the corresponding matcher
+     */
+    public DirtyWordMatcher getMatcher(String path) {
+        return find(path).matcher;
+    }
+
+    /**
+     * Gets the scope of the dirty words that apply to the specified file. This is the deepest scope
+     * containing the file.
+     *
+     * @param path the path of the file in the repository (e.g. <code>vendor/lib/a.js</code>)
+     * @return the corresponding scope (e.g. <code>vendor/</code>) or
+     * {@link RepositoryHandler#GLOBAL_SCOPE} if the file is not in a scoped directory
+     */
+    public String getScope(String path) {
+        return find(path).scope;
+    }
+
+    private Node find(String path) {
+        Node found = root;
+        Node node = root;
+
+        if (path == null) {
+            return found;
+        }
+        // only directories can be scoped so stop before the file name
+        for (int s = 0, e = path.indexOf('/'); e != -1; s = e + 1, e = path.indexOf('/', s)) {
+            if (e == s) { // ignore empty segments
+                continue;
+            }
+            node = node.get(path.substring(s, e));
+            if (node == null) {
+                break;
+            }
+            if (node.matcher != null) {
+                found = node;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * A node in the trie for a directory; it only has a matcher if a scope ends at that directory.
+     */
+    private static class Node implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Map<String, Node> children;
+
+        private DirtyWordMatcher matcher;
+
+        private String scope;
+
+        Node copy(int stepsPerChar, int timeoutMillis) {
+            final Node node = new Node();
+
+            if (matcher != null) {
+                node.matcher = matcher.withRegexLimits(stepsPerChar, timeoutMillis);
+                node.scope = scope;
+            }
+            if (children != null) {
+                node.children = new HashMap<String, Node>();
+                for (final Map.Entry<String, Node> e: children.entrySet()) {
+                    node.children.put(e.getKey(), e.getValue()
+                            .copy(stepsPerChar, timeoutMillis));
+                }
+            }
+            return node;
+        }
+
+        Node get(String segment) {
+            return (children != null) ? children.get(segment) : null;
+        }
+
+        Node child(String segment) {
+            if (children == null) {
+                this.children = new HashMap<String, Node>();
+            }
+            Node node = children.get(segment);
+
+            if (node == null) {
+                node = new Node();
+                children.put(segment, node);
+            }
+            return node;
+        }
+    }
+}
@@ -16,26 +16,60 @@ package org.codice.git;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.codice.git.hook.ChangeOnlyDiffFormatter;
 import org.eclipse.jgit.api.errors.NoHeadException;
 import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.errors.UnmergedPathException;
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import com.google.common.base.Charsets;
@@ -44,14 +78,50 @@ import com.google.common.io.Files;
 public class GitHandler extends RepositoryHandler {
     private static final Logger LOGGER = Logger.getLogger(GitHandler.class.getName());
 
+    // whether renamed or copied files should be detected such that only their changes are scanned
+    public static final String DETECT_RENAMES_SETTING = "detectRenames";
+
+    // the minimum similarity score (0-100) for files to be considered renamed
+    public static final String RENAME_SCORE_SETTING = "renameScore";
+
+    // the maximum number of files to consider when detecting renames (defaults to diff.renameLimit)
+    public static final String RENAME_LIMIT_SETTING = "renameLimit";
+
+    // whether merge commits in a range are diffed against their first parent (defaults to true)
+    public static final String SCAN_MERGES_SETTING = "scanMerges";
+
+    // the index of the staged files or the commit's tree in the tree walks (HEAD or the parent
+    // commit's tree being the first one)
+    private static final int NEW_TREE = 1;
+
+    // the size of the chunks used to report the content of large files
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    // the size of the windows used to map large working tree files
+    private static final int MAP_WINDOW_SIZE = 4 * 1024 * 1024;
+
+    // the number of files that can be waiting to be read for each thread when auditing
+    private static final int QUEUE_SIZE_PER_THREAD = 64;
+
+    private static final long QUEUE_POLL_MILLIS = 100L;
+
     private final Repository repo;
 
+    private final File cwd;
+
+    private volatile File indexFile;
+
+    private DirtyWordRouter dirtyWords;
+
+    private String dirtyWordsHash;
+
     public GitHandler(File basedir) throws IOException {
         super(basedir);
         this.repo = new FileRepositoryBuilder().findGitDir()
                 .readEnvironment()
                 .findGitDir()
                 .build();
+        this.cwd = null;
     }
 
     public GitHandler(File cwd, File basedir) throws IOException {
@@ -60,6 +130,50 @@ public class GitHandler extends RepositoryHandler {
                 .readEnvironment()
                 .findGitDir()
                 .build();
+        this.cwd = null;
+    }
+
+    /**
+     * Instantiates a new handler for the repository found at or above the specified working
+     * directory. Unlike the other constructors, the git environment variables of the current process
+     * are ignored; the git directory is provided explicitly instead.
+     *
+     * @param cwd     the working directory from which to search for the repository
+     * @param gitDir  the git directory for the repository or <code>null</code> to search for it
+     *                from <code>cwd</code>
+     * @param basedir the base directory for the hooks setup files
+     * @throws IOException if an error occurs while opening the repository
+     */
+    public GitHandler(File cwd, File gitDir, File basedir) throws IOException {
+        super(basedir);
+        final FileRepositoryBuilder builder = new FileRepositoryBuilder();
+
+        if (gitDir != null) {
+            builder.setGitDir(gitDir);
+        } else {
+            builder.findGitDir(cwd);
+        }
+        this.repo = builder.setMustExist(true)
+                .build();
+        this.cwd = cwd;
+    }
+
+    /**
+     * Sets the index file from which staged changes are read. Git uses a temporary index when
+     * committing specific paths (e.g. <code>git commit -a</code>) and advertises it to the hooks via
+     * the <code>GIT_INDEX_FILE</code> environment variable.
+     *
+     * @param indexFile the index file to use or <code>null</code> to use the repository's default
+     */
+    public void setIndexFile(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Closes the underlying repository.
+     */
+    public void close() {
+        repo.close();
     }
 
     @Override
@@ -71,6 +185,9 @@ public class GitHandler extends RepositoryHandler {
     public String getFileAsString(String filename) throws Exception {
         File fileToRead = new File(filename);
 
+        if ((cwd != null) && !fileToRead.isAbsolute()) { // don't resolve against our own directory
+            fileToRead = new File(cwd, filename);
+        }
         if (!fileToRead.exists()) {
             LOGGER.finest(
                     "Absolute file " + filename + " does not exist - checking relative to git dir");
@@ -83,6 +200,435 @@ public class GitHandler extends RepositoryHandler {
 
     @Override
     public String getDiff() throws Exception {
+        final OutputStream out = new ByteArrayOutputStream();
+
+        formatStagedChanges(new ChangeOnlyDiffFormatter(new BufferedOutputStream(out)),
+                ScanFilter.create(this, GitHandler.NEW_TREE));
+        return out.toString();
+    }
+
+    @Override
+    public void streamDiff(DiffListener listener) throws Exception {
+        streamDiff(listener, 1);
+    }
+
+    @Override
+    public void streamDiff(final DiffListener listener, int threads) throws Exception {
+        final ChangeOnlyDiffFormatter diffFmt = new ChangeOnlyDiffFormatter(listener);
+        final ScanFilter filter = ScanFilter.create(this, GitHandler.NEW_TREE);
+        final List<DiffEntry> result;
+
+        try {
+            result = scanStagedChanges(diffFmt, filter);
+            if (filter != null) { // still report the files excluded from the scan to check their names
+                for (final String path: filter.getSkipped()) {
+                    listener.startFile(path);
+                    listener.endFile(path);
+                }
+            }
+            if ((threads <= 1) || (result.size() <= 1)) {
+                diffFmt.format(result);
+                diffFmt.flush();
+                return;
+            }
+        } finally {
+            diffFmt.release();
+        }
+        final int n = Math.min(threads, result.size());
+        final AtomicInteger next = new AtomicInteger();
+
+        LOGGER.log(Level.FINER,
+                "Formatting {0} diffs using {1} threads",
+                new Object[] {result.size(), n});
+        // each worker uses its own formatter (and object reader) and pulls the next file
+        GitHandler.runWorkers(n, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                final ChangeOnlyDiffFormatter fmt = new ChangeOnlyDiffFormatter(listener);
+
+                fmt.setRepository(repo);
+                try {
+                    for (int i; (i = next.getAndIncrement()) < result.size(); ) {
+                        fmt.format(result.get(i));
+                    }
+                    fmt.flush();
+                } finally {
+                    fmt.release();
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Each commit is diffed once against its parent (or an empty tree for root commits) and
+     * filtered the same way staged changes are. Merge commits are diffed against their first parent
+     * such that everything they bring in is reported, including conflict resolutions and changes
+     * made only in the merge itself. This reports again the changes from merged commits that are
+     * part of the range; setting <code>githooks.scanMerges</code> to <code>false</code> only reports
+     * the message of merge commits instead.
+     */
+    @Override
+    public void streamCommits(String range, final CommitListener listener, int threads)
+            throws Exception {
+        final List<RevCommit> commits = walkRange(range);
+        final int n = Math.max(1, Math.min(threads, commits.size()));
+        final AtomicInteger next = new AtomicInteger();
+        final boolean scanMerges = !"false".equalsIgnoreCase(StringUtils.trim(getHookSetting(
+                GitHandler.SCAN_MERGES_SETTING)));
+
+        LOGGER.log(Level.FINER,
+                "Scanning {0} commits from {1} using {2} threads",
+                new Object[] {commits.size(), range, n});
+        // each worker pulls the next commit such that each one is only ever diffed once
+        GitHandler.runWorkers(n, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                final ObjectReader reader = repo.newObjectReader();
+
+                try {
+                    for (int i; (i = next.getAndIncrement()) < commits.size(); ) {
+                        formatCommit(reader, commits.get(i), listener, scanMerges);
+                    }
+                } finally {
+                    reader.release();
+                }
+                return null;
+            }
+        });
+    }
+
+    private List<RevCommit> walkRange(String range) throws IOException {
+        final RevWalk walk = new RevWalk(repo);
+        final List<RevCommit> commits = new ArrayList<RevCommit>();
+
+        try {
+            markRange(walk, range);
+            for (final RevCommit c: walk) {
+                if (c.getParentCount() > 0) { // make sure the first parent's tree is known
+                    walk.parseHeaders(c.getParent(0));
+                }
+                commits.add(c);
+            }
+        } finally {
+            walk.release();
+        }
+        return commits;
+    }
+
+    /**
+     * Marks the commits to walk for the specified revision or range of revisions.
+     *
+     * @return the commit starting the range which is marked uninteresting or <code>null</code> if
+     * a single revision is specified
+     */
+    private RevCommit markRange(RevWalk walk, String range) throws IOException {
+        if (range.contains("..")) {
+            final String from = StringUtils.defaultIfEmpty(StringUtils.substringBefore(range, ".."),
+                    Constants.HEAD);
+            final RevCommit base = walk.parseCommit(resolveRevision(from));
+
+            walk.markUninteresting(base);
+            walk.markStart(walk.parseCommit(resolveRevision(StringUtils.defaultIfEmpty(StringUtils.substringAfter(
+                    range,
+                    ".."), Constants.HEAD))));
+            return base;
+        }
+        walk.markStart(walk.parseCommit(resolveRevision(range)));
+        return null;
+    }
+
+    private ObjectId resolveRevision(String rev) throws IOException {
+        final ObjectId id = repo.resolve(rev);
+
+        if (id == null) {
+            throw new IOException("unable to resolve revision: " + rev);
+        }
+        return id;
+    }
+
+    private void formatCommit(ObjectReader reader, RevCommit commit, CommitListener listener,
+            boolean scanMerges) throws Exception {
+        final String id = commit.name();
+        final DiffListener diffListener = listener.startCommit(id, commit.getFullMessage());
+
+        if ((diffListener != null) && (scanMerges || (commit.getParentCount() <= 1))) {
+            final ChangeOnlyDiffFormatter diffFmt = new ChangeOnlyDiffFormatter(diffListener);
+            final ScanFilter filter = ScanFilter.create(this, GitHandler.NEW_TREE);
+
+            try {
+                final AbstractTreeIterator oldTree = (commit.getParentCount() == 0) ?
+                        new EmptyTreeIterator() :
+                        new CanonicalTreeParser(null, reader, commit.getParent(0)
+                                .getTree());
+
+                diffFmt.setRepository(repo);
+                diffFmt.setPathFilter((filter != null) ? filter : TreeFilter.ALL);
+                diffFmt.setProgressMonitor(NullProgressMonitor.INSTANCE);
+                if (Boolean.parseBoolean(getHookSetting(GitHandler.DETECT_RENAMES_SETTING))) {
+                    configureRenameDetection(diffFmt);
+                }
+                final List<DiffEntry> result = diffFmt.scan(oldTree,
+                        new CanonicalTreeParser(null, reader, commit.getTree()));
+
+                if (filter != null) { // still report the files excluded from the scan to check their names
+                    for (final String path: filter.getSkipped()) {
+                        diffListener.startFile(path);
+                        diffListener.endFile(path);
+                    }
+                }
+                diffFmt.format(result);
+                diffFmt.flush();
+            } finally {
+                diffFmt.release();
+            }
+        }
+        listener.endCommit(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The commits are walked from the oldest to the newest such that each content is reported with
+     * the path and commit where it was first introduced. As the exclusions and the dirty words
+     * checked depend on the path of a file, each tree is only walked once per path and each blob is
+     * only reported once per scope of dirty words (see {@link AuditListener#scope}) and never when
+     * excluded at the path where it is found such that the same content found again under another
+     * path is still reported. Trees and blobs already reachable from the start of a range are
+     * skipped. Blobs are read by the workers, each with its own object reader, while the repository
+     * is still being walked and are filtered the same way staged files are.
+     */
+    @Override
+    public void streamBlobs(List<String> revs, AuditListener listener, int threads) throws Exception {
+        final RevWalk walk = new RevWalk(repo);
+        final List<RevCommit> bases = new ArrayList<RevCommit>();
+        final List<RevObject> roots = new ArrayList<RevObject>();
+        final ContentWorkers workers = new ContentWorkers(listener, threads);
+        final BlobWalk blobs = new BlobWalk(walk.getObjectReader(), listener, workers);
+        int commits = 0;
+
+        try {
+            if (revs.isEmpty()) {
+                for (final Ref ref: repo.getAllRefs()
+                        .values()) {
+                    if (ref.getObjectId() != null) {
+                        final RevObject o = walk.peel(walk.parseAny(ref.getObjectId()));
+
+                        if (o instanceof RevCommit) {
+                            walk.markStart((RevCommit) o);
+                        } else { // tags can also point directly to trees or blobs
+                            roots.add(o);
+                        }
+                    }
+                }
+            } else {
+                for (final String rev: revs) {
+                    final RevCommit base = markRange(walk, rev);
+
+                    if (base != null) {
+                        bases.add(base);
+                    }
+                }
+            }
+            for (final RevCommit base: bases) {
+                blobs.skip(base.getTree(), "");
+            }
+            walk.sort(RevSort.TOPO);
+            walk.sort(RevSort.REVERSE, true);
+            for (RevCommit c; (c = walk.next()) != null; commits++) {
+                blobs.walk(c.getTree(), "", c.name());
+            }
+            for (final RevObject o: roots) {
+                if (o.getType() == Constants.OBJ_TREE) {
+                    blobs.walk(o, "", null);
+                } else if (o.getType() == Constants.OBJ_BLOB) {
+                    blobs.submit(o, "", null);
+                }
+            }
+            LOGGER.log(Level.FINER,
+                    "Walked {0} commits and {1} distinct paths",
+                    new Object[] {commits, blobs.paths.size()});
+            workers.finish();
+        } finally {
+            workers.close();
+            walk.release();
+        }
+    }
+
+    /**
+     * Reports the paths of all entries in the specified tree not already reported before walking
+     * any of them such that the names in a directory are reported together.
+     */
+    private static void reportPaths(ObjectReader reader, ObjectId tree, String dir, String commit,
+            Set<String> paths, AuditListener listener) throws IOException {
+        final String prefix = StringUtils.isEmpty(dir) ? "" : (dir + '/');
+
+        for (final CanonicalTreeParser p = new CanonicalTreeParser(null, reader, tree); !p.eof(); p.next()) {
+            if (FileMode.GITLINK.equals(p.getEntryRawMode())) { // submodules are audited on their own
+                continue;
+            }
+            final String path = prefix + p.getEntryPathString();
+
+            if (paths.add(path)) {
+                listener.path(commit, path);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Ignored directories are not even walked unless they contain tracked files in which case only
+     * the untracked ones are skipped. Files are read by the workers while the working tree
+     * is still being walked and are filtered the same way staged files are.
+     */
+    @Override
+    public void streamWorkTree(AuditListener listener, int threads) throws Exception {
+        final TreeWalk walk = new TreeWalk(repo);
+        final ContentWorkers workers = new ContentWorkers(listener, threads);
+
+        try {
+            walk.addTree(new FileTreeIterator(repo));
+            walk.addTree(new DirCacheIterator(repo.readDirCache()));
+            while (walk.next()) {
+                final FileTreeIterator i = walk.getTree(0, FileTreeIterator.class);
+
+                // tracked files are audited even when matching an ignore rule
+                if ((i == null) || ((walk.getTree(1, DirCacheIterator.class) == null) && i.isEntryIgnored())) {
+                    continue;
+                }
+                if (walk.isSubtree()) {
+                    listener.path(null, walk.getPathString());
+                    walk.enterSubtree();
+                } else if (FileMode.REGULAR_FILE.equals(walk.getRawMode(0)) || FileMode.EXECUTABLE_FILE.equals(
+                        walk.getRawMode(0))) {
+                    final String path = walk.getPathString();
+
+                    listener.path(null, path);
+                    workers.submit(new Content(null, path, null, new File(repo.getWorkTree(), path)));
+                }
+            }
+            workers.finish();
+        } finally {
+            workers.close();
+            walk.release();
+        }
+    }
+
+    /**
+     * Reports the content read from the specified stream in chunks ending on line boundaries.
+     *
+     * @param listener the listener to report the content to
+     * @param c        the content being reported
+     * @param in       the stream to read the content from (closed once done)
+     * @param buffer   the buffer to use for each chunk
+     * @throws IOException if an error occurs while reading or reporting the content
+     */
+    private static void streamChunks(AuditListener listener, Content c, InputStream in, byte[] buffer)
+            throws IOException {
+        try {
+            int len = 0;
+
+            while (true) {
+                len += IOUtils.read(in, buffer, len, buffer.length - len);
+                if (len < buffer.length) { // reached the end
+                    if (len > 0) {
+                        listener.content(c.commit, c.path, buffer, 0, len);
+                    }
+                    return;
+                }
+                int eol = len - 1;
+
+                while ((eol >= 0) && (buffer[eol] != '\n')) {
+                    eol--;
+                }
+                if (eol < 0) { // a single line larger than the buffer; cut it
+                    eol = len - 1;
+                }
+                listener.content(c.commit, c.path, buffer, 0, eol + 1);
+                len -= eol + 1;
+                System.arraycopy(buffer, eol + 1, buffer, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reports the content of the specified file one memory-mapped window at a time, each window
+     * ending on a line boundary, such that large files are scanned without being copied onto the
+     * heap.
+     *
+     * @param listener the listener to report the content to
+     * @param c        the content being reported
+     * @throws IOException if an error occurs while mapping or reporting the content
+     */
+    private static void streamMapped(AuditListener listener, Content c) throws IOException {
+        final MappedLines lines = new MappedLines(c.file, GitHandler.MAP_WINDOW_SIZE);
+
+        try {
+            for (ByteBuffer buf; (buf = lines.next()) != null; ) {
+                listener.content(c.commit, c.path, buf);
+            }
+        } finally {
+            lines.close();
+        }
+    }
+
+    /**
+     * Runs the specified worker from up to the given number of threads concurrently and waits for
+     * all of them to complete. The worker is run directly from the calling thread when a single
+     * thread is requested.
+     *
+     * @param threads the number of threads to use
+     * @param worker  the thread-safe worker to run from each thread
+     * @throws Exception the first exception thrown by the worker
+     */
+    private static void runWorkers(int threads, Callable<Void> worker) throws Exception {
+        if (threads <= 1) {
+            worker.call();
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>(threads);
+
+        try {
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(worker));
+            }
+            for (final Future<Void> f: futures) {
+                GitHandler.await(f);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(Future<Void> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void formatStagedChanges(ChangeOnlyDiffFormatter diffFmt, ScanFilter filter)
+            throws Exception {
+        try {
+            diffFmt.format(scanStagedChanges(diffFmt, filter));
+            diffFmt.flush();
+        } finally {
+            diffFmt.release();
+        }
+    }
+
+    private List<DiffEntry> scanStagedChanges(ChangeOnlyDiffFormatter diffFmt, ScanFilter filter)
+            throws Exception {
         final ObjectId head = repo.resolve(Constants.HEAD + "^{tree}");
 
         if (head == null) {
@@ -98,23 +644,101 @@ public class GitHandler extends RepositoryHandler {
             reader.release();
         }
         final AbstractTreeIterator oldTree = p;
-        final AbstractTreeIterator newTree = new DirCacheIterator(repo.readDirCache());
-        final OutputStream out = new ByteArrayOutputStream();
-        final ChangeOnlyDiffFormatter diffFmt =
-                new ChangeOnlyDiffFormatter(new BufferedOutputStream(out));
+        final File index = indexFile;
+        final DirCache dc = (index != null) ? DirCache.read(index, repo.getFS()) : repo.readDirCache();
+
+        if (head.equals(GitHandler.computeStagedTree(dc))) {
+            LOGGER.finer("Nothing staged as the index matches the HEAD tree");
+            return Collections.emptyList();
+        }
+        final AbstractTreeIterator newTree = new DirCacheIterator(dc);
 
         diffFmt.setRepository(repo);
-        diffFmt.setPathFilter(TreeFilter.ALL);
+        diffFmt.setPathFilter((filter != null) ? filter : TreeFilter.ALL);
         diffFmt.setProgressMonitor(NullProgressMonitor.INSTANCE);
-
+        if (Boolean.parseBoolean(getHookSetting(GitHandler.DETECT_RENAMES_SETTING))) {
+            configureRenameDetection(diffFmt);
+        }
         LOGGER.finer("Scanning the git tree for diffs");
-        final List<DiffEntry> result = diffFmt.scan(oldTree, newTree);
+        return diffFmt.scan(oldTree, newTree);
+    }
 
-        diffFmt.format(result);
-        diffFmt.flush();
-        diffFmt.release();
+    /**
+     * Computes the ids of all staged trees not already cached in the index's tree extension. Git
+     * invalidates the cached id of every directory containing a staged change, so without this the
+     * walk against HEAD has to descend into all of them and compare every entry. With all ids
+     * known, the walk skips every directory whose staged content matches HEAD. The cost is then
+     * proportional to the size of the changed directories rather than the whole repository. The
+     * ids are only computed in memory; no tree objects are written to the repository and the index
+     * file is left untouched.
+     *
+     * @param dc the index to compute the trees for
+     * @return the id of the staged root tree or <code>null</code> if it cannot be computed
+     * @throws IOException if an error occurs
+     */
+    private static ObjectId computeStagedTree(DirCache dc) throws IOException {
+        final ObjectInserter fmt = new ObjectInserter.Formatter() {
+            @Override
+            public ObjectId insert(int type, long length, InputStream in) throws IOException {
+                return idFor(type, length, in); // only compute the id without storing anything
+            }
+        };
 
-        return out.toString();
+        try {
+            return dc.writeTree(fmt);
+        } catch (UnmergedPathException e) { // fall back to walking the unmerged directories
+            LOGGER.log(Level.FINER, "Unable to compute the staged trees: {0}", e.getMessage());
+            return null;
+        } finally {
+            fmt.release();
+        }
+    }
+
+    private void configureRenameDetection(ChangeOnlyDiffFormatter diffFmt) {
+        diffFmt.setDetectRenames(true);
+        final RenameDetector detector = diffFmt.getRenameDetector();
+
+        try {
+            detector.setRenameScore(getHookSetting(GitHandler.RENAME_SCORE_SETTING,
+                    detector.getRenameScore()));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Invalid rename score; using the default: {0}", detector.getRenameScore());
+        }
+        detector.setRenameLimit(getHookSetting(GitHandler.RENAME_LIMIT_SETTING, detector.getRenameLimit()));
+        LOGGER.log(Level.FINER,
+                "Detecting renames with a score of {0} and a limit of {1}",
+                new Object[] {detector.getRenameScore(), detector.getRenameLimit()});
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The router and its matchers are kept around and cached on disk under the repository's meta
+     * directory such that they only need to be rebuilt when the content of one of the blacklist or
+     * whitelist files changes. They are not cached on disk when running as a native image since it
+     * is built without java serialization support.
+     */
+    @Override
+    public synchronized DirtyWordRouter getDirtyWordRouter() throws IOException {
+        final String hash = getDirtyWordsHash();
+
+        if ((dirtyWords == null) || !hash.equals(dirtyWordsHash)) {
+            final DirtyWordCache cache = DirtyWordCache.isSupported() ? new DirtyWordCache(new File(getCacheDir(),
+                    "dirty-words.ser")) : null;
+            DirtyWordRouter router = (cache != null) ? cache.load(hash) : null;
+
+            if (router == null) {
+                router = super.getDirtyWordRouter();
+                if (cache != null) {
+                    cache.save(hash, router);
+                }
+            }
+            this.dirtyWords = router;
+            this.dirtyWordsHash = hash;
+        } else {
+            LOGGER.finer("Reusing previously compiled dirty words");
+        }
+        return dirtyWords;
     }
 
     @Override
@@ -138,4 +762,242 @@ public class GitHandler extends RepositoryHandler {
                 "Value for [{0}, {1}, {2}] set to: {3}\n",
                 new Object[] {section, subsection, key, value});
     }
-}
\ No newline at end of file
+
+    /**
+     * A blob or a working tree file whose content is to be reported.
+     */
+    private static class Content {
+        private final String commit;
+
+        private final String path;
+
+        private final ObjectId id;
+
+        private final File file;
+
+        Content(String commit, String path, ObjectId id, File file) {
+            this.commit = commit;
+            this.path = path;
+            this.id = id;
+            this.file = file;
+        }
+    }
+
+    /**
+     * Walks the trees of the audited revisions, reporting the paths found and submitting the blobs
+     * to the workers. Each tree is only walked once per path and each blob is only submitted once
+     * per scope of dirty words unless excluded at the path where it is found.
+     */
+    private static class BlobWalk {
+        private final ObjectReader reader;
+
+        private final AuditListener listener;
+
+        private final ContentWorkers workers;
+
+        private final Set<String> paths = new HashSet<String>();
+
+        // the paths where each tree was walked
+        private final Map<ObjectId, Set<String>> trees = new HashMap<ObjectId, Set<String>>();
+
+        // the scopes for which each blob was submitted
+        private final Map<ObjectId, Set<String>> blobs = new HashMap<ObjectId, Set<String>>();
+
+        BlobWalk(ObjectReader reader, AuditListener listener, ContentWorkers workers) {
+            this.reader = reader;
+            this.listener = listener;
+            this.workers = workers;
+        }
+
+        void walk(ObjectId tree, String dir, String commit) throws Exception {
+            if (!BlobWalk.add(trees, tree, dir)) {
+                return;
+            }
+            GitHandler.reportPaths(reader, tree, dir, commit, paths, listener);
+            final String prefix = dir.isEmpty() ? "" : (dir + '/');
+
+            for (final CanonicalTreeParser p = new CanonicalTreeParser(null, reader, tree); !p.eof(); p.next()) {
+                final int mode = p.getEntryRawMode();
+                final String path = prefix + p.getEntryPathString();
+
+                if (FileMode.TREE.equals(mode)) {
+                    walk(p.getEntryObjectId(), path, commit);
+                } else if (!FileMode.GITLINK.equals(mode)) {
+                    submit(p.getEntryObjectId(), path, commit);
+                }
+            }
+        }
+
+        void submit(ObjectId blob, String path, String commit) throws Exception {
+            if (!workers.isExcluded(path) && BlobWalk.add(blobs, blob, listener.scope(path))) {
+                workers.submit(new Content(commit, path, blob, null));
+            }
+        }
+
+        /**
+         * Marks the specified tree and all its content as already reported without reporting them.
+         */
+        void skip(ObjectId tree, String dir) throws IOException {
+            if (!BlobWalk.add(trees, tree, dir)) {
+                return;
+            }
+            final String prefix = dir.isEmpty() ? "" : (dir + '/');
+
+            for (final CanonicalTreeParser p = new CanonicalTreeParser(null, reader, tree); !p.eof(); p.next()) {
+                final int mode = p.getEntryRawMode();
+                final String path = prefix + p.getEntryPathString();
+
+                if (FileMode.TREE.equals(mode)) {
+                    skip(p.getEntryObjectId(), path);
+                } else if (!FileMode.GITLINK.equals(mode) && !workers.isExcluded(path)) {
+                    BlobWalk.add(blobs, p.getEntryObjectId(), listener.scope(path));
+                }
+            }
+        }
+
+        private static boolean add(Map<ObjectId, Set<String>> seen, ObjectId id, String key) {
+            Set<String> keys = seen.get(id);
+
+            if (keys == null) {
+                keys = new HashSet<String>(2);
+                seen.put(id.copy(), keys);
+            }
+            return keys.add(key);
+        }
+    }
+
+    /**
+     * Reads and reports the content of blobs and working tree files from a pool of threads, each
+     * with its own object reader and buffer, as they are submitted by the thread walking the
+     * repository. They are handed over through a bounded queue such that the walk never gets too
+     * far ahead of the workers. Everything is done from the submitting thread when a single thread
+     * is requested.
+     */
+    private class ContentWorkers {
+        private final Content end = new Content(null, null, null, null);
+
+        private final AuditListener listener;
+
+        private final ScanFilter filter;
+
+        private final int threads;
+
+        private final BlockingQueue<Content> queue;
+
+        private final ExecutorService executor;
+
+        private final List<Future<Void>> futures;
+
+        private final ObjectReader reader;
+
+        private final byte[] buffer;
+
+        ContentWorkers(final AuditListener listener, int threads) throws IOException {
+            this.listener = listener;
+            this.filter = ScanFilter.create(GitHandler.this, GitHandler.NEW_TREE);
+            this.threads = Math.max(1, threads);
+            if (this.threads == 1) {
+                this.queue = null;
+                this.executor = null;
+                this.futures = null;
+                this.reader = repo.newObjectReader();
+                this.buffer = new byte[GitHandler.CHUNK_SIZE];
+                return;
+            }
+            this.queue = new ArrayBlockingQueue<Content>(this.threads * GitHandler.QUEUE_SIZE_PER_THREAD);
+            this.executor = Executors.newFixedThreadPool(this.threads);
+            this.futures = new ArrayList<Future<Void>>(this.threads);
+            this.reader = null;
+            this.buffer = null;
+            for (int t = 0; t < this.threads; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        final ObjectReader reader = repo.newObjectReader();
+                        final byte[] buffer = new byte[GitHandler.CHUNK_SIZE];
+
+                        try {
+                            for (Content c; (c = queue.take()) != end; ) {
+                                report(reader, buffer, c);
+                            }
+                        } finally {
+                            reader.release();
+                        }
+                        return null;
+                    }
+                }));
+            }
+        }
+
+        void submit(Content content) throws Exception {
+            if (queue == null) {
+                report(reader, buffer, content);
+                return;
+            }
+            // a worker only ever completes early when it fails in which case no one might be left
+            // to drain the queue
+            while (!queue.offer(content, GitHandler.QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                for (final Future<Void> f: futures) {
+                    if (f.isDone()) {
+                        GitHandler.await(f);
+                    }
+                }
+            }
+        }
+
+        void finish() throws Exception {
+            if (queue == null) {
+                return;
+            }
+            for (int t = 0; t < threads; t++) {
+                submit(end);
+            }
+            for (final Future<Void> f: futures) {
+                GitHandler.await(f);
+            }
+        }
+
+        /**
+         * Checks if the specified path is excluded from the scan regardless of its content.
+         */
+        boolean isExcluded(String path) {
+            return (filter != null) && filter.isExcluded(path);
+        }
+
+        void close() {
+            if (executor != null) {
+                executor.shutdownNow();
+            } else {
+                reader.release();
+            }
+        }
+
+        private void report(ObjectReader reader, byte[] buffer, Content c) throws IOException {
+            if (c.file != null) {
+                if ((filter != null) && filter.isExcluded(c.path, c.file)) {
+                    return;
+                }
+                if (c.file.length() > buffer.length) { // map large files instead of copying them
+                    GitHandler.streamMapped(listener, c);
+                } else {
+                    GitHandler.streamChunks(listener, c, new FileInputStream(c.file), buffer);
+                }
+                return;
+            }
+            if ((filter != null) && filter.isExcluded(c.path, reader, c.id)) {
+                return;
+            }
+            final ObjectLoader loader = reader.open(c.id, Constants.OBJ_BLOB);
+
+            if (loader.isLarge()) {
+                GitHandler.streamChunks(listener, c, loader.openStream(), buffer);
+            } else {
+                final byte[] raw = loader.getCachedBytes();
+
+                if (raw.length > 0) {
+                    listener.content(c.commit, c.path, raw, 0, raw.length);
+                }
+            }
+        }
+    }
+}
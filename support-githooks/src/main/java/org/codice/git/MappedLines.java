@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file through memory mapped windows, each one ending on a line boundary, such that large
+ * files can be scanned for dirty words without copying them on the heap or decoding them as a
+ * whole. Only the pages being scanned need to be loaded and the operating system can reclaim them
+ * as soon as the scan moves on.
+ * <p/>
+ * Instances of this class are not thread-safe.
+ */
+class MappedLines implements Closeable {
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final int window;
+
+    private long position;
+
+    /**
+     * Opens the specified file.
+     *
+     * @param file   the file to read
+     * @param window the maximum number of bytes to map at a time
+     * @throws IOException if unable to open the file
+     */
+    MappedLines(File file, int window) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.window = window;
+    }
+
+    /**
+     * Maps the next chunk of the file. Each chunk ends after the last new line character in its
+     * window unless it is the last one or a single line is larger than the window in which case the
+     * line is cut.
+     *
+     * @return the next chunk from its position to its limit or <code>null</code> if the end of the
+     * file was reached
+     * @throws IOException if unable to map the file
+     */
+    ByteBuffer next() throws IOException {
+        if (position >= size) {
+            return null;
+        }
+        final int len = (int) Math.min(window, size - position);
+        final MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position, len);
+        int end = len;
+
+        if (position + len < size) {
+            int eol = len - 1;
+
+            while ((eol >= 0) && (buf.get(eol) != '\n')) {
+                eol--;
+            }
+            if (eol >= 0) {
+                end = eol + 1;
+            }
+        }
+        position += end;
+        ((Buffer) buf).limit(end); // cast to stay binary compatible with Java 8
+        return buf;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -16,10 +16,13 @@ package org.codice.git;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -29,14 +32,22 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 public abstract class RepositoryHandler {
     private static final Logger LOGGER = Logger.getLogger(RepositoryHandler.class.getName());
 
     public static final String PREFIX_NONE = "NONE";
+    // the section for hook settings in the git config and prefix for system properties
+    public static final String SETTINGS_SECTION = "githooks";
     public static final String REGEX_PREFIX = "REGEX:";
+    // the scope of the dirty words that apply to all files
+    public static final String GLOBAL_SCOPE = "";
     // check for word boundaries with \b and also for underscores, ?: is to not capture
     public static final String REGEX_PATTERN = "(?:\\b|_)%s(?:\\b|_)";
+    // all dirty words are always matched case insensitive
+    public static final int PATTERN_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
 
     private final File basedir;
 
@@ -60,6 +71,15 @@ public abstract class RepositoryHandler {
      */
     public abstract File getMetadir();
 
+    /**
+     * Gets the directory where the hooks can cache information for the repository.
+     *
+     * @return the cache directory
+     */
+    public File getCacheDir() {
+        return new File(getMetadir(), "githooks");
+    }
+
     /**
      * Gets the local backlist words file for the repository.
      *
@@ -78,31 +98,61 @@ public abstract class RepositoryHandler {
         return new File(basedir, "whitelist-words.txt");
     }
 
+    /**
+     * Gets the user-defined blacklist words file (i.e. ~/.gitsetup/blacklist-words.txt).
+     *
+     * @return the user-defined blacklist words file or <code>null</code> if the user's home
+     * directory is not known
+     */
+    public File getUserBlacklistFile() {
+        final String uhome = System.getProperty("user.home");
+
+        if (StringUtils.isEmpty(uhome)) {
+            return null;
+        }
+        return new File(new File(uhome, ".gitsetup"), "blacklist-words.txt");
+    }
+
     /**
      * Combines the blacklist words (a.k.a. dirty) files gitsetup/blacklist-words.txt,
      * ~/.gitsetup/blacklist-words.txt, and the default one in resources/blacklist-words.txt and
      * remove those from the file gitsetup/whitelist-words.txt to return a map of all dirty words
-     * along with their corresponding regex patterns.
+     * along with their corresponding regex patterns. Only the words that apply outside of all
+     * scoped directories are returned (see {@link #getScopedDirtyWords()}).
      *
      * @return map containing each of the dirty words as a string with its corresponding regex pattern
      * @throws java.io.IOException if any error occurs reading the files
      */
     public Map<String, Pattern> getDirtyWords() throws IOException {
-        final Set<String> words = new HashSet<String>();
-        final String uhome = System.getProperty("user.home");
+        return getScopedDirtyWords().get(RepositoryHandler.GLOBAL_SCOPE);
+    }
+
+    /**
+     * Combines the blacklist and whitelist words files the same way as {@link #getDirtyWords()}
+     * while keeping track of the directories each entry is scoped to. Entries following a section
+     * header line such as <code>[vendor/**]</code> only apply to files under that directory; those
+     * following <code>[**]</code> or before any headers apply to all files. To not be confused with
+     * bracketed literal entries (e.g. <code>[SECRET]</code>), a header must contain a
+     * <code>/</code> or end with <code>**</code>. Only directory prefixes are supported as scopes;
+     * blacklisted entries in sections with other glob patterns apply to all files while
+     * whitelisted ones are ignored.
+     * <p/>
+     * The words for a given scope are all the blacklisted ones from that scope and all its parent
+     * scopes, including the global one, minus all the whitelisted ones from the same scopes.
+     *
+     * @return map containing each scope (e.g. <code>vendor/</code> or {@link #GLOBAL_SCOPE}) with
+     * a map of its dirty words along with their corresponding regex patterns
+     * @throws java.io.IOException if any error occurs reading the files
+     */
+    public Map<String, Map<String, Pattern>> getScopedDirtyWords() throws IOException {
+        final Map<String, Set<String>> blacklist = new HashMap<String, Set<String>>();
+        final Map<String, Set<String>> whitelist = new HashMap<String, Set<String>>();
+        final File ubfile = getUserBlacklistFile();
 
         // start with ~/.gitsetup/blacklist-words.txt
-        if (StringUtils.isNotEmpty(uhome)) {
-            final File ubfile = new File(new File(uhome, ".gitsetup"), "blacklist-words.txt");
-
-            if (ubfile.exists()) {
-                LOGGER.log(Level.FINE, "Loading user-defined blacklist from: {0}", ubfile);
-                for (final String l: FileUtils.readLines(ubfile, Charsets.UTF_8)) {
-                    if (!l.isEmpty() && !l.startsWith("#")) {
-                        words.add(l);
-                    }
-                }
-            }
+        if ((ubfile != null) && ubfile.exists()) {
+            LOGGER.log(Level.FINE, "Loading user-defined blacklist from: {0}", ubfile);
+            RepositoryHandler.addWords(blacklist, FileUtils.readLines(ubfile, Charsets.UTF_8), ubfile, true);
         }
         InputStream is = null;
 
@@ -111,11 +161,7 @@ public abstract class RepositoryHandler {
             is = GitHandler.class.getResourceAsStream("/blacklist-words.txt");
             if (is != null) {
                 LOGGER.log(Level.FINE, "Loading default blacklist");
-                for (final String l: IOUtils.readLines(is, Charsets.UTF_8)) {
-                    if (!l.isEmpty() && !l.startsWith("#")) {
-                        words.add(l);
-                    }
-                }
+                RepositoryHandler.addWords(blacklist, IOUtils.readLines(is, Charsets.UTF_8), "default blacklist", true);
             }
         } catch (IOException e) { // ignore and continue without defaults
         } finally {
@@ -127,30 +173,104 @@ public abstract class RepositoryHandler {
         // now add /git/XXX/gitsetup/blacklist-words.txt
         if (bfile.exists()) {
             LOGGER.log(Level.FINE, "Loading local blacklist from: {0}", bfile);
-            for (final String l: FileUtils.readLines(bfile, Charsets.UTF_8)) {
-                if (!l.isEmpty() && !l.startsWith("#")) {
-                    words.add(l);
-                }
-            }
+            RepositoryHandler.addWords(blacklist, FileUtils.readLines(bfile, Charsets.UTF_8), bfile, true);
         }
         // finally remove /git/XXX/gitsetup/whitelist-words.txt
-        if (!words.isEmpty() && wfile.exists()) {
+        if (!blacklist.isEmpty() && wfile.exists()) {
             LOGGER.log(Level.FINE, "Loading local whitelist from: {0}", wfile);
-            for (final String l: FileUtils.readLines(wfile, Charsets.UTF_8)) {
-                if (!l.isEmpty() && !l.startsWith("#")) {
-                    words.remove(l);
+            RepositoryHandler.addWords(whitelist, FileUtils.readLines(wfile, Charsets.UTF_8), wfile, false);
+        }
+        final Set<String> scopes = new TreeSet<String>(blacklist.keySet());
+        final Map<String, Map<String, Pattern>> scoped = new HashMap<String, Map<String, Pattern>>();
+        // the patterns are shared between scopes as compiling them is what's expensive
+        final Map<String, Pattern> patterns = new HashMap<String, Pattern>();
+
+        scopes.addAll(whitelist.keySet());
+        scopes.add(RepositoryHandler.GLOBAL_SCOPE);
+        for (final String scope: scopes) {
+            final Set<String> words = new HashSet<String>();
+
+            for (final String s: scopes) { // parent scopes are prefixes of their children
+                if (scope.startsWith(s) && blacklist.containsKey(s)) {
+                    words.addAll(blacklist.get(s));
+                }
+            }
+            for (final String s: scopes) {
+                if (scope.startsWith(s) && whitelist.containsKey(s)) {
+                    words.removeAll(whitelist.get(s));
                 }
             }
+            LOGGER.log(Level.FINE,
+                    "Dirty Words are: {0}",
+                    scope.isEmpty() ? words : scope + ' ' + words);
+            // generate all regex patterns for all dirty words
+            final Map<String, Pattern> wordmap = new HashMap<String, Pattern>(words.size() * 3 / 2);
+
+            for (final String w: words) {
+                Pattern p = patterns.get(w);
+
+                if (p == null) {
+                    // quote the word if it is a literal one (not starting with regex prefix)
+                    p = getPatternFor(w);
+                    patterns.put(w, p);
+                }
+                wordmap.put(w, p);
+            }
+            scoped.put(scope, wordmap);
         }
-        LOGGER.log(Level.FINE, "Dirty Words are: {0}", words);
-        // generate all regex patterns for all dirty words
-        final Map<String, Pattern> wordmap = new HashMap<String, Pattern>(words.size() * 3 / 2);
+        return scoped;
+    }
+
+    /**
+     * Gets a router that picks a matcher capable of scanning for all dirty words that apply to a
+     * given file in a single pass (see {@link #getScopedDirtyWords()}).
+     *
+     * @return a router for all scoped dirty words
+     * @throws java.io.IOException if any error occurs reading the files
+     */
+    public DirtyWordRouter getDirtyWordRouter() throws IOException {
+        final Map<String, Map<String, Pattern>> words = getScopedDirtyWords();
+
+        return new DirtyWordRouter((words != null) ? words : Collections.<String, Map<String, Pattern>>emptyMap());
+    }
+
+    /**
+     * Gets a matcher capable of scanning for all dirty words returned by {@link #getDirtyWords()}
+     * in a single pass.
+     *
+     * @return a matcher for all dirty words
+     * @throws java.io.IOException if any error occurs reading the files
+     */
+    public DirtyWordMatcher getDirtyWordMatcher() throws IOException {
+        return getDirtyWordRouter().getGlobalMatcher();
+    }
+
+    /**
+     * Computes a hash of the content of all files used by {@link #getDirtyWords()} to build the set
+     * of dirty words. The hash changes whenever any of these files is modified, added, or removed.
+     *
+     * @return a hex string representing the hash of all dirty words sources
+     * @throws java.io.IOException if any error occurs reading the files
+     */
+    public String getDirtyWordsHash() throws IOException {
+        final Hasher hasher = Hashing.sha1()
+                .newHasher();
+        InputStream is = null;
 
-        for (final String w: words) {
-            // quote the word if it is a literal one (not starting with regex prefix)
-            wordmap.put(w, getPatternFor(w));
+        // include how literals are turned into patterns as it affects what gets matched
+        hasher.putString(RepositoryHandler.REGEX_PATTERN, Charsets.UTF_8)
+                .putInt(RepositoryHandler.PATTERN_FLAGS);
+        RepositoryHandler.putFile(hasher, getUserBlacklistFile());
+        try {
+            is = GitHandler.class.getResourceAsStream("/blacklist-words.txt");
+            RepositoryHandler.putBytes(hasher, (is != null) ? IOUtils.toByteArray(is) : null);
+        } finally {
+            IOUtils.closeQuietly(is);
         }
-        return wordmap;
+        RepositoryHandler.putFile(hasher, getBlacklistFile());
+        RepositoryHandler.putFile(hasher, getWhitelistFile());
+        return hasher.hash()
+                .toString();
     }
 
     /**
@@ -190,8 +310,166 @@ public abstract class RepositoryHandler {
      */
     public abstract String getDiff() throws Exception;
 
+    /**
+     * Streams the same differences as {@link #getDiff()} to the specified listener, file by file,
+     * without materializing the complete diff in memory.
+     * <p/>
+     * The default implementation parses the result of {@link #getDiff()}; subclasses should override
+     * it to push the added lines as they are being generated.
+     *
+     * @param listener the listener to notify of the new content for each files
+     * @throws java.io.IOException                         if any exceptions occur during processing
+     * @throws org.eclipse.jgit.api.errors.NoHeadException if no git repository can be found
+     */
+    public void streamDiff(DiffListener listener) throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        String file = null;
+
+        for (final String line: StringUtils.split(StringUtils.defaultString(getDiff()), '\n')) {
+            if (line.startsWith("+++ b/")) {
+                if (file != null) {
+                    RepositoryHandler.endFile(listener, file, sb);
+                }
+                file = StringUtils.substringAfter(line, "+++ b/");
+                listener.startFile(file);
+                continue;
+            }
+            if (file == null) {
+                file = "???";
+                listener.startFile(file);
+            }
+            sb.append(line.startsWith("+") ? line.substring(1) : line)
+                    .append('\n');
+        }
+        if (file != null) {
+            RepositoryHandler.endFile(listener, file, sb);
+        }
+    }
+
+    /**
+     * Streams the same differences as {@link #getDiff()} to the specified listener, file by file,
+     * using up to the specified number of threads to generate the differences for different files
+     * concurrently.
+     * <p/>
+     * The default implementation ignores the number of threads and calls
+     * {@link #streamDiff(DiffListener)}.
+     *
+     * @param listener the thread-safe listener to notify of the new content for each files
+     * @param threads  the maximum number of threads to use
+     * @throws java.io.IOException                         if any exceptions occur during processing
+     * @throws org.eclipse.jgit.api.errors.NoHeadException if no git repository can be found
+     */
+    public void streamDiff(DiffListener listener, int threads) throws Exception {
+        streamDiff(listener);
+    }
+
+    /**
+     * Streams the message and the new content of each commit in the specified revision range to the
+     * given listener using up to the specified number of threads to process different commits
+     * concurrently. The range is expressed as <code>from..to</code> (e.g.
+     * <code>origin/master..HEAD</code>) to include all commits reachable from <code>to</code> but not
+     * from <code>from</code> or as a single revision to include all its ancestors.
+     * <p/>
+     * The default implementation does not support commit ranges.
+     *
+     * @param range    the revision range to walk
+     * @param listener the thread-safe listener to notify of each commit
+     * @param threads  the maximum number of threads to use
+     * @throws java.io.IOException           if any exceptions occur during processing or if the range
+     *                                       cannot be resolved
+     * @throws UnsupportedOperationException if commit ranges are not supported
+     */
+    public void streamCommits(String range, CommitListener listener, int threads) throws Exception {
+        throw new UnsupportedOperationException("commit ranges are not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Streams the path and the content of every file reachable from the specified revisions to the
+     * given listener, reporting each distinct path and each distinct content only once, using up to
+     * the specified number of threads to read and report the content concurrently. Revisions can be
+     * expressed as ranges the same way as for {@link #streamCommits}.
+     * <p/>
+     * The default implementation does not support auditing revisions.
+     *
+     * @param revs     the revisions to audit or an empty list to audit all references
+     * @param listener the thread-safe listener to notify of each path and content
+     * @param threads  the maximum number of threads to use
+     * @throws java.io.IOException           if any exceptions occur during processing or if a
+     *                                       revision cannot be resolved
+     * @throws UnsupportedOperationException if auditing revisions is not supported
+     */
+    public void streamBlobs(List<String> revs, AuditListener listener, int threads) throws Exception {
+        throw new UnsupportedOperationException("auditing revisions is not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Streams the path and the content of every file in the working tree, except for the ignored
+     * ones, to the given listener using up to the specified number of threads to read and report
+     * the content concurrently.
+     * <p/>
+     * The default implementation does not support auditing the working tree.
+     *
+     * @param listener the thread-safe listener to notify of each path and content
+     * @param threads  the maximum number of threads to use
+     * @throws java.io.IOException           if any exceptions occur during processing
+     * @throws UnsupportedOperationException if auditing the working tree is not supported
+     */
+    public void streamWorkTree(AuditListener listener, int threads) throws Exception {
+        throw new UnsupportedOperationException("auditing the working tree is not supported by " + getClass().getSimpleName());
+    }
+
+    private static void endFile(DiffListener listener, String file, StringBuilder sb)
+            throws IOException {
+        if (sb.length() > 0) {
+            listener.addedLines(file, sb);
+            sb.setLength(0);
+        }
+        listener.endFile(file);
+    }
+
     public abstract String getConfigString(String section, String subsection, String key);
 
+    /**
+     * Gets the value of a setting for the hooks. The value is first looked up from the system
+     * property <code>githooks.&lt;key&gt;</code> and then from the git config
+     * <code>githooks.&lt;key&gt;</code>.
+     *
+     * @param key the key for the setting
+     * @return the corresponding value or <code>null</code> if not defined
+     */
+    public String getHookSetting(String key) {
+        final String value = System.getProperty(RepositoryHandler.SETTINGS_SECTION + '.' + key);
+
+        if (StringUtils.isNotEmpty(value)) {
+            return value;
+        }
+        return getConfigString(RepositoryHandler.SETTINGS_SECTION, null, key);
+    }
+
+    /**
+     * Gets the integer value of a setting for the hooks.
+     *
+     * @param key  the key for the setting
+     * @param dflt the default value to return if not defined or invalid
+     * @return the corresponding value or <code>dflt</code> if not defined or invalid
+     * @see #getHookSetting(String)
+     */
+    public int getHookSetting(String key, int dflt) {
+        final String value = StringUtils.trim(getHookSetting(key));
+
+        if (StringUtils.isEmpty(value)) {
+            return dflt;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING,
+                    "Invalid value for hook setting {0}: {1}",
+                    new Object[] {key, value});
+            return dflt;
+        }
+    }
+
     public abstract void setConfigString(String section, String subsection, String key, String value) throws IOException;
 
     protected Pattern getPatternFor(String dirtyWord) {
@@ -199,6 +477,107 @@ public abstract class RepositoryHandler {
         final String rw = dirtyWord.startsWith(RepositoryHandler.REGEX_PREFIX) ? dirtyWord.substring(RepositoryHandler.REGEX_PREFIX.length()) : Pattern.quote(dirtyWord);
 
         return Pattern.compile(String.format(RepositoryHandler.REGEX_PATTERN, rw),
-                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+                RepositoryHandler.PATTERN_FLAGS);
+    }
+
+    /**
+     * Adds the entries from the specified lines of a blacklist or whitelist file to the words of
+     * the scope they are in. Blacklisted entries following an unsupported section header are
+     * added to the global scope such that they are still checked everywhere whereas whitelisted
+     * ones are ignored.
+     *
+     * @param words     the map of scopes to their words where to add the entries
+     * @param lines     the lines of the file
+     * @param source    the source of the lines for logging purposes
+     * @param blacklist <code>true</code> if the lines are from a blacklist file; <code>false</code>
+     *                  if they are from a whitelist file
+     */
+    private static void addWords(Map<String, Set<String>> words, List<String> lines, Object source, boolean blacklist) {
+        String scope = RepositoryHandler.GLOBAL_SCOPE;
+
+        for (final String l: lines) {
+            if (l.isEmpty() || l.startsWith("#")) {
+                continue;
+            }
+            if (RepositoryHandler.isSectionHeader(l)) {
+                scope = RepositoryHandler.parseScope(l.substring(1, l.length() - 1));
+                if (scope != null) {
+                    LOGGER.log(Level.FINE,
+                            "Section {0} in {1} scopes the following entries to: {2}",
+                            new Object[] {l, source, scope.isEmpty() ? "all files" : scope});
+                } else if (blacklist) {
+                    LOGGER.log(Level.WARNING,
+                            "Unsupported section {0} in {1} applies the following entries to all files; only directories can be specified",
+                            new Object[] {l, source});
+                    scope = RepositoryHandler.GLOBAL_SCOPE;
+                } else {
+                    LOGGER.log(Level.WARNING,
+                            "Ignoring unsupported section {0} in {1}; only directories can be specified",
+                            new Object[] {l, source});
+                }
+            } else if (scope != null) {
+                Set<String> swords = words.get(scope);
+
+                if (swords == null) {
+                    swords = new HashSet<String>();
+                    words.put(scope, swords);
+                }
+                swords.add(l);
+            }
+        }
+    }
+
+    /**
+     * Checks if the specified line from a blacklist or whitelist file is a section header. Only
+     * bracketed globs containing a <code>/</code> or ending with <code>**</code> are headers such
+     * that bracketed literal entries (e.g. <code>[SECRET]</code>) are still treated as words.
+     *
+     * @param line the line to check
+     * @return <code>true</code> if it is a section header; <code>false</code> otherwise
+     */
+    static boolean isSectionHeader(String line) {
+        if ((line.length() < 3) || !line.startsWith("[") || !line.endsWith("]")) {
+            return false;
+        }
+        final String glob = line.substring(1, line.length() - 1)
+                .trim();
+
+        return glob.contains("/") || glob.endsWith("**");
+    }
+
+    /**
+     * Parses the glob from a section header into a scope.
+     *
+     * @param glob the glob (e.g. <code>vendor/**</code>, <code>vendor/</code> or <code>**</code>)
+     * @return the corresponding scope (e.g. <code>vendor/</code>) or <code>null</code> if the glob
+     * is not a directory prefix
+     */
+    static String parseScope(String glob) {
+        String g = StringUtils.removeStart(StringUtils.trimToEmpty(glob), "/");
+
+        if (g.equals("**")) {
+            return RepositoryHandler.GLOBAL_SCOPE;
+        }
+        g = StringUtils.removeEnd(g, "**");
+        if (g.isEmpty() || StringUtils.containsAny(g, "*?[]\\") || g.contains("//")) {
+            return null;
+        }
+        return g.endsWith("/") ? g : (g + '/');
+    }
+
+    private static void putFile(Hasher hasher, File file) throws IOException {
+        RepositoryHandler.putBytes(hasher,
+                ((file != null) && file.exists()) ? FileUtils.readFileToByteArray(file) : null);
+    }
+
+    private static void putBytes(Hasher hasher, byte[] bytes) {
+        // prefix with the length to distinguish a missing file from an empty one and not rely on
+        // separators between the files
+        if (bytes == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(bytes.length)
+                    .putBytes(bytes);
+        }
     }
 }
@@ -0,0 +1,326 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Tree filter used when scanning the staged changes to exclude files whose content should not be
+ * scanned for dirty words. Files can be excluded based on:
+ * <ul>
+ * <li>glob patterns listed in gitsetup/scan-excludes.txt; patterns without a '/' are matched against
+ * the file or directory name while others are matched against the path from the root of the
+ * repository</li>
+ * <li>their staged size (see {@link #MAX_SIZE_SETTING})</li>
+ * <li>their content being binary (see {@link #SKIP_BINARY_SETTING}) which is determined by only
+ * looking at the first few bytes of the staged blob</li>
+ * </ul>
+ * Excluding a directory excludes all files underneath. All checks are done while walking the trees
+ * before any diffs are computed. The paths of the excluded files are recorded such that their names
+ * can still be scanned.
+ * <p/>
+ * Instances of this class are meant to be used for a single walk and are not thread-safe. The
+ * <code>isExcluded</code> methods used to check blobs outside of a walk do not record anything
+ * and can be called concurrently.
+ */
+public class ScanFilter extends TreeFilter {
+    public static final String EXCLUDES_FILE = "scan-excludes.txt";
+
+    // the maximum staged size of files to be scanned in bytes (0 for no limits)
+    public static final String MAX_SIZE_SETTING = "scanMaxFileSize";
+
+    // whether binary files should not be scanned
+    public static final String SKIP_BINARY_SETTING = "skipBinaryFiles";
+
+    private static final Logger LOGGER = Logger.getLogger(ScanFilter.class.getName());
+
+    // the same number of bytes git looks at to determine if content is binary
+    private static final int BINARY_PEEK_SIZE = 8000;
+
+    private final List<PathMatcher> nameExcludes = new ArrayList<PathMatcher>();
+
+    private final List<PathMatcher> pathExcludes = new ArrayList<PathMatcher>();
+
+    private final long maxSize;
+
+    private final boolean skipBinary;
+
+    private final int tree;
+
+    private final List<String> skipped = new ArrayList<String>();
+
+    /**
+     * Instantiates a new filter.
+     *
+     * @param excludes   the glob patterns for the files to exclude
+     * @param maxSize    the maximum staged size of files to include or 0 for no limits
+     * @param skipBinary <code>true</code> to exclude binary files; <code>false</code> to include them
+     * @param tree       the index of the tree in the walk representing the staged files
+     */
+    public ScanFilter(List<String> excludes, long maxSize, boolean skipBinary, int tree) {
+        final FileSystem fs = FileSystems.getDefault();
+
+        for (final String e: excludes) {
+            final String glob = StringUtils.strip(e.trim(), "/");
+
+            if (glob.isEmpty()) {
+                continue;
+            }
+            if (glob.indexOf('/') == -1) {
+                nameExcludes.add(fs.getPathMatcher("glob:" + glob));
+            } else {
+                pathExcludes.add(fs.getPathMatcher("glob:" + glob));
+            }
+        }
+        this.maxSize = maxSize;
+        this.skipBinary = skipBinary;
+        this.tree = tree;
+    }
+
+    /**
+     * Creates a filter based on the configuration for the specified repository.
+     *
+     * @param handler the repository handler
+     * @param tree    the index of the tree in the walk representing the staged files
+     * @return the corresponding filter or <code>null</code> if nothing needs to be excluded
+     * @throws IOException if an error occurs while reading the excludes file
+     */
+    public static ScanFilter create(RepositoryHandler handler, int tree) throws IOException {
+        final File efile = new File(handler.getBasedir(), ScanFilter.EXCLUDES_FILE);
+        final List<String> excludes = new ArrayList<String>();
+
+        if (efile.exists()) {
+            LOGGER.log(Level.FINE, "Loading scan excludes from: {0}", efile);
+            for (final String l: FileUtils.readLines(efile, Charsets.UTF_8)) {
+                if (!l.trim()
+                        .isEmpty() && !l.startsWith("#")) {
+                    excludes.add(l);
+                }
+            }
+        }
+        final long maxSize = handler.getHookSetting(ScanFilter.MAX_SIZE_SETTING, 0);
+        final boolean skipBinary = Boolean.parseBoolean(handler.getHookSetting(ScanFilter.SKIP_BINARY_SETTING));
+
+        if (excludes.isEmpty() && (maxSize <= 0) && !skipBinary) {
+            return null;
+        }
+        return new ScanFilter(excludes, maxSize, skipBinary, tree);
+    }
+
+    /**
+     * Gets the paths of all files with staged content that were excluded so far.
+     *
+     * @return the paths of the excluded files
+     */
+    public List<String> getSkipped() {
+        return Collections.unmodifiableList(skipped);
+    }
+
+    @Override
+    public boolean include(TreeWalk walker) throws IOException {
+        final int mode = walker.getRawMode(tree);
+
+        // never prune directories as the names of the files inside still need to be checked and
+        // leave it to the diff to drop unchanged files
+        if ((mode == 0) || walker.isSubtree() || !TreeFilter.ANY_DIFF.include(walker)) {
+            return true;
+        }
+        final String path = walker.getPathString();
+
+        if (isExcluded(path) || (ScanFilter.isFile(mode) && (isTooBig(walker, path) || isBinary(walker,
+                path)))) {
+            skipped.add(path);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the specified blob should be excluded from the scan based on its path, size, or
+     * content. This is used when scanning blobs outside of a diff (e.g. when auditing a repository);
+     * excluded blobs are not recorded as skipped.
+     *
+     * @param path   the path of the blob from the root of the repository
+     * @param reader the reader to use to access the blob
+     * @param id     the id of the blob
+     * @return <code>true</code> if the blob is excluded; <code>false</code> otherwise
+     * @throws IOException if an error occurs while reading the blob
+     */
+    public boolean isExcluded(String path, ObjectReader reader, ObjectId id) throws IOException {
+        if (isExcluded(path) || isTooBig(path, reader.getObjectSize(id, Constants.OBJ_BLOB))) {
+            return true;
+        }
+        if (!skipBinary) {
+            return false;
+        }
+        final ObjectLoader loader = reader.open(id, Constants.OBJ_BLOB);
+
+        return isBinary(path, loader.openStream(), loader.getSize());
+    }
+
+    /**
+     * Checks if the specified file from the working tree should be excluded from the scan based on
+     * its path, size, or content.
+     *
+     * @param path the path of the file from the root of the repository
+     * @param file the file in the working tree
+     * @return <code>true</code> if the file is excluded; <code>false</code> otherwise
+     * @throws IOException if an error occurs while reading the file
+     */
+    public boolean isExcluded(String path, File file) throws IOException {
+        final long size = file.length();
+
+        if (isExcluded(path) || isTooBig(path, size)) {
+            return true;
+        }
+        return skipBinary && isBinary(path, new FileInputStream(file), size);
+    }
+
+    @Override
+    public boolean shouldBeRecursive() {
+        return false;
+    }
+
+    @Override
+    public TreeFilter clone() {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "SCAN_FILTER";
+    }
+
+    /**
+     * Checks if the specified path or any of its parent directories is excluded by one of the glob
+     * patterns.
+     *
+     * @param path the path from the root of the repository
+     * @return <code>true</code> if the path is excluded; <code>false</code> otherwise
+     */
+    boolean isExcluded(String path) {
+        int start = 0;
+
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+
+            if (end == -1) {
+                end = path.length();
+            }
+            if (ScanFilter.matches(nameExcludes, path.substring(start, end)) || ScanFilter.matches(
+                    pathExcludes,
+                    path.substring(0, end))) {
+                LOGGER.log(Level.FINER, "Excluding {0} from scan", path);
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, String path) {
+        if (matchers.isEmpty()) {
+            return false;
+        }
+        final Path p = Paths.get(path);
+
+        for (final PathMatcher m: matchers) {
+            if (m.matches(p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isFile(int mode) {
+        return FileMode.REGULAR_FILE.equals(mode) || FileMode.EXECUTABLE_FILE.equals(mode);
+    }
+
+    private boolean isTooBig(TreeWalk walker, String path) throws IOException {
+        if (maxSize <= 0) {
+            return false;
+        }
+        final DirCacheIterator i = walker.getTree(tree, DirCacheIterator.class);
+        final DirCacheEntry e = (i != null) ? i.getDirCacheEntry() : null;
+        long size = (e != null) ? e.getLength() : 0L;
+
+        if (size == 0L) { // length is not known or was smudged; get it from the blob itself
+            size = walker.getObjectReader()
+                    .getObjectSize(walker.getObjectId(tree), Constants.OBJ_BLOB);
+        }
+        return isTooBig(path, size);
+    }
+
+    private boolean isTooBig(String path, long size) {
+        if ((maxSize > 0) && (size > maxSize)) {
+            LOGGER.log(Level.FINER, "Excluding {0} from scan as it is too big: {1}", new Object[] {path, size});
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isBinary(TreeWalk walker, String path) throws IOException {
+        if (!skipBinary) {
+            return false;
+        }
+        final ObjectLoader loader = walker.getObjectReader()
+                .open(walker.getObjectId(tree), Constants.OBJ_BLOB);
+
+        return isBinary(path, loader.openStream(), loader.getSize());
+    }
+
+    private boolean isBinary(String path, InputStream is, long size) throws IOException {
+        try {
+            final byte[] buf = new byte[(int) Math.min(BINARY_PEEK_SIZE, size)];
+            final int n = IOUtils.read(is, buf);
+
+            if (RawText.isBinary(buf, n)) {
+                LOGGER.log(Level.FINER, "Excluding {0} from scan as it is binary", path);
+                return true;
+            }
+            return false;
+        } finally {
+            is.close();
+        }
+    }
+}
@@ -51,7 +51,9 @@ public class Setup {
      * Entry point for the git hook installation/cleanup. Invoked by the pom file based on the maven
      * phases: clean or install with argument "clean" or "install".
      *
-     * @param args the basedir where the gitsetup pom.xml is defined and "clean" or "install"
+     * @param args the basedir where the gitsetup pom.xml is defined, "clean" or "install", and for
+     *             "install" the optional maven settings file, self-contained hooks jar, and native
+     *             hooks executable
      */
     public static void main(String[] args) {
         try {
@@ -84,9 +86,13 @@ public class Setup {
                         settings = new File(settings).getAbsolutePath();
                     }
                 }
-                GitHooks.install(handler, settings);
+                final File hooksJar = Setup.getFileArgument(args, 3);
+                final File hooksBinary = Setup.getFileArgument(args, 4);
+
+                GitHooks.install(handler, settings, hooksJar, hooksBinary);
                 Setup.validateAndUpdateGitConfig(handler);
                 GitHooks.downloadBlacklist(handler, settings, true);
+                GitHooks.generateClassDataArchive(handler, settings);
             }
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Exception caught: " + e.getMessage(), e);
@@ -94,6 +100,14 @@ public class Setup {
         }
     }
 
+    private static File getFileArgument(String[] args, int index) {
+        // maven will expand the property to "null" if it is not defined
+        if ((args.length > index) && StringUtils.isNotEmpty(args[index]) && !"null".equals(args[index])) {
+            return new File(args[index]);
+        }
+        return null;
+    }
+
     private static void validateAndUpdateGitConfig(RepositoryHandler handler) throws IOException {
         final String autocrlf = handler.getConfigString("core", null, "autocrlf");
 
@@ -18,23 +18,35 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.exec.CommandLine;
 import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.PumpStreamHandler;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.codice.git.RepositoryHandler;
 
 import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
 
 /**
  * The artifact class is used to keep track of a particular artifact that can be downloaded via maven.
  */
 class Artifact {
-    private static final long MILLIS_PER_DAY = 1000L * 60L * 60L * 24L;
+    // whether artifacts should be fetched in process before falling back to forking maven
+    static final String EMBEDDED_RESOLVER_SETTING = "embeddedResolver";
+
+    // whether refreshes should first compare the remote checksum with the one of the last download
+    static final String CONDITIONAL_REFRESH_SETTING = "conditionalRefresh";
+
+    // when the artifact should be refreshed (see RefreshPolicy); defaults to the one cached at install
+    static final String REFRESH_POLICY_SETTING = "refreshPolicy";
 
     private static final Logger LOGGER = Logger.getLogger(Artifact.class.getName());
 
@@ -46,6 +58,8 @@ class Artifact {
 
     private final File infofile;
 
+    private final File checksumfile;
+
     private final boolean install;
 
     private final String iprefix;
@@ -56,6 +70,10 @@ class Artifact {
 
     protected String mvnName;
 
+    protected String mvnPolicy;
+
+    private ArtifactResolver resolver;
+
     /**
      * Instantiates a new artifact.
      *
@@ -70,11 +88,110 @@ class Artifact {
         this.name = name;
         this.file = file;
         this.infofile = infoFile;
+        this.checksumfile = new File(infoFile.getParentFile(),
+                FilenameUtils.getBaseName(infoFile.getName()) + ".sha1");
         this.install = install;
         this.iprefix = (install ? "[INFO] " : "");
         this.eprefix = (install ? "[ERROR] " : "");
     }
 
+    /**
+     * Downloads the artifact in process by fetching it directly from the remote repositories (see
+     * {@link ArtifactResolver}).
+     * <p/>
+     * <i>Note:</i> All exceptions are swallowed up and logged such that the caller can fall back to
+     * {@link #downloadUsingMaven}.
+     *
+     * @param settings the maven settings file or "" if using the default one
+     * @param out      the output stream where to print messages to the user
+     * @return <code>true</code> if the artifact was downloaded; <code>false</code> otherwise
+     */
+    protected boolean downloadUsingResolver(String settings, PrintStream out) {
+        if (!isEnabled(Artifact.EMBEDDED_RESOLVER_SETTING)) {
+            return false;
+        }
+        File tmp = null;
+
+        try {
+            final File resolved = getResolver(settings).resolve(mvnInfo);
+
+            if (install) { // be as quiet as maven when running from a hook
+                out.printf("%sCopying %s to %s.%n", iprefix, resolved, file);
+            }
+            tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile()
+                    .getParentFile());
+            // don't preserve the date as it is used to decide when to download it again
+            FileUtils.copyFile(resolved, tmp, false);
+            // replace atomically so concurrent hooks never see a partial file
+            Files.move(tmp.toPath(),
+                    file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING,
+                    "failed to resolve blacklist words artifact in process; falling back to maven",
+                    e);
+            return false;
+        } finally {
+            FileUtils.deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * Checks if the remote artifact is unchanged since it was last downloaded by comparing its
+     * published SHA-1 checksum with the one recorded for the last download. If it is, the artifact
+     * is marked as refreshed without being downloaded again.
+     * <p/>
+     * <i>Note:</i> All exceptions are swallowed up and logged in which case the artifact is assumed
+     * to have changed.
+     *
+     * @param settings the maven settings file or "" if using the default one
+     * @return <code>true</code> if the artifact is unchanged; <code>false</code> if it changed or
+     * if unable to tell
+     */
+    protected boolean isUnchanged(String settings) {
+        if (!file.exists() || !checksumfile.exists() || !isEnabled(Artifact.CONDITIONAL_REFRESH_SETTING)
+                || !isEnabled(Artifact.EMBEDDED_RESOLVER_SETTING)) {
+            return false;
+        }
+        try {
+            final String checksum = StringUtils.trim(FileUtils.readFileToString(checksumfile, Charsets.UTF_8));
+
+            if (!getResolver(settings).resolveChecksum(mvnInfo)
+                    .equalsIgnoreCase(checksum)) {
+                return false;
+            }
+            LOGGER.log(Level.FINE, "The {0} artifact is unchanged; not re-downloading.", name);
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                LOGGER.log(Level.WARNING, "failed to update {0} file", file.getName());
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "failed to check if the " + name + " artifact changed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Records the checksum of the artifact on disk such that the next refresh can check if it
+     * changed.
+     * <p/>
+     * <i>Note:</i> All exceptions are swallowed up if an error occurs.
+     */
+    public void writeChecksum() {
+        try {
+            FileUtils.writeStringToFile(checksumfile,
+                    Hashing.sha1()
+                            .hashBytes(FileUtils.readFileToByteArray(file))
+                            .toString(),
+                    Charsets.UTF_8);
+        } catch (IOException e) { // ignore and continue
+            LOGGER.log(Level.WARNING, "failed to record " + name + " artifact checksum", e);
+        }
+    }
+
     /**
      * Downloads the artifact using maven.
      *
@@ -103,6 +220,8 @@ class Artifact {
         final DefaultExecutor exec = new DefaultExecutor();
 
         exec.setExitValue(0);
+        // maven's output goes along with our messages rather than to our own stdout
+        exec.setStreamHandler(new PumpStreamHandler(out, out));
         try {
             exec.execute(cmd);
         } catch (IOException e) {
@@ -157,19 +276,21 @@ class Artifact {
     public void readInfo() {
         this.mvnInfo = null;
         this.mvnName = null;
+        this.mvnPolicy = null;
         if (!infofile.exists()) {
             return;
         }
         try {
             final String content = FileUtils.readFileToString(infofile, Charsets.UTF_8);
-            final int i = content.indexOf(',');
+            final String[] parts = content.split(",", 3);
 
             LOGGER.log(Level.FINE,
                     "The {0} artifact info cached is: {1}",
                     new Object[] {name, content});
-            if (i != -1) {
-                this.mvnInfo = content.substring(0, i);
-                this.mvnName = content.substring(i + 1);
+            if (parts.length > 1) {
+                this.mvnInfo = parts[0];
+                this.mvnName = parts[1];
+                this.mvnPolicy = (parts.length > 2) ? parts[2] : null;
             } else { // content invalid so continue without reloading
                 LOGGER.log(Level.WARNING, "The {0} artifact info is invalid", name);
             }
@@ -185,12 +306,28 @@ class Artifact {
      */
     public void writeInfo() {
         if ((mvnInfo != null) && !infofile.exists()) {
-            try {
-                LOGGER.log(Level.FINE, "caching {0} artifact info", name);
-                FileUtils.writeStringToFile(infofile, mvnInfo + ',' + mvnName, Charsets.UTF_8);
-            } catch (IOException e) { // ignore and continue
-                LOGGER.log(Level.WARNING, "failed to cache " + name + " artifact info", e);
-            }
+            saveInfo();
+        }
+    }
+
+    /**
+     * Gets the policy controlling when the artifact is refreshed. The policy configured through
+     * <code>githooks.refreshPolicy</code> takes precedence over the one cached with the artifact
+     * info.
+     *
+     * @return the refresh policy
+     */
+    public RefreshPolicy getRefreshPolicy() {
+        final String policy = StringUtils.defaultIfEmpty(getConfiguredPolicy(), mvnPolicy);
+
+        if (StringUtils.isEmpty(policy)) {
+            return RefreshPolicy.DAILY;
+        }
+        try {
+            return RefreshPolicy.parse(policy);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Invalid {0} refresh policy {1}; refreshing daily", new Object[] {name, policy});
+            return RefreshPolicy.DAILY;
         }
     }
 
@@ -276,6 +413,21 @@ class Artifact {
         this.mvnName = id + '.' + type;
     }
 
+    /**
+     * Checks if the artifact was previously downloaded and is now due to be refreshed. Artifacts
+     * that were manually copied in place are never refreshed.
+     *
+     * @return <code>true</code> if the artifact should be downloaded again; <code>false</code>
+     * otherwise
+     */
+    public boolean isRefreshDue() {
+        if (!file.exists() || !infofile.exists()) {
+            return false;
+        }
+        readInfo(); // for the cached refresh policy
+        return getRefreshPolicy().isDue(file.lastModified());
+    }
+
     /**
      * Downloads the artifact either dynamically (if already done in the past) or by prompting for
      * the maven artifact info (only at install time).
@@ -293,25 +445,74 @@ class Artifact {
                 return;
             }
             LOGGER.log(Level.FINE, "The {0} artifact info file exists.", name);
-            if (System.currentTimeMillis() - file.lastModified() < Artifact.MILLIS_PER_DAY) {
-                // only re-download it every day at max
-                LOGGER.log(Level.FINE,
-                        "The {0} file has been in existence for less than a day; not re-downloadings.",
-                        name);
-                return;
+        }
+        readInfo();
+        if (install) { // cache the policy in effect at install time for the hooks
+            cachePolicy();
+        }
+        final RefreshPolicy policy = getRefreshPolicy();
+
+        if (policy.isOffline()) {
+            if (!file.exists()) {
+                LOGGER.log(Level.WARNING, "The {0} file is missing and cannot be downloaded while offline.", name);
+                out.printf("%sThe %s file cannot be downloaded while offline.%n", iprefix, name);
             }
-            readInfo();
-        } else if (infofile.exists()) {
-            LOGGER.log(Level.FINE, "The {0} artifact info file doesn't exists.", name);
-            readInfo();
+            return;
+        }
+        if (file.exists() && !policy.isDue(file.lastModified())) {
+            LOGGER.log(Level.FINE,
+                    "The {0} file is not due to be refreshed ({1}); not re-downloading.",
+                    new Object[] {name, policy});
+            return;
         }
         if (install && (mvnInfo
                 == null)) { // prompt for the info the first time since we have nothing
             promptInfo(new BufferedReader(new InputStreamReader(System.in)), out);
         }
-        if (mvnInfo != null) { // we have info to download from
-            downloadUsingMaven(settings, out);
+        if ((mvnInfo != null) && !isUnchanged(settings)) { // we have info to download from
+            if (!downloadUsingResolver(settings, out)) {
+                downloadUsingMaven(settings, out);
+            }
             writeInfo(); // cache the artifact info since we donwloaded it successfully
+            writeChecksum();
+        }
+    }
+
+    private String getConfiguredPolicy() {
+        return StringUtils.trim(handler.getHookSetting(Artifact.REFRESH_POLICY_SETTING));
+    }
+
+    private void cachePolicy() {
+        final String policy = getConfiguredPolicy();
+
+        if (StringUtils.isEmpty(policy) || policy.equals(mvnPolicy)) {
+            return;
+        }
+        this.mvnPolicy = policy;
+        if (mvnInfo != null) { // otherwise it will be cached along with the info once prompted
+            saveInfo();
+        }
+    }
+
+    private void saveInfo() {
+        try {
+            LOGGER.log(Level.FINE, "caching {0} artifact info", name);
+            FileUtils.writeStringToFile(infofile,
+                    mvnInfo + ',' + mvnName + ((mvnPolicy != null) ? ',' + mvnPolicy : ""),
+                    Charsets.UTF_8);
+        } catch (IOException e) { // ignore and continue
+            LOGGER.log(Level.WARNING, "failed to cache " + name + " artifact info", e);
+        }
+    }
+
+    private boolean isEnabled(String setting) {
+        return !"false".equalsIgnoreCase(StringUtils.trim(handler.getHookSetting(setting)));
+    }
+
+    private ArtifactResolver getResolver(String settings) throws IOException {
+        if (resolver == null) { // share it such that repository metadata are only fetched once
+            this.resolver = new ArtifactResolver(settings);
         }
+        return resolver;
     }
 }
@@ -0,0 +1,796 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Resolves maven artifacts in process by fetching them directly from the remote repositories
+ * instead of forking a maven process. Only the JDK is used such that resolving artifacts doesn't
+ * weigh on the hooks classpath. Artifacts are resolved into the local repository from the
+ * repositories of the active profiles and central through the mirrors, proxies, and servers
+ * configured in the maven settings the same way maven would. <code>RELEASE</code>,
+ * <code>LATEST</code>, and snapshot versions are resolved from the repository metadata.
+ * <p/>
+ * <i>Note:</i> Encrypted passwords in the settings and proxies requiring authentication for https
+ * repositories are not supported; callers are expected to fall back to maven for those.
+ */
+class ArtifactResolver {
+    private static final Logger LOGGER = Logger.getLogger(ArtifactResolver.class.getName());
+
+    private static final String CENTRAL_ID = "central";
+
+    private static final String CENTRAL_URL = "https://repo.maven.apache.org/maven2";
+
+    private static final String METADATA_FILE = "maven-metadata.xml";
+
+    private static final String SNAPSHOT = "SNAPSHOT";
+
+    private static final Pattern SHA1_PATTERN = Pattern.compile("[0-9a-f]{40}");
+
+    private static final Pattern PROPERTY_PATTERN = Pattern.compile("\\$\\{([^}]+)\\}");
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+    private static final int READ_TIMEOUT_MILLIS = 60000;
+
+    private static final int MAX_REDIRECTS = 5;
+
+    private final Settings settings;
+
+    private final File localRepo;
+
+    private final List<Repository> repositories;
+
+    /**
+     * Instantiates a new resolver.
+     *
+     * @param settings the maven settings file or "" if using the default one
+     * @throws IOException if unable to load the maven settings
+     */
+    ArtifactResolver(String settings) throws IOException {
+        this.settings = ArtifactResolver.loadSettings(settings);
+        this.localRepo = StringUtils.isNotEmpty(this.settings.localRepository) ?
+                new File(this.settings.localRepository) :
+                new File(System.getProperty("user.home"), ".m2" + File.separator + "repository");
+        this.repositories = this.settings.getRepositories();
+    }
+
+    /**
+     * Resolves the specified artifact, downloading it into the local repository.
+     *
+     * @param coords the artifact's coordinates as
+     *               <code>group:artifact:version:type[:classifier]</code>
+     * @return the resolved artifact file in the local repository
+     * @throws IOException if unable to resolve the artifact
+     */
+    File resolve(String coords) throws IOException {
+        final Coordinates c = new Coordinates(coords);
+        final String version = resolveVersion(c);
+        final File file = new File(localRepo, c.getPath(version, version));
+
+        if (settings.offline) {
+            if (file.isFile()) {
+                return file;
+            }
+            throw new IOException("failed to resolve artifact while offline: " + coords);
+        }
+        IOException failure = null;
+
+        for (final Repository r: repositories) {
+            try {
+                if (r.isEnabledFor(version) && download(r,
+                        c.getPath(version, resolveSnapshot(r, c, version)),
+                        file)) {
+                    LOGGER.log(Level.FINE, "Resolved {0} from {1}", new Object[] {coords, r});
+                    return file;
+                }
+            } catch (IOException e) { // try the next one
+                LOGGER.log(Level.FINE, "Failed to resolve " + coords + " from " + r, e);
+                failure = e;
+            }
+        }
+        throw new IOException("failed to resolve artifact: " + coords, failure);
+    }
+
+    /**
+     * Resolves the SHA-1 checksum published for the specified artifact without downloading the
+     * artifact itself.
+     *
+     * @param coords the artifact's coordinates as
+     *               <code>group:artifact:version:type[:classifier]</code>
+     * @return the checksum as a lowercase hexadecimal string
+     * @throws IOException if unable to resolve the checksum or if it is invalid
+     */
+    String resolveChecksum(String coords) throws IOException {
+        final Coordinates c = new Coordinates(coords);
+        final String version = resolveVersion(c);
+        IOException failure = null;
+
+        if (settings.offline) {
+            throw new IOException("failed to resolve artifact checksum while offline: " + coords);
+        }
+        for (final Repository r: repositories) {
+            try {
+                final String sha1 = r.isEnabledFor(version) ?
+                        fetchChecksum(r, c.getPath(version, resolveSnapshot(r, c, version))) :
+                        null;
+
+                if (sha1 != null) {
+                    return sha1;
+                }
+            } catch (IOException e) { // try the next one
+                LOGGER.log(Level.FINE, "Failed to resolve checksum for " + coords + " from " + r, e);
+                failure = e;
+            }
+        }
+        throw new IOException("failed to resolve artifact checksum: " + coords, failure);
+    }
+
+    /**
+     * Resolves <code>RELEASE</code> and <code>LATEST</code> versions to the most recently updated
+     * one across all repositories.
+     */
+    private String resolveVersion(Coordinates c) throws IOException {
+        final boolean release = "RELEASE".equals(c.version);
+
+        if (!release && !"LATEST".equals(c.version)) {
+            return c.version;
+        }
+        if (settings.offline) {
+            throw new IOException("failed to resolve " + c.version + " version while offline: " + c);
+        }
+        String version = null;
+        String updated = null;
+        IOException failure = null;
+
+        for (final Repository r: repositories) {
+            if (release && !r.releases) {
+                continue;
+            }
+            final Element versioning;
+
+            try {
+                versioning = fetchVersioning(r, c.getGroupPath() + '/' + c.id + '/'
+                        + ArtifactResolver.METADATA_FILE);
+            } catch (IOException e) { // try the next one
+                LOGGER.log(Level.FINE, "Failed to resolve " + c.version + " version of " + c + " from " + r, e);
+                failure = e;
+                continue;
+            }
+            if (versioning != null) {
+                final String v = ArtifactResolver.getText(versioning, release ? "release" : "latest");
+                final String u = StringUtils.defaultString(ArtifactResolver.getText(versioning, "lastUpdated"));
+
+                if (StringUtils.isNotEmpty(v) && ((version == null) || (u.compareTo(updated) > 0))) {
+                    version = v;
+                    updated = u;
+                }
+            }
+        }
+        if (version == null) {
+            throw new IOException("no " + c.version + " version found for artifact: " + c, failure);
+        }
+        LOGGER.log(Level.FINE, "Resolved {0} to version {1}", new Object[] {c, version});
+        return version;
+    }
+
+    /**
+     * Resolves the timestamped version under which a snapshot was deployed to the specified
+     * repository or returns the version as is for releases.
+     */
+    private String resolveSnapshot(Repository r, Coordinates c, String version) throws IOException {
+        if (!version.endsWith('-' + ArtifactResolver.SNAPSHOT)) {
+            return version;
+        }
+        final Element versioning = fetchVersioning(r, c.getGroupPath() + '/' + c.id + '/' + version + '/'
+                + ArtifactResolver.METADATA_FILE);
+        final Element snapshot = ArtifactResolver.getChild(versioning, "snapshot");
+        final String timestamp = (snapshot != null) ? ArtifactResolver.getText(snapshot, "timestamp") : null;
+        final String build = (snapshot != null) ? ArtifactResolver.getText(snapshot, "buildNumber") : null;
+
+        if (StringUtils.isEmpty(timestamp) || StringUtils.isEmpty(build)) {
+            return version;
+        }
+        return StringUtils.removeEnd(version, ArtifactResolver.SNAPSHOT) + timestamp + '-' + build;
+    }
+
+    private Element fetchVersioning(Repository r, String path) throws IOException {
+        final InputStream in = open(r, path);
+
+        if (in == null) {
+            return null;
+        }
+        try {
+            final byte[] metadata = IOUtils.toByteArray(in);
+
+            return ArtifactResolver.getChild(ArtifactResolver.parse(new ByteArrayInputStream(metadata),
+                    r + "/" + path), "versioning");
+        } finally {
+            in.close();
+        }
+    }
+
+    private String fetchChecksum(Repository r, String path) throws IOException {
+        final InputStream in = open(r, path + ".sha1");
+
+        if (in == null) {
+            return null;
+        }
+        final String content;
+
+        try {
+            content = IOUtils.toString(in, Charsets.UTF_8);
+        } finally {
+            in.close();
+        }
+        // some tools append the file name after the checksum
+        final String sha1 = StringUtils.substringBefore(StringUtils.trim(content), " ")
+                .toLowerCase(Locale.ROOT);
+
+        if (!SHA1_PATTERN.matcher(sha1)
+                .matches()) {
+            throw new IOException("invalid checksum for: " + r + "/" + path);
+        }
+        return sha1;
+    }
+
+    /**
+     * Downloads the specified file from the given repository, verifies it against its published
+     * checksum according to the repository's checksum policy, and moves it in place atomically.
+     *
+     * @return <code>true</code> if downloaded; <code>false</code> if not found in the repository
+     */
+    private boolean download(Repository r, String path, File file) throws IOException {
+        final InputStream in = open(r, path);
+
+        if (in == null) {
+            return false;
+        }
+        File tmp = null;
+
+        try {
+            FileUtils.forceMkdir(file.getParentFile());
+            tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+            FileUtils.copyInputStreamToFile(in, tmp);
+            verifyChecksum(r, path, tmp);
+            // replace atomically so concurrent hooks never see a partial file
+            Files.move(tmp.toPath(),
+                    file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            return true;
+        } finally {
+            IOUtils.closeQuietly(in);
+            FileUtils.deleteQuietly(tmp);
+        }
+    }
+
+    private void verifyChecksum(Repository r, String path, File file) throws IOException {
+        if ("ignore".equals(r.checksumPolicy)) {
+            return;
+        }
+        final String expected = fetchChecksum(r, path);
+        final String actual = Hashing.sha1()
+                .hashBytes(FileUtils.readFileToByteArray(file))
+                .toString();
+
+        if ((expected != null) && expected.equals(actual)) {
+            return;
+        }
+        final String msg = ((expected == null) ? "no checksum published for: " : "checksum mismatch for: ")
+                + r + "/" + path;
+
+        if ("fail".equals(r.checksumPolicy)) {
+            throw new IOException(msg);
+        }
+        LOGGER.warning(msg);
+    }
+
+    /**
+     * Opens the specified file from the given repository.
+     *
+     * @return the corresponding stream or <code>null</code> if not found in the repository
+     */
+    private InputStream open(Repository r, String path) throws IOException {
+        URL url = new URL(StringUtils.removeEnd(r.url, "/") + '/' + path);
+        final String host = url.getHost();
+
+        for (int redirects = 0; ; redirects++) {
+            final String protocol = url.getProtocol();
+
+            if (!"http".equals(protocol) && !"https".equals(protocol)) {
+                try {
+                    return url.openStream();
+                } catch (FileNotFoundException e) {
+                    return null;
+                }
+            }
+            final ProxyInfo proxy = settings.getProxy(url);
+            final HttpURLConnection conn = (HttpURLConnection) ((proxy != null) ?
+                    url.openConnection(proxy.toProxy()) :
+                    url.openConnection());
+
+            conn.setInstanceFollowRedirects(false);
+            conn.setConnectTimeout(ArtifactResolver.CONNECT_TIMEOUT_MILLIS);
+            conn.setReadTimeout(ArtifactResolver.READ_TIMEOUT_MILLIS);
+            conn.setRequestProperty("User-Agent", "githooks");
+            // never send the credentials to another host we were redirected to
+            if ((r.username != null) && host.equals(url.getHost())) {
+                conn.setRequestProperty("Authorization", ArtifactResolver.basic(r.username, r.password));
+            }
+            if ((proxy != null) && (proxy.username != null)) {
+                conn.setRequestProperty("Proxy-Authorization",
+                        ArtifactResolver.basic(proxy.username, proxy.password));
+            }
+            final int status = conn.getResponseCode();
+
+            if (status == HttpURLConnection.HTTP_OK) {
+                return conn.getInputStream();
+            }
+            final String location = conn.getHeaderField("Location");
+
+            conn.disconnect();
+            if ((status == HttpURLConnection.HTTP_NOT_FOUND) || (status == HttpURLConnection.HTTP_GONE)) {
+                return null;
+            }
+            if ((status >= 300) && (status < 400) && (location != null)
+                    && (redirects < ArtifactResolver.MAX_REDIRECTS)) {
+                url = new URL(url, location);
+                continue;
+            }
+            throw new IOException("unexpected HTTP status " + status + " fetching: " + url);
+        }
+    }
+
+    private static String basic(String username, String password) {
+        return "Basic " + BaseEncoding.base64()
+                .encode((username + ':' + StringUtils.defaultString(password)).getBytes(Charsets.UTF_8));
+    }
+
+    private static Settings loadSettings(String file) throws IOException {
+        final Settings settings = new Settings();
+        final String home = StringUtils.defaultIfEmpty(System.getProperty("maven.home"),
+                StringUtils.defaultIfEmpty(System.getenv("M2_HOME"), System.getenv("MAVEN_HOME")));
+
+        // the user settings come first such that they take precedence over the global ones
+        settings.load(StringUtils.isNotEmpty(file) ?
+                new File(file) :
+                new File(System.getProperty("user.home"), ".m2" + File.separator + "settings.xml"));
+        if (StringUtils.isNotEmpty(home)) {
+            settings.load(new File(home, "conf" + File.separator + "settings.xml"));
+        }
+        return settings;
+    }
+
+    private static Element parse(InputStream in, String source) throws IOException {
+        try {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setExpandEntityReferences(false);
+            final DocumentBuilder builder = factory.newDocumentBuilder();
+
+            return builder.parse(in)
+                    .getDocumentElement();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("failed to parse: " + source, e);
+        }
+    }
+
+    private static List<Element> getChildren(Element parent, String name) {
+        final List<Element> children = new ArrayList<Element>();
+
+        if (parent != null) {
+            final NodeList nodes = parent.getChildNodes();
+
+            for (int i = 0; i < nodes.getLength(); i++) {
+                final Node n = nodes.item(i);
+
+                if ((n instanceof Element) && name.equals(((Element) n).getTagName())) {
+                    children.add((Element) n);
+                }
+            }
+        }
+        return children;
+    }
+
+    private static Element getChild(Element parent, String name) {
+        final List<Element> children = ArtifactResolver.getChildren(parent, name);
+
+        return children.isEmpty() ? null : children.get(0);
+    }
+
+    /**
+     * Gets the trimmed text of the specified child element with all <code>${property}</code> and
+     * <code>${env.VARIABLE}</code> references interpolated.
+     */
+    private static String getText(Element parent, String name) {
+        final Element child = ArtifactResolver.getChild(parent, name);
+
+        if (child == null) {
+            return null;
+        }
+        final Matcher m = PROPERTY_PATTERN.matcher(StringUtils.trim(child.getTextContent()));
+        final StringBuffer sb = new StringBuffer();
+
+        while (m.find()) {
+            final String key = m.group(1);
+            final String value = key.startsWith("env.") ?
+                    System.getenv(key.substring(4)) :
+                    System.getProperty(key);
+
+            m.appendReplacement(sb, Matcher.quoteReplacement((value != null) ? value : m.group()));
+        }
+        return m.appendTail(sb)
+                .toString();
+    }
+
+    private static boolean getBoolean(Element parent, String name, boolean dflt) {
+        final String value = ArtifactResolver.getText(parent, name);
+
+        return StringUtils.isEmpty(value) ? dflt : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Artifact coordinates.
+     */
+    private static class Coordinates {
+        private final String coords;
+
+        private final String group;
+
+        private final String id;
+
+        private final String version;
+
+        private final String type;
+
+        private final String classifier;
+
+        Coordinates(String coords) throws IOException {
+            final String[] parts = StringUtils.splitPreserveAllTokens(coords, ':');
+
+            if ((parts.length < 4) || (parts.length > 5) || StringUtils.isAnyEmpty(parts[0],
+                    parts[1],
+                    parts[2],
+                    parts[3])) {
+                throw new IOException("invalid artifact coordinates: " + coords);
+            }
+            this.coords = coords;
+            this.group = parts[0];
+            this.id = parts[1];
+            this.version = parts[2];
+            this.type = parts[3];
+            this.classifier = (parts.length > 4) ? parts[4] : "";
+        }
+
+        String getGroupPath() {
+            return group.replace('.', '/');
+        }
+
+        /**
+         * Gets the path of the artifact in a repository.
+         *
+         * @param version     the resolved version (e.g. <code>1.0-SNAPSHOT</code>)
+         * @param fileVersion the version used in the file name (e.g. the timestamped snapshot)
+         * @return the corresponding path
+         */
+        String getPath(String version, String fileVersion) {
+            return getGroupPath() + '/' + id + '/' + version + '/' + id + '-' + fileVersion
+                    + (classifier.isEmpty() ? "" : ('-' + classifier)) + '.' + type;
+        }
+
+        @Override
+        public String toString() {
+            return coords;
+        }
+    }
+
+    /**
+     * A remote repository as seen through its mirror if any.
+     */
+    private static class Repository {
+        private final String id;
+
+        private final String url;
+
+        private boolean releases;
+
+        private boolean snapshots;
+
+        private final String checksumPolicy;
+
+        private String username;
+
+        private String password;
+
+        Repository(String id, String url, boolean releases, boolean snapshots, String checksumPolicy) {
+            this.id = id;
+            this.url = url;
+            this.releases = releases;
+            this.snapshots = snapshots;
+            this.checksumPolicy = StringUtils.defaultIfEmpty(checksumPolicy, "warn");
+        }
+
+        boolean isEnabledFor(String version) {
+            return version.endsWith('-' + ArtifactResolver.SNAPSHOT) ? snapshots : releases;
+        }
+
+        boolean isExternal() {
+            final String host = StringUtils.substringBefore(StringUtils.substringAfter(url, "://"), "/");
+
+            return !url.startsWith("file:") && !host.startsWith("localhost") && !host.startsWith("127.0.0.1");
+        }
+
+        @Override
+        public String toString() {
+            return id + " (" + url + ")";
+        }
+    }
+
+    private static class ProxyInfo {
+        private final String host;
+
+        private final int port;
+
+        private final String username;
+
+        private final String password;
+
+        ProxyInfo(String host, int port, String username, String password) {
+            this.host = host;
+            this.port = port;
+            this.username = username;
+            this.password = password;
+        }
+
+        java.net.Proxy toProxy() {
+            return new java.net.Proxy(java.net.Proxy.Type.HTTP, new InetSocketAddress(host, port));
+        }
+    }
+
+    /**
+     * The parts of the maven settings relevant for resolving artifacts.
+     */
+    private static class Settings {
+        private String localRepository;
+
+        private boolean offline;
+
+        private final List<Element> mirrors = new ArrayList<Element>();
+
+        private final List<Element> proxies = new ArrayList<Element>();
+
+        private final Map<String, Element> servers = new LinkedHashMap<String, Element>();
+
+        private final Map<String, Element> profiles = new LinkedHashMap<String, Element>();
+
+        private final List<String> activeProfiles = new ArrayList<String>();
+
+        /**
+         * Loads the specified settings file if it exists. Settings already loaded take precedence.
+         */
+        void load(File file) throws IOException {
+            if (!file.isFile()) {
+                return;
+            }
+            LOGGER.log(Level.FINE, "Loading maven settings from: {0}", file);
+            final InputStream in = FileUtils.openInputStream(file);
+            final Element root;
+
+            try {
+                root = ArtifactResolver.parse(in, file.getPath());
+            } finally {
+                in.close();
+            }
+            this.localRepository = StringUtils.defaultIfEmpty(localRepository,
+                    ArtifactResolver.getText(root, "localRepository"));
+            this.offline |= ArtifactResolver.getBoolean(root, "offline", false);
+            mirrors.addAll(ArtifactResolver.getChildren(ArtifactResolver.getChild(root, "mirrors"), "mirror"));
+            proxies.addAll(ArtifactResolver.getChildren(ArtifactResolver.getChild(root, "proxies"), "proxy"));
+            for (final Element e: ArtifactResolver.getChildren(ArtifactResolver.getChild(root, "servers"),
+                    "server")) {
+                final String id = ArtifactResolver.getText(e, "id");
+
+                if ((id != null) && !servers.containsKey(id)) {
+                    servers.put(id, e);
+                }
+            }
+            for (final Element e: ArtifactResolver.getChildren(ArtifactResolver.getChild(root, "profiles"),
+                    "profile")) {
+                final String id = ArtifactResolver.getText(e, "id");
+
+                if ((id != null) && !profiles.containsKey(id)) {
+                    profiles.put(id, e);
+                }
+            }
+            for (final Element e: ArtifactResolver.getChildren(ArtifactResolver.getChild(root, "activeProfiles"),
+                    "activeProfile")) {
+                activeProfiles.add(StringUtils.trim(e.getTextContent()));
+            }
+        }
+
+        /**
+         * Gets the repositories from the active profiles followed by central, unless redefined,
+         * as seen through their mirrors and with the credentials for each.
+         */
+        List<Repository> getRepositories() {
+            final List<Repository> declared = new ArrayList<Repository>();
+            boolean central = false;
+
+            for (final Map.Entry<String, Element> p: profiles.entrySet()) {
+                final Element activation = ArtifactResolver.getChild(p.getValue(), "activation");
+
+                if (!activeProfiles.contains(p.getKey()) && !ArtifactResolver.getBoolean(activation,
+                        "activeByDefault",
+                        false)) {
+                    continue;
+                }
+                for (final Element e: ArtifactResolver.getChildren(ArtifactResolver.getChild(p.getValue(),
+                        "repositories"), "repository")) {
+                    final Element rel = ArtifactResolver.getChild(e, "releases");
+                    final Element snap = ArtifactResolver.getChild(e, "snapshots");
+                    final Repository r = new Repository(ArtifactResolver.getText(e, "id"),
+                            ArtifactResolver.getText(e, "url"),
+                            ArtifactResolver.getBoolean(rel, "enabled", true),
+                            ArtifactResolver.getBoolean(snap, "enabled", true),
+                            StringUtils.defaultIfEmpty(ArtifactResolver.getText(rel, "checksumPolicy"),
+                                    ArtifactResolver.getText(snap, "checksumPolicy")));
+
+                    if ((r.id != null) && (r.url != null)) {
+                        central |= ArtifactResolver.CENTRAL_ID.equals(r.id);
+                        declared.add(r);
+                    }
+                }
+            }
+            // like maven, central is always searched last unless redefined
+            if (!central) {
+                declared.add(new Repository(ArtifactResolver.CENTRAL_ID,
+                        ArtifactResolver.CENTRAL_URL,
+                        true,
+                        false,
+                        null));
+            }
+            final Map<String, Repository> repositories = new LinkedHashMap<String, Repository>();
+
+            for (final Repository r: declared) {
+                final Element mirror = getMirror(r);
+                final Repository m = (mirror != null) ?
+                        new Repository(ArtifactResolver.getText(mirror, "id"),
+                                ArtifactResolver.getText(mirror, "url"),
+                                r.releases,
+                                r.snapshots,
+                                r.checksumPolicy) :
+                        r;
+                final Repository existing = repositories.get(m.id);
+
+                if (existing != null) { // many repositories mirrored by the same one
+                    existing.releases |= m.releases;
+                    existing.snapshots |= m.snapshots;
+                    continue;
+                }
+                final Element server = servers.get(m.id);
+
+                if (server != null) {
+                    m.username = ArtifactResolver.getText(server, "username");
+                    m.password = ArtifactResolver.getText(server, "password");
+                }
+                repositories.put(m.id, m);
+            }
+            return new ArrayList<Repository>(repositories.values());
+        }
+
+        /**
+         * Gets the mirror for the specified repository favoring mirrors of that exact repository
+         * over mirrors matching it through patterns.
+         */
+        private Element getMirror(Repository r) {
+            for (final Element m: mirrors) {
+                if (r.id.equals(ArtifactResolver.getText(m, "mirrorOf"))) {
+                    return m;
+                }
+            }
+            for (final Element m: mirrors) {
+                if (Settings.isMirrorOf(r, ArtifactResolver.getText(m, "mirrorOf"))) {
+                    return m;
+                }
+            }
+            return null;
+        }
+
+        private static boolean isMirrorOf(Repository r, String mirrorOf) {
+            boolean matches = false;
+
+            for (final String p: StringUtils.split(StringUtils.defaultString(mirrorOf), ',')) {
+                final String pattern = StringUtils.trim(p);
+
+                if (pattern.equals("!" + r.id)) {
+                    return false;
+                }
+                matches |= pattern.equals(r.id) || "*".equals(pattern) || ("external:*".equals(pattern)
+                        && r.isExternal());
+            }
+            return matches;
+        }
+
+        /**
+         * Gets the active proxy configured for the specified URL's protocol unless its host is
+         * excluded from proxying.
+         */
+        ProxyInfo getProxy(URL url) {
+            for (final Element p: proxies) {
+                final String protocol = StringUtils.defaultIfEmpty(ArtifactResolver.getText(p, "protocol"),
+                        "http");
+
+                if (!ArtifactResolver.getBoolean(p, "active", true) || !protocol.equalsIgnoreCase(
+                        url.getProtocol())) {
+                    continue;
+                }
+                for (final String h: StringUtils.split(StringUtils.defaultString(ArtifactResolver.getText(p,
+                        "nonProxyHosts")), "|,")) {
+                    final String regex = Pattern.quote(StringUtils.trim(h))
+                            .replace("*", "\\E.*\\Q");
+
+                    if (url.getHost()
+                            .matches("(?i)" + regex)) {
+                        return null;
+                    }
+                }
+                final String port = ArtifactResolver.getText(p, "port");
+
+                return new ProxyInfo(ArtifactResolver.getText(p, "host"),
+                        StringUtils.isNotEmpty(port) ? Integer.parseInt(port) : 8080,
+                        ArtifactResolver.getText(p, "username"),
+                        ArtifactResolver.getText(p, "password"));
+            }
+            return null;
+        }
+    }
+}
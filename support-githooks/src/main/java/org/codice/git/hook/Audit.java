@@ -0,0 +1,258 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.codice.git.AuditListener;
+import org.codice.git.RepositoryHandler;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Audits a complete repository for dirty words, for example before open-sourcing it. Every path and
+ * every distinct content reachable from the specified revisions (all references by default) is
+ * scanned exactly once, no matter how many commits share them. Alternatively, the working tree can
+ * be audited, ignored files excepted. Contents are read and scanned concurrently using up to
+ * <code>githooks.scanThreads</code> threads.
+ * <p/>
+ * The hook expects <code>--worktree</code> or the revisions to audit (which can be ranges like
+ * <code>v1.0..master</code>) optionally followed by <code>--output</code> and the file where to
+ * write the report; it is written to the standard output otherwise. The report is a JSON document
+ * listing the words found per path along with the commit where the path or the content was first
+ * found (omitted for the working tree):
+ * <pre>
+ * {"scope":"all","paths":2,"clean":false,"findings":[
+ * {"path":"docs/Bill.txt","commit":"&lt;id&gt;","type":"path","words":["bill"]},
+ * {"path":"src/App.java","commit":"&lt;id&gt;","type":"content","words":["bill"]}
+ * ]}
+ * </pre>
+ * It can be invoked through {@link Hook#main} like any other hook or directly through {@link #main}.
+ */
+public class Audit extends Hook {
+    static final String WORKTREE_OPTION = "--worktree";
+
+    static final String OUTPUT_OPTION = "--output";
+
+    private static final Logger LOGGER = Logger.getLogger(Audit.class.getName());
+
+    // the findings keyed by path, type, and commit such that they are reported in that order
+    private final Map<String, Finding> found = new ConcurrentHashMap<String, Finding>();
+
+    private final AtomicInteger paths = new AtomicInteger();
+
+    public Audit(RepositoryHandler handler) throws IOException {
+        super(handler);
+    }
+
+    /**
+     * Entry point for auditing a repository from the command line.
+     *
+     * @param args the basedir where the gitsetup pom.xml is defined, the maven settings file (may be
+     *             empty), and the arguments for the hook
+     */
+    public static void main(String[] args) {
+        if (ArrayUtils.getLength(args) < 2) {
+            LOGGER.log(Level.WARNING, "Missing arguments");
+            System.exit(Hook.ERROR_CODE);
+        }
+        Hook.main(ArrayUtils.add(args, 2, Audit.class.getName()));
+    }
+
+    /**
+     * Audits the repository and writes the report.
+     *
+     * @param args <code>--worktree</code> or the revisions to audit, optionally followed by
+     *             <code>--output</code> and the file where to write the report
+     * @return <code>true</code> if dirty words were found or if the arguments are invalid;
+     * <code>false</code> otherwise
+     * @throws Exception if any errors occur while walking the repository or writing the report
+     */
+    @Override
+    public boolean executeHook(String[] args) throws Exception {
+        final List<String> revs = new ArrayList<String>();
+        boolean worktree = false;
+        String output = null;
+
+        for (int i = 0; i < ArrayUtils.getLength(args); i++) {
+            if (Audit.WORKTREE_OPTION.equals(args[i])) {
+                worktree = true;
+            } else if (Audit.OUTPUT_OPTION.equals(args[i])) {
+                if (++i == args.length) {
+                    LOGGER.log(Level.WARNING, "Missing report file argument");
+                    return true;
+                }
+                output = args[i];
+            } else {
+                revs.add(args[i]);
+            }
+        }
+        if (worktree && !revs.isEmpty()) {
+            LOGGER.log(Level.WARNING, "Cannot audit both the working tree and revisions");
+            return true;
+        }
+        final String scope = worktree ? "worktree" : (revs.isEmpty() ? "all" : StringUtils.join(revs, ' '));
+        final int threads = repoHandler.getHookSetting(PreCommit.THREADS_SETTING, 1);
+        final long start = System.nanoTime();
+
+        LOGGER.log(Level.FINE, "Auditing {0} using {1} thread(s)", new Object[] {scope, threads});
+        if (!hasDirtyWords()) { // no dirty words; all accepted so don't bother walking
+            LOGGER.fine("No dirty words to audit for");
+        } else if (worktree) {
+            repoHandler.streamWorkTree(new Scanner(), threads);
+        } else {
+            repoHandler.streamBlobs(revs, new Scanner(), threads);
+        }
+        metrics.phase("audit", start);
+        metrics.count("paths", paths.get());
+        if (output != null) {
+            final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(new File(
+                    output)), Charsets.UTF_8));
+
+            try {
+                writeReport(out, scope);
+            } finally {
+                out.close();
+            }
+        } else {
+            final PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, Charsets.UTF_8));
+
+            writeReport(out, scope);
+            out.flush();
+        }
+        if (!found.isEmpty()) {
+            LOGGER.log(Level.INFO, "Dirty words found in {0} places", found.size());
+            return true;
+        }
+        LOGGER.log(Level.INFO, "All {0} paths are clean.", paths.get());
+        return false;
+    }
+
+    /**
+     * Writes the report of the words found so far, sorted by path, type, and commit.
+     *
+     * @param out   the writer where to write the report
+     * @param scope the description of what was audited
+     */
+    void writeReport(PrintWriter out, String scope) {
+        final Map<String, Finding> findings = new TreeMap<String, Finding>(found);
+        String sep = "\n";
+
+        out.print("{\"scope\":");
+        Json.quote(out, scope);
+        out.print(",\"paths\":" + paths.get() + ",\"clean\":" + findings.isEmpty() + ",\"findings\":[");
+        for (final Finding f: findings.values()) {
+            out.print(sep);
+            out.print("{\"path\":");
+            Json.quote(out, f.path);
+            if (f.commit != null) {
+                out.print(",\"commit\":");
+                Json.quote(out, f.commit);
+            }
+            out.print(",\"type\":");
+            Json.quote(out, f.type);
+            out.print(",\"words\":");
+            synchronized (f.words) {
+                Json.array(out, f.words);
+            }
+            out.print('}');
+            sep = ",\n";
+        }
+        out.println(findings.isEmpty() ? "]}" : "\n]}");
+    }
+
+    /**
+     * The words found in a given path or content.
+     */
+    private static class Finding {
+        private final String path;
+
+        private final String commit;
+
+        private final String type;
+
+        private final Set<String> words = Collections.synchronizedSet(new TreeSet<String>());
+
+        Finding(String path, String commit, String type) {
+            this.path = path;
+            this.commit = commit;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Scans each path and content as they are reported. Contents might be reported concurrently.
+     */
+    private class Scanner implements AuditListener {
+        @Override
+        public void path(String commit, String path) throws IOException {
+            final Set<String> words = new TreeSet<String>();
+
+            paths.incrementAndGet();
+            if (containsDirtyWords(path, path, words)) {
+                record(path, commit, "path", words);
+            }
+        }
+
+        @Override
+        public String scope(String path) {
+            return getDirtyWordScope(path);
+        }
+
+        @Override
+        public void content(String commit, String path, byte[] raw, int start, int end)
+                throws IOException {
+            final Set<String> words = new TreeSet<String>();
+
+            if (containsDirtyWords(path, raw, start, end, words)) {
+                record(path, commit, "content", words);
+            }
+        }
+
+        @Override
+        public void content(String commit, String path, ByteBuffer buf) throws IOException {
+            final Set<String> words = new TreeSet<String>();
+
+            if (containsDirtyWords(path, buf, words)) {
+                record(path, commit, "content", words);
+            }
+        }
+
+        private void record(String path, String commit, String type, Set<String> words) {
+            final String key = path + '\0' + type + '\0' + StringUtils.defaultString(commit);
+            final Finding finding = new Finding(path, commit, type);
+            final Finding previous = found.putIfAbsent(key, finding);
+
+            ((previous != null) ? previous : finding).words.addAll(words);
+        }
+    }
+}
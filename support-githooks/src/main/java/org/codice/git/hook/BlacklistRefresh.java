@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.codice.git.ConfigureLogging;
+import org.codice.git.GitHandler;
+import org.codice.git.RepositoryHandler;
+
+/**
+ * Refreshes the blacklist on behalf of the hooks. When the <code>githooks.backgroundRefresh</code>
+ * setting is <code>true</code> and a blacklist was already downloaded, the refresh is done in a
+ * separate background process such that the hook never waits on a download; it proceeds with the
+ * blacklist currently on disk and the following hooks pick up the refreshed one. The refresh is
+ * always done right away when running from the native hooks executable.
+ * <p/>
+ * Only one background refresh runs at a time for a given repository. Its output is written to
+ * <code>blacklist-refresh.log</code> in the hooks cache directory.
+ */
+public class BlacklistRefresh {
+    public static final String BACKGROUND_SETTING = "backgroundRefresh";
+
+    static final String LOCK_FILE = "blacklist-refresh.lock";
+
+    static final String LOG_FILE = "blacklist-refresh.log";
+
+    private static final Logger LOGGER = Logger.getLogger(BlacklistRefresh.class.getName());
+
+    // Configure the logging for the background process
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    /**
+     * Entry point for the background process.
+     *
+     * @param args the basedir where the gitsetup pom.xml is defined, the maven settings file (may be
+     *             empty), and the git directory for the repository
+     */
+    public static void main(String[] args) {
+        try {
+            if (ArrayUtils.getLength(args) < 3) {
+                LOGGER.log(Level.WARNING, "Missing arguments");
+                System.exit(Hook.ERROR_CODE);
+            }
+            final GitHandler handler = new GitHandler(new File("."), new File(args[2]), new File(args[0]));
+
+            try {
+                BlacklistRefresh.run(handler, args[1]);
+            } finally {
+                handler.close();
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Exception caught: " + e.getMessage(), e);
+            System.exit(Hook.ERROR_CODE);
+        }
+    }
+
+    /**
+     * Refreshes the blacklist before a hook is executed, either right away or in the background
+     * based on the configuration.
+     *
+     * @param handler  the repository handler
+     * @param settings the maven settings file or "" if using the default one
+     * @return the background process started or <code>null</code> if none was
+     * @throws IOException if an error occurs
+     */
+    static Process refresh(RepositoryHandler handler, String settings) throws IOException {
+        if (!Boolean.parseBoolean(handler.getHookSetting(BlacklistRefresh.BACKGROUND_SETTING))
+                || Hook.isNativeImage() || (handler.getMetadir() == null) || !handler.getBlacklistFile()
+                .exists()) { // can't proceed without a blacklist so wait for the first one
+            GitHooks.downloadBlacklist(handler, settings, false);
+            return null;
+        }
+        final File lockFile = new File(handler.getCacheDir(), BlacklistRefresh.LOCK_FILE);
+
+        if (!GitHooks.getBlacklistArtifact(handler, false)
+                .isRefreshDue() || BlacklistRefresh.isLocked(lockFile)) {
+            return null;
+        }
+        return BlacklistRefresh.start(handler, settings);
+    }
+
+    /**
+     * Refreshes the blacklist unless another process is already doing it.
+     *
+     * @param handler  the repository handler
+     * @param settings the maven settings file or "" if using the default one
+     * @throws IOException if an error occurs
+     */
+    static void run(RepositoryHandler handler, String settings) throws IOException {
+        final File lockFile = new File(handler.getCacheDir(), BlacklistRefresh.LOCK_FILE);
+
+        FileUtils.forceMkdir(lockFile.getParentFile());
+        final RandomAccessFile raf = new RandomAccessFile(lockFile, "rw");
+
+        try {
+            final FileLock lock = raf.getChannel()
+                    .tryLock();
+
+            if (lock == null) {
+                LOGGER.fine("The blacklist is already being refreshed");
+                return;
+            }
+            // this re-checks if a refresh is still due in case another one just completed
+            GitHooks.downloadBlacklist(handler, settings, false);
+        } catch (OverlappingFileLockException e) { // locked from within this JVM
+            LOGGER.fine("The blacklist is already being refreshed");
+        } finally {
+            raf.close(); // also releases the lock
+        }
+    }
+
+    private static boolean isLocked(File lockFile) throws IOException {
+        if (!lockFile.exists()) {
+            return false;
+        }
+        final RandomAccessFile raf = new RandomAccessFile(lockFile, "rw");
+
+        try {
+            final FileLock lock = raf.getChannel()
+                    .tryLock();
+
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) { // locked from within this JVM
+            return true;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static Process start(RepositoryHandler handler, String settings) throws IOException {
+        final File log = new File(handler.getCacheDir(), BlacklistRefresh.LOG_FILE);
+        final List<String> cmd = new ArrayList<String>();
+
+        cmd.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+        // propagate the hook settings provided as system properties
+        for (final String name: System.getProperties()
+                .stringPropertyNames()) {
+            if (name.startsWith(RepositoryHandler.SETTINGS_SECTION + '.')) {
+                cmd.add("-D" + name + '=' + System.getProperty(name));
+            }
+        }
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(BlacklistRefresh.class.getName());
+        cmd.add(handler.getBasedir()
+                .getAbsolutePath());
+        cmd.add(settings);
+        cmd.add(handler.getMetadir()
+                .getAbsolutePath());
+        FileUtils.forceMkdir(log.getParentFile());
+        LOGGER.log(Level.FINE, "Refreshing the blacklist in the background: {0}", cmd);
+        return new ProcessBuilder(cmd).redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+    }
+}
@@ -16,15 +16,61 @@ package org.codice.git.hook;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 
+import org.codice.git.DiffListener;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffFormatter;
 import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.util.io.NullOutputStream;
 
 public class ChangeOnlyDiffFormatter extends DiffFormatter {
+    private final DiffListener listener;
+
+    private final Lines lines = new Lines();
+
+    private String path;
 
     public ChangeOnlyDiffFormatter(OutputStream out) {
         super(out);
+        this.listener = null;
+    }
+
+    /**
+     * Instantiates a new formatter which pushes added lines, one hunk at a time, to the specified
+     * listener instead of writing them out.
+     *
+     * @param listener the listener to notify of added lines
+     */
+    public ChangeOnlyDiffFormatter(DiffListener listener) {
+        super(NullOutputStream.INSTANCE);
+        this.listener = listener;
+    }
+
+    @Override
+    public void format(DiffEntry ent) throws IOException {
+        if (listener == null) {
+            super.format(ent);
+            return;
+        }
+        if (ent.getChangeType() == DiffEntry.ChangeType.DELETE) { // nothing added; don't bother loading
+            return;
+        }
+        this.path = ent.getNewPath();
+        listener.startFile(path);
+        final AbbreviatedObjectId newId = ent.getNewId();
+
+        if ((newId != null) && newId.isComplete() && listener.skipContent(path,
+                (ent.getChangeType() == DiffEntry.ChangeType.ADD) ? null : ent.getOldId()
+                        .name(),
+                newId.name())) {
+            listener.endFile(path);
+            return;
+        }
+        super.format(ent);
+        flushLines();
+        listener.endFile(path);
     }
 
     @Override
@@ -37,7 +83,7 @@ public class ChangeOnlyDiffFormatter extends DiffFormatter {
     @Override
     protected void writeHunkHeader(int aStartLine, int aEndLine, int bStartLine, int bEndLine)
             throws IOException {
-
+        flushLines();
     }
 
     @Override
@@ -59,7 +105,47 @@ public class ChangeOnlyDiffFormatter extends DiffFormatter {
     protected void writeLine(char prefix, RawText text, int cur) throws IOException {
         // Only interested in added or modified lines, ignore removed or context lines
         if (prefix == '+') {
-            super.writeLine(prefix, text, cur);
+            if (listener != null) { // keep the raw bytes; decoding is left to the listener
+                text.writeLine(lines, cur);
+                lines.write('\n');
+                lines.addLineNumber(cur + 1);
+            } else {
+                super.writeLine(prefix, text, cur);
+            }
+        }
+    }
+
+    private void flushLines() throws IOException {
+        if ((listener != null) && (lines.size() > 0)) {
+            lines.flushTo(listener, path);
+            lines.reset();
+        }
+    }
+
+    /**
+     * Buffer for the raw bytes of the added lines which gives access to its internal buffer to avoid
+     * copying it. The new-side line number of each buffered line is tracked along.
+     */
+    private static class Lines extends ByteArrayOutputStream {
+        private int[] numbers = new int[16];
+
+        private int lineCount;
+
+        void addLineNumber(int number) {
+            if (lineCount == numbers.length) {
+                numbers = Arrays.copyOf(numbers, lineCount * 2);
+            }
+            numbers[lineCount++] = number;
+        }
+
+        void flushTo(DiffListener listener, String path) throws IOException {
+            listener.addedLines(path, buf, 0, count, Arrays.copyOf(numbers, lineCount));
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            this.lineCount = 0;
         }
     }
 }
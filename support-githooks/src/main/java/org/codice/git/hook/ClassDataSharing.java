@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.codice.git.ConfigureLogging;
+import org.codice.git.GitHandler;
+import org.codice.git.RepositoryHandler;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Generates an application class data sharing (AppCDS) archive for the hooks. The archive captures
+ * the JGit, commons, Guava, and logging classes loaded while running a training invocation of the
+ * commit-msg and pre-commit hooks such that the following hook JVMs can map them directly instead
+ * of loading and verifying them from the jars every time. Classes from signed jars are not
+ * archived which is why the shaded hooks jar, stripped of all signatures, benefits the most.
+ * <p/>
+ * Dynamic archives require Java 13 or later; nothing is generated on older JVMs and the hook
+ * scripts only use the archive if it exists and the java command they run is recent enough. The
+ * archive is only ever generated when installing the hooks such that no hook invocation pays for
+ * it; the hook scripts drop it whenever the classpath entries change until the hooks are
+ * re-installed. The entries archived are identified by a key the hook scripts compute and save in
+ * {@link #KEY_FILE} next to the archive; a freshly generated archive has none and is adopted as is
+ * by the next hook invocation. This can be disabled by setting
+ * <code>githooks.classDataSharing</code> to <code>false</code>.
+ */
+public class ClassDataSharing {
+    public static final String SETTING = "classDataSharing";
+
+    public static final String ARCHIVE_FILE = "githooks.jsa";
+
+    public static final String KEY_FILE = ClassDataSharing.ARCHIVE_FILE + ".key";
+
+    static final String LOG_FILE = "class-data-sharing.log";
+
+    // dynamic archives (-XX:ArchiveClassesAtExit) were introduced in Java 13
+    private static final int MIN_JAVA_VERSION = 13;
+
+    private static final long TIMEOUT_SECONDS = 120L;
+
+    private static final String TRAINING_MESSAGE = "Training commit message for class data sharing\n";
+
+    private static final Logger LOGGER = Logger.getLogger(ClassDataSharing.class.getName());
+
+    // Configure the logging for the training process
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    /**
+     * Entry point for the training process. Runs the commit-msg and pre-commit hooks against the
+     * repository without affecting it.
+     *
+     * @param args the basedir where the gitsetup pom.xml is defined, the maven settings file (may be
+     *             empty), and the git directory for the repository
+     */
+    public static void main(String[] args) {
+        try {
+            if (ArrayUtils.getLength(args) < 3) {
+                LOGGER.log(Level.WARNING, "Missing arguments");
+                System.exit(Hook.ERROR_CODE);
+            }
+            final GitHandler handler = new GitHandler(new File("."), new File(args[2]), new File(args[0]));
+            final File msg = File.createTempFile("githooks_training_", ".txt");
+
+            try {
+                FileUtils.writeStringToFile(msg, ClassDataSharing.TRAINING_MESSAGE, Charsets.UTF_8);
+                ClassDataSharing.train(handler, args[1], CommitMsg.class, msg.getAbsolutePath());
+                ClassDataSharing.train(handler, args[1], PreCommit.class);
+            } finally {
+                FileUtils.deleteQuietly(msg);
+                handler.close();
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Exception caught: " + e.getMessage(), e);
+            System.exit(Hook.ERROR_CODE);
+        }
+    }
+
+    /**
+     * Generates the class data sharing archive for the specified hook classpath by running a
+     * training invocation of the hooks in a separate JVM.
+     *
+     * @param handler   the repository handler
+     * @param settings  the maven settings file or "" if using the default one
+     * @param classpath the classpath used by the hooks
+     * @return the generated archive or <code>null</code> if none was generated
+     * @throws IOException if an error occurs
+     */
+    static File generate(RepositoryHandler handler, String settings, String classpath)
+            throws IOException {
+        if ("false".equalsIgnoreCase(StringUtils.trim(handler.getHookSetting(ClassDataSharing.SETTING)))) {
+            LOGGER.fine("Class data sharing is disabled");
+            return null;
+        }
+        if (!ClassDataSharing.isSupported(System.getProperty("java.specification.version"))) {
+            LOGGER.log(Level.INFO,
+                    "Class data sharing requires Java {0} or later",
+                    ClassDataSharing.MIN_JAVA_VERSION);
+            return null;
+        }
+        if (StringUtils.isBlank(classpath) || (handler.getMetadir() == null)) {
+            return null;
+        }
+        final File archive = new File(handler.getBasedir(), ClassDataSharing.ARCHIVE_FILE);
+        final File log = new File(handler.getCacheDir(), ClassDataSharing.LOG_FILE);
+        final List<String> cmd = new ArrayList<String>();
+
+        cmd.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+        cmd.add("-XX:ArchiveClassesAtExit=" + archive.getAbsolutePath());
+        // the training must never access the network nor leave a refresh running behind
+        cmd.add("-D" + RepositoryHandler.SETTINGS_SECTION + '.' + Artifact.REFRESH_POLICY_SETTING
+                + "=offline");
+        cmd.add("-D" + RepositoryHandler.SETTINGS_SECTION + '.' + BlacklistRefresh.BACKGROUND_SETTING
+                + "=false");
+        cmd.add("-cp");
+        cmd.add(classpath);
+        cmd.add(ClassDataSharing.class.getName());
+        cmd.add(handler.getBasedir()
+                .getAbsolutePath());
+        cmd.add(settings);
+        cmd.add(handler.getMetadir()
+                .getAbsolutePath());
+        FileUtils.deleteQuietly(archive);
+        FileUtils.deleteQuietly(new File(handler.getBasedir(), ClassDataSharing.KEY_FILE));
+        FileUtils.forceMkdir(log.getParentFile());
+        LOGGER.log(Level.FINE, "Generating the class data sharing archive: {0}", cmd);
+        final Process process = new ProcessBuilder(cmd).directory(handler.getBasedir())
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+
+        try {
+            if (!process.waitFor(ClassDataSharing.TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warning("Timed out generating the class data sharing archive");
+                process.destroyForcibly();
+                FileUtils.deleteQuietly(archive);
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                    .interrupt();
+            process.destroyForcibly();
+            throw new IOException("interrupted while generating the class data sharing archive", e);
+        }
+        if (!archive.isFile()) {
+            LOGGER.log(Level.WARNING,
+                    "Failed to generate the class data sharing archive; see {0}",
+                    log);
+            return null;
+        }
+        return archive;
+    }
+
+    /**
+     * Checks if the specified Java specification version supports dynamic class data sharing
+     * archives.
+     *
+     * @param version the Java specification version (e.g. <code>1.8</code> or <code>17</code>)
+     * @return <code>true</code> if supported; <code>false</code> otherwise
+     */
+    static boolean isSupported(String version) {
+        final String v = StringUtils.removeStart(StringUtils.trimToEmpty(version), "1.");
+
+        try {
+            return Integer.parseInt(StringUtils.substringBefore(v, ".")) >= ClassDataSharing.MIN_JAVA_VERSION;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static void train(RepositoryHandler handler, String settings, Class<? extends Hook> hook,
+            String... args) {
+        try {
+            LOGGER.log(Level.FINE, "Training with {0} hook", hook.getName());
+            Hook.run(handler, settings, hook.getName(), args);
+        } catch (Exception e) { // the classes loaded so far are still archived
+            LOGGER.log(Level.FINE, "Training with " + hook.getName() + " failed: " + e.getMessage(), e);
+        }
+    }
+}
@@ -66,8 +66,11 @@ public class CommitMsg extends Hook {
                 return false;
             }
             LOGGER.log(Level.FINE, "Reading commit message from: {0}", args[0]);
+            final long start = System.nanoTime();
             String commitMsg = repoHandler.getFileAsString(args[0]);
 
+            metrics.phase("read", start);
+
             LOGGER.log(Level.FINE, "Commit message: {0}", commitMsg);
             //CommitMsg.OUT.println("Commit message: " + commitMsg);
             if (isTicketNumberMissing(commitMsg)) {
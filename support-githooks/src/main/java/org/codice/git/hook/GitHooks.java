@@ -23,7 +23,9 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.text.StrSubstitutor;
 import org.codice.git.RepositoryHandler;
 
@@ -40,9 +42,47 @@ public class GitHooks {
 
     public static final String HOOK_BASE_DIR = "/" + HOOK_DIR + "/";
 
+    // the name of the self-contained jar installed along with the hooks
+    public static final String HOOKS_JAR = "githooks.jar";
+
+    // the name of the native hooks executable installed along with the hooks
+    public static final String HOOKS_BINARY = "githooks";
+
     private static final Logger LOGGER = Logger.getLogger(GitHooks.class.getName());
 
     public static void install(RepositoryHandler handler, String settings) throws IOException {
+        GitHooks.install(handler, settings, null);
+    }
+
+    /**
+     * Installs the git hooks in the current repository.
+     *
+     * @param handler   the repository handler
+     * @param settings  the maven settings file or "" if using the default one
+     * @param hooksJar  the self-contained hooks jar (see the <code>hooks</code> classified artifact)
+     *                  to install along with the hooks or <code>null</code> to have the hooks build
+     *                  their classpath using maven
+     * @throws IOException if an error occurs
+     */
+    public static void install(RepositoryHandler handler, String settings, File hooksJar)
+            throws IOException {
+        GitHooks.install(handler, settings, hooksJar, null);
+    }
+
+    /**
+     * Installs the git hooks in the current repository.
+     *
+     * @param handler     the repository handler
+     * @param settings    the maven settings file or "" if using the default one
+     * @param hooksJar    the self-contained hooks jar (see the <code>hooks</code> classified artifact)
+     *                    to install along with the hooks or <code>null</code> to have the hooks build
+     *                    their classpath using maven
+     * @param hooksBinary the native hooks executable (see the <code>native</code> profile) to run
+     *                    instead of the java command line or <code>null</code> to use java
+     * @throws IOException if an error occurs
+     */
+    public static void install(RepositoryHandler handler, String settings, File hooksJar,
+            File hooksBinary) throws IOException {
         if (handler == null) {
             LOGGER.warning("No Repository handler specified; git hooks not installed");
             return;
@@ -62,6 +102,29 @@ public class GitHooks {
         vars.put("POMPATH", new File(handler.getBasedir(), "pom.xml").getAbsolutePath()
                 .replace('\\', '/'));
         vars.put("SETTINGS", settings.replace('\\', '/'));
+        vars.put("HOOKSJAR", "");
+        if ((hooksJar != null) && hooksJar.isFile()) {
+            final File jar = new File(hdir, HOOKS_JAR);
+
+            LOGGER.log(Level.INFO, "Installing hooks jar: {0}", hooksJar);
+            FileUtils.copyFile(hooksJar, jar);
+            vars.put("HOOKSJAR", jar.getAbsolutePath()
+                    .replace('\\', '/'));
+        }
+        vars.put("HOOKSBIN", "");
+        if ((hooksBinary != null) && hooksBinary.isFile()) {
+            final File bin = new File(hdir,
+                    hooksBinary.getName()
+                            .endsWith(".exe") ? HOOKS_BINARY + ".exe" : HOOKS_BINARY);
+
+            LOGGER.log(Level.INFO, "Installing native hooks executable: {0}", hooksBinary);
+            FileUtils.copyFile(hooksBinary, bin);
+            if (!bin.setExecutable(true)) {
+                throw new IOException("unable to make " + bin + " executable");
+            }
+            vars.put("HOOKSBIN", bin.getAbsolutePath()
+                    .replace('\\', '/'));
+        }
         LOGGER.log(Level.INFO, "Installing hooks into directory: {0}", hdir);
         System.out.println("[INFO] Installing git hooks.");
         for (String hookName : HOOKS) {
@@ -73,6 +136,39 @@ public class GitHooks {
         LOGGER.log(Level.INFO, "Hook files copied successfully: {0}", filesCopiedOK);
     }
 
+    /**
+     * Generates the class data sharing archive used by the installed hooks to speed up their JVM
+     * startup (see {@link ClassDataSharing}). This should be called once the hooks are installed and
+     * the blacklist downloaded such that the training invocation exercises them fully.
+     *
+     * @param handler  the repository handler
+     * @param settings the maven settings file or "" if using the default one
+     * @throws IOException if an error occurs
+     */
+    public static void generateClassDataArchive(RepositoryHandler handler, String settings)
+            throws IOException {
+        if (handler == null) {
+            LOGGER.warning("No Repository handler specified; class data sharing archive not generated");
+            return;
+        }
+        final File jar = new File(new File(handler.getMetadir(), HOOK_DIR), HOOKS_JAR);
+        final File cpath = new File(handler.getBasedir(), "classpath.txt");
+        final String classpath;
+
+        if (jar.isFile()) {
+            classpath = jar.getAbsolutePath();
+        } else if (cpath.isFile()) {
+            classpath = StringUtils.trim(FileUtils.readFileToString(cpath, Charsets.UTF_8));
+        } else { // the hooks will generate it once the classpath is cached
+            LOGGER.fine("No hooks classpath available to generate the class data sharing archive");
+            return;
+        }
+        System.out.println("[INFO] Generating git hooks class data sharing archive.");
+        final File archive = ClassDataSharing.generate(handler, settings, classpath);
+
+        LOGGER.log(Level.INFO, "Class data sharing archive generated: {0}", archive);
+    }
+
     public static void clean(RepositoryHandler handler) throws IOException {
         if (handler == null) {
             LOGGER.warning("No Repository handler specified; git hooks not cleaned.");
@@ -84,8 +180,13 @@ public class GitHooks {
 
         LOGGER.log(Level.INFO, "Cleaning cached classpath from directory: {0}", bdir);
         System.out.println("[INFO] Removing git hooks cached classpath.");
+        final File archive = new File(bdir, ClassDataSharing.ARCHIVE_FILE);
+        final File key = new File(bdir, ClassDataSharing.KEY_FILE);
         boolean filesDeletedOK = !cpath.exists() || cpath.delete();
 
+        filesDeletedOK = filesDeletedOK && (!archive.exists() || archive.delete());
+        filesDeletedOK = filesDeletedOK && (!key.exists() || key.delete());
+
         LOGGER.log(Level.INFO, "Cleaning hooks from directory: {0}", hdir);
         System.out.println("[INFO] Removing git hooks.");
         for (String hookName : HOOKS) {
@@ -93,6 +194,11 @@ public class GitHooks {
 
             filesDeletedOK = filesDeletedOK && (!hfile.exists() || hfile.delete());
         }
+        for (final String name : new String[] {HOOKS_JAR, HOOKS_BINARY, HOOKS_BINARY + ".exe"}) {
+            final File file = new File(hdir, name);
+
+            filesDeletedOK = filesDeletedOK && (!file.exists() || file.delete());
+        }
         LOGGER.log(Level.INFO, "Hook files deleted successfully: {0}", filesDeletedOK);
     }
 
@@ -108,11 +214,24 @@ public class GitHooks {
     public static void downloadBlacklist(RepositoryHandler handler, String settings,
             boolean install) throws IOException {
         // use stderr instead of stdout to allow the stdout to be piped without impacting the querying
-        new Artifact(handler,
+        // at install time or the reports some hooks print on stdout
+        GitHooks.getBlacklistArtifact(handler, install)
+                .download(settings, System.err);
+    }
+
+    /**
+     * Gets the artifact for the blacklist.
+     *
+     * @param handler the repository handler
+     * @param install <code>true</code> if we are at install time; <code>false</code> if this is from a hook
+     * @return the corresponding artifact
+     */
+    static Artifact getBlacklistArtifact(RepositoryHandler handler, boolean install) {
+        return new Artifact(handler,
                 "blacklist words",
                 handler.getBlacklistFile(),
                 new File(handler.getBasedir(), "blacklist-words.mvn"),
-                install).download(settings, install ? System.err : System.out);
+                install);
     }
 
     /**
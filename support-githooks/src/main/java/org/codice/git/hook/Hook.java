@@ -15,15 +15,20 @@ package org.codice.git.hook;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.codice.git.ConfigureLogging;
+import org.codice.git.DirtyWordHit;
+import org.codice.git.DirtyWordMatcher;
+import org.codice.git.DirtyWordRouter;
 import org.codice.git.GitHandler;
 import org.codice.git.RepositoryHandler;
 
@@ -41,9 +46,27 @@ public class Hook {
         ConfigureLogging cfg = new ConfigureLogging();
     }
 
+    // the maximum number of characters a REGEX: entry may read per character scanned; disabled by
+    // default and an entry exceeding it is reported as found
+    protected static final String REGEX_STEPS_SETTING = "regexStepsPerChar";
+
+    // the maximum time in milliseconds a single search for a REGEX: entry may take; disabled by
+    // default and an entry exceeding it is reported as found
+    protected static final String REGEX_TIMEOUT_SETTING = "regexTimeout";
+
     protected final RepositoryHandler repoHandler;
 
-    private final Map<String, Pattern> dirtyWords;
+    private final DirtyWordRouter dirtyWords;
+
+    protected HookMetrics metrics = new HookMetrics(getClass().getName());
+
+    // accumulated without contention by the scanning threads and only recorded in the metrics once
+    // the hook completes
+    private final LongAdder scanNanos = new LongAdder();
+
+    private final LongAdder scannedChars = new LongAdder();
+
+    private final LongAdder locateNanos = new LongAdder();
 
     /**
      * Instantiates a new hook with the specified repository handler.
@@ -55,7 +78,12 @@ public class Hook {
      */
     protected Hook(RepositoryHandler handler) throws IOException {
         this.repoHandler = handler;
-        this.dirtyWords = repoHandler.getDirtyWords();
+        final DirtyWordRouter router = repoHandler.getDirtyWordRouter();
+        final int steps = repoHandler.getHookSetting(Hook.REGEX_STEPS_SETTING, 0);
+        final int timeout = repoHandler.getHookSetting(Hook.REGEX_TIMEOUT_SETTING, 0);
+
+        // the router may be shared and cached so a guarded copy is used when limits are requested
+        this.dirtyWords = ((steps > 0) || (timeout > 0)) ? router.withRegexLimits(steps, timeout) : router;
     }
 
     /**
@@ -67,6 +95,26 @@ public class Hook {
         return !dirtyWords.isEmpty();
     }
 
+    /**
+     * Gets the scope of the dirty words from the "dirty list" that apply to the specified file.
+     *
+     * @param path the path of the file in the repository
+     * @return the corresponding scope or {@link RepositoryHandler#GLOBAL_SCOPE}
+     */
+    protected String getDirtyWordScope(String path) {
+        return dirtyWords.getScope(path);
+    }
+
+    /**
+     * Checks if the hooks are running from a native executable (see the <code>native</code> profile)
+     * in which case there is no java command line available to start other processes with.
+     *
+     * @return <code>true</code> if running as a native image; <code>false</code> otherwise
+     */
+    static boolean isNativeImage() {
+        return System.getProperty("org.graalvm.nativeimage.imagecode") != null;
+    }
+
     /**
      * Entry point for the git hook processing. Invoked by the individual git scripts
      * in the .git/hooks directory. Each script provides the class name of the (java) hook
@@ -95,18 +143,20 @@ public class Hook {
                 LOGGER.log(Level.WARNING, "Missing hook class argument");
                 System.exit(ERROR_CODE);
             }
+            final HookMetrics metrics = new HookMetrics(args[2]);
+
+            metrics.recordLaunch();
+            final long start = System.nanoTime();
             final RepositoryHandler handler = new GitHandler(new File(args[0]));
-            final String settings = StringUtils.defaultString(args[1]);
-            final Hook hook = (Hook) Class.forName(args[2])
-                    .getConstructor(RepositoryHandler.class)
-                    .newInstance(handler);
             final String[] hargs = new String[args.length - 3];
 
+            metrics.phase("repo", start);
             System.arraycopy(args, 3, hargs, 0, hargs.length);
             LOGGER.log(Level.FINE, "Hook being called with arguments: {0}", ArrayUtils.toString(args));
-            GitHooks.downloadBlacklist(handler, settings, false);
-            if (hook.executeHook(hargs)) {
-                System.exit(ERROR_CODE);
+            final int rc = run(handler, StringUtils.defaultString(args[1]), args[2], hargs, metrics);
+
+            if (rc != 0) {
+                System.exit(rc);
             }
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Exception caught: " + e.getMessage(), e);
@@ -114,6 +164,88 @@ public class Hook {
         }
     }
 
+    /**
+     * Runs the specified java hook against the given repository handler. This is used by both
+     * {@link #main} and the {@link HookServer} which keeps repository handlers around between
+     * invocations.
+     *
+     * @param handler   the repository handler
+     * @param settings  the maven settings file to use when refreshing the blacklist (may be empty)
+     * @param hookClass the class name of the java hook to execute
+     * @param args      the original git arguments
+     * @return the exit code for the hook (0 if the commit can proceed)
+     * @throws Exception if any errors occur while executing the hook
+     */
+    public static int run(RepositoryHandler handler, String settings, String hookClass, String[] args)
+            throws Exception {
+        return Hook.run(handler, settings, hookClass, args, new HookMetrics(hookClass));
+    }
+
+    /**
+     * Runs the specified java hook against the given repository handler while recording metrics
+     * about its execution. The metrics are reported once the hook completes (see {@link HookMetrics}).
+     *
+     * @param handler   the repository handler
+     * @param settings  the maven settings file to use when refreshing the blacklist (may be empty)
+     * @param hookClass the class name of the java hook to execute
+     * @param args      the original git arguments
+     * @param metrics   the metrics to update
+     * @return the exit code for the hook (0 if the commit can proceed)
+     * @throws Exception if any errors occur while executing the hook
+     */
+    public static int run(RepositoryHandler handler, String settings, String hookClass, String[] args,
+            HookMetrics metrics) throws Exception {
+        int rc = ERROR_CODE;
+        Exception error = null;
+        Hook hook = null;
+
+        try {
+            final Class<?> clazz = Class.forName(hookClass);
+            long start = System.nanoTime();
+
+            // refresh the blacklist first such that the hook is initialized with the latest one unless
+            // configured to do it in the background
+            BlacklistRefresh.refresh(handler, settings);
+            start = metrics.phase("download", start);
+            hook = (Hook) clazz.getConstructor(RepositoryHandler.class)
+                    .newInstance(handler);
+
+            metrics.phase("words", start);
+            metrics.count("patterns", hook.dirtyWords.getGlobalMatcher()
+                    .size());
+            metrics.count("scopes", hook.dirtyWords.getScopes()
+                    .size());
+            hook.metrics = metrics;
+            rc = hook.executeHook(args) ? ERROR_CODE : 0;
+            return rc;
+        } catch (Exception e) {
+            error = e;
+            throw e;
+        } finally {
+            if (hook != null) {
+                hook.recordScanMetrics();
+            }
+            metrics.write(handler, rc, error);
+        }
+    }
+
+    /**
+     * Records the time spent and the number of characters scanned for dirty words so far in the
+     * metrics.
+     */
+    private void recordScanMetrics() {
+        final long chars = scannedChars.sumThenReset();
+        final long locate = locateNanos.sumThenReset();
+
+        if (chars > 0L) {
+            metrics.addPhase("scan", scanNanos.sumThenReset());
+            metrics.count("scannedChars", chars);
+        }
+        if (locate > 0L) {
+            metrics.addPhase("locate", locate);
+        }
+    }
+
     /**
      * Appends all dirty words in the provided set to the provided string builder.
      *
@@ -144,26 +276,128 @@ public class Hook {
     }
 
     /**
-     * Scans the specified string to see if it contains dirty words from the "dirty list".
+     * Scans the specified string to see if it contains dirty words from the "dirty list" that apply
+     * outside of all scoped directories (e.g. a commit message).
      *
      * @param s     the string to be scanned
      * @param found a set where to report the words found so far
      * @return <code>true</code> if dirty words are found, <code>false</code> otherwise
      * @throws IOException if errors are encountered reading the dirty word file
      */
-    protected boolean containsDirtyWords(String s, Set<String> found) throws IOException {
-        if (StringUtils.isEmpty(s) || dirtyWords.isEmpty()) { // nothing to check or no dirty words; all accepted so bail!
+    protected boolean containsDirtyWords(CharSequence s, Set<String> found) throws IOException {
+        return containsDirtyWords(null, s, found);
+    }
+
+    /**
+     * Scans the specified string from a file to see if it contains dirty words from the "dirty
+     * list" that apply to that file.
+     *
+     * @param path  the path of the file in the repository or <code>null</code> for the dirty words
+     *              that apply outside of all scoped directories
+     * @param s     the string to be scanned
+     * @param found a set where to report the words found so far
+     * @return <code>true</code> if dirty words are found, <code>false</code> otherwise
+     * @throws IOException if errors are encountered reading the dirty word file
+     */
+    protected boolean containsDirtyWords(String path, CharSequence s, Set<String> found)
+            throws IOException {
+        final DirtyWordMatcher matcher = dirtyWords.getMatcher(path);
+
+        if (StringUtils.isEmpty(s) || matcher.isEmpty()) { // nothing to check or no dirty words; all accepted so bail!
             return false;
         }
-        boolean dirty = false;
+        final long start = System.nanoTime();
 
-        for (final Map.Entry<String, Pattern> e: dirtyWords.entrySet()) {
-            if (e.getValue().matcher(s).find()) {
-                dirty = true;
-                found.add(e.getKey());
-            }
+        try {
+            return matcher.find(s, found);
+        } finally {
+            scanNanos.add(System.nanoTime() - start);
+            scannedChars.add(s.length());
+        }
+    }
+
+    /**
+     * Scans the specified raw text as stored in the repository to see if it contains dirty words
+     * from the "dirty list" that apply to its file without decoding it whenever possible.
+     *
+     * @param path  the path of the file in the repository
+     * @param raw   the buffer containing the text to be scanned
+     * @param start the index of the first byte to scan in <code>raw</code>
+     * @param end   the index after the last byte to scan in <code>raw</code>
+     * @param found a set where to report the words found so far
+     * @return <code>true</code> if dirty words are found, <code>false</code> otherwise
+     * @throws IOException if errors are encountered reading the dirty word file
+     */
+    protected boolean containsDirtyWords(String path, byte[] raw, int start, int end,
+            Set<String> found) throws IOException {
+        final DirtyWordMatcher matcher = dirtyWords.getMatcher(path);
+
+        if ((start >= end) || matcher.isEmpty()) { // nothing to check or no dirty words; all accepted so bail!
+            return false;
+        }
+        final long begin = System.nanoTime();
+
+        try {
+            return matcher.find(raw, start, end, found);
+        } finally {
+            scanNanos.add(System.nanoTime() - begin);
+            scannedChars.add(end - start);
+        }
+    }
+
+    /**
+     * Scans the specified raw text, from the buffer's position to its limit, to see if it contains
+     * dirty words from the "dirty list" that apply to its file without copying or decoding it
+     * whenever possible.
+     *
+     * @param path  the path of the file in the repository
+     * @param buf   the buffer containing the text to be scanned (e.g. memory mapped from a file)
+     * @param found a set where to report the words found so far
+     * @return <code>true</code> if dirty words are found, <code>false</code> otherwise
+     * @throws IOException if errors are encountered reading the dirty word file
+     */
+    protected boolean containsDirtyWords(String path, ByteBuffer buf, Set<String> found)
+            throws IOException {
+        final DirtyWordMatcher matcher = dirtyWords.getMatcher(path);
+
+        if (!buf.hasRemaining() || matcher.isEmpty()) { // nothing to check or no dirty words; all accepted so bail!
+            return false;
+        }
+        final long begin = System.nanoTime();
+
+        try {
+            return matcher.find(buf, found);
+        } finally {
+            scanNanos.add(System.nanoTime() - begin);
+            scannedChars.add(buf.remaining());
+        }
+    }
+
+    /**
+     * Locates the occurrences of the dirty words from the "dirty list" that apply to a file in the
+     * specified line of text from that file.
+     *
+     * @param path the path of the file containing the line
+     * @param line the 1-based number of the line in the file
+     * @param s    the text of the line
+     * @param max  the maximum number of occurrences to report
+     * @return the occurrences found sorted by column
+     * @throws IOException if errors are encountered reading the dirty word file
+     */
+    protected List<DirtyWordHit> locateDirtyWords(String path, int line, CharSequence s, int max)
+            throws IOException {
+        final DirtyWordMatcher matcher = dirtyWords.getMatcher(path);
+
+        if ((max <= 0) || StringUtils.isEmpty(s) || matcher.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final long start = System.nanoTime();
+
+        try {
+            return matcher.locate(path, line, s, max);
+        } finally {
+            locateNanos.add(System.nanoTime() - start);
         }
-        return dirty;
     }
 
     /**
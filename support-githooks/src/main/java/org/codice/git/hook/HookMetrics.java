@@ -0,0 +1,285 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileLock;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.codice.git.RepositoryHandler;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Collects timing and volume metrics for a single hook execution and reports them as a JSON line
+ * appended to the file configured with <code>githooks.metricsFile</code> (nothing is reported if not
+ * configured). For example:
+ * <pre>
+ * {"timestamp":"...","hook":"PreCommit","exitCode":0,"totalMillis":81.204,
+ *  "phases":{"jvm":52.1,"repo":12.3,"download":0.4,"words":3.2,"diff":9.8,"scan":1.7},
+ *  "counters":{"patterns":214,"files":3,"scannedChars":5120}}
+ * </pre>
+ * Phases are recorded in milliseconds. The <code>totalMillis</code> is measured from the time this
+ * object is created and doesn't include the <code>jvm</code> and <code>script</code> phases which
+ * respectively represent the time it took for the JVM to start and the time the hook script took
+ * before launching it (only reported if the script provides its start time through the
+ * <code>githooks.hookStart</code> system property). Phases recorded multiple times (e.g.
+ * <code>scan</code>) are accumulated across all threads.
+ * <p/>
+ * Instances of this class are thread-safe.
+ */
+public class HookMetrics {
+    public static final String FILE_SETTING = "metricsFile";
+
+    public static final String HOOK_START_PROPERTY = "githooks.hookStart";
+
+    private static final Logger LOGGER = Logger.getLogger(HookMetrics.class.getName());
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final long start = System.nanoTime();
+
+    private final Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+    private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+
+    private long launched = -1L;
+
+    /**
+     * Instantiates a new metrics collector for the specified hook.
+     *
+     * @param hook the class name of the hook being executed
+     */
+    public HookMetrics(String hook) {
+        attributes.put("hook", StringUtils.substringAfterLast("." + hook, "."));
+    }
+
+    /**
+     * Records that the hook was launched in a new JVM such that the time it took to start the JVM
+     * can be reported.
+     */
+    public synchronized void recordLaunch() {
+        this.launched = System.currentTimeMillis();
+    }
+
+    /**
+     * Sets an attribute to be reported with the metrics.
+     *
+     * @param name  the name of the attribute
+     * @param value the value for the attribute (a string, number, or boolean)
+     */
+    public synchronized void set(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    /**
+     * Records the time taken by a phase that started at the specified time and is just ending.
+     *
+     * @param name       the name of the phase
+     * @param startNanos the time the phase started as returned by {@link System#nanoTime()}
+     * @return the current time as returned by {@link System#nanoTime()} which can be used as the start
+     * of the next phase
+     */
+    public long phase(String name, long startNanos) {
+        final long now = System.nanoTime();
+
+        addPhase(name, now - startNanos);
+        return now;
+    }
+
+    /**
+     * Adds the specified time to a phase.
+     *
+     * @param name  the name of the phase
+     * @param nanos the number of nanoseconds to add
+     */
+    public synchronized void addPhase(String name, long nanos) {
+        final Long current = phases.get(name);
+
+        phases.put(name, (current != null) ? current + nanos : nanos);
+    }
+
+    /**
+     * Adds to a counter.
+     *
+     * @param name  the name of the counter
+     * @param delta the value to add
+     */
+    public synchronized void count(String name, long delta) {
+        final Long current = counters.get(name);
+
+        counters.put(name, (current != null) ? current + delta : delta);
+    }
+
+    /**
+     * Gets the current value of a counter.
+     *
+     * @param name the name of the counter
+     * @return the counter's value or 0 if never counted
+     */
+    public synchronized long getCount(String name) {
+        final Long current = counters.get(name);
+
+        return (current != null) ? current : 0L;
+    }
+
+    /**
+     * Appends the metrics as a JSON line to the file configured for the specified repository. This
+     * is a no-op if no files are configured. Errors are logged and otherwise ignored.
+     *
+     * @param handler  the repository handler
+     * @param exitCode the exit code of the hook
+     * @param error    the error that aborted the hook or <code>null</code> if none
+     */
+    public void write(RepositoryHandler handler, int exitCode, Throwable error) {
+        final String fname = StringUtils.trim(handler.getHookSetting(HookMetrics.FILE_SETTING));
+
+        if (StringUtils.isEmpty(fname)) {
+            return;
+        }
+        final File file = HookMetrics.resolve(handler, fname);
+        FileOutputStream out = null;
+
+        try {
+            final byte[] line = (toJson(exitCode, error) + "\n").getBytes(Charsets.UTF_8);
+
+            FileUtils.forceMkdir(file.getAbsoluteFile()
+                    .getParentFile());
+            out = new FileOutputStream(file, true);
+            // several hooks might report at the same time
+            final FileLock lock = out.getChannel()
+                    .lock();
+
+            try {
+                out.write(line);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to write hook metrics to: " + file, e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Formats the metrics as a single line JSON object.
+     *
+     * @param exitCode the exit code of the hook
+     * @param error    the error that aborted the hook or <code>null</code> if none
+     * @return the corresponding JSON string
+     */
+    public synchronized String toJson(int exitCode, Throwable error) {
+        final long total = System.nanoTime() - start;
+        final Map<String, Object> phasesMillis = new LinkedHashMap<String, Object>();
+
+        if (launched != -1L) {
+            addLaunchPhases(phasesMillis);
+        }
+        for (final Map.Entry<String, Long> e: phases.entrySet()) {
+            phasesMillis.put(e.getKey(), HookMetrics.toMillis(e.getValue()));
+        }
+        final StringBuilder sb = new StringBuilder(256);
+
+        sb.append("{\"timestamp\":");
+        HookMetrics.appendValue(sb, Instant.now()
+                .toString());
+        for (final Map.Entry<String, Object> e: attributes.entrySet()) {
+            HookMetrics.appendField(sb, e.getKey(), e.getValue());
+        }
+        HookMetrics.appendField(sb, "exitCode", exitCode);
+        if (error != null) {
+            HookMetrics.appendField(sb, "error", String.valueOf(error.getMessage()));
+        }
+        HookMetrics.appendField(sb, "totalMillis", HookMetrics.toMillis(total));
+        sb.append(",\"phases\":");
+        HookMetrics.appendObject(sb, phasesMillis);
+        sb.append(",\"counters\":");
+        HookMetrics.appendObject(sb, counters);
+        return sb.append('}')
+                .toString();
+    }
+
+    private void addLaunchPhases(Map<String, Object> phasesMillis) {
+        final long jvmStart = ManagementFactory.getRuntimeMXBean()
+                .getStartTime();
+        final String hookStart = StringUtils.trim(System.getProperty(HookMetrics.HOOK_START_PROPERTY));
+
+        if (StringUtils.isNotEmpty(hookStart)) {
+            try {
+                // as provided by bash's $EPOCHREALTIME which is locale dependent
+                final double seconds = Double.parseDouble(hookStart.replace(',', '.'));
+
+                phasesMillis.put("script", Math.max(0L, jvmStart - (long) (seconds * 1000.0)));
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.FINE, "Invalid hook start time: {0}", hookStart);
+            }
+        }
+        phasesMillis.put("jvm", Math.max(0L, launched - jvmStart));
+    }
+
+    private static File resolve(RepositoryHandler handler, String fname) {
+        if (fname.startsWith("~/")) {
+            return new File(System.getProperty("user.home"), fname.substring(2));
+        }
+        final File file = new File(fname);
+
+        return file.isAbsolute() ? file : new File(handler.getBasedir(), fname);
+    }
+
+    private static Object toMillis(long nanos) {
+        return Double.valueOf(String.format(Locale.ROOT, "%.3f", nanos / NANOS_PER_MILLI));
+    }
+
+    private static void appendObject(StringBuilder sb, Map<String, ?> map) {
+        sb.append('{');
+        for (final Map.Entry<String, ?> e: map.entrySet()) {
+            if (sb.charAt(sb.length() - 1) != '{') {
+                sb.append(',');
+            }
+            HookMetrics.appendValue(sb, e.getKey());
+            sb.append(':');
+            HookMetrics.appendValue(sb, e.getValue());
+        }
+        sb.append('}');
+    }
+
+    private static void appendField(StringBuilder sb, String name, Object value) {
+        sb.append(',');
+        HookMetrics.appendValue(sb, name);
+        sb.append(':');
+        HookMetrics.appendValue(sb, value);
+    }
+
+    private static void appendValue(StringBuilder sb, Object value) {
+        if ((value instanceof Number) || (value instanceof Boolean)) {
+            sb.append(value);
+            return;
+        }
+        Json.quote(sb, String.valueOf(value));
+    }
+}
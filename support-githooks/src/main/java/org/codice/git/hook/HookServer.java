@@ -0,0 +1,503 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.codice.git.ConfigureLogging;
+import org.codice.git.GitHandler;
+import org.codice.git.RepositoryHandler;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Long-lived server which executes the java hooks on behalf of the git hook scripts. This avoids
+ * paying for the JVM startup, the classpath resolution, the opening of the repository, and the
+ * compilation of all dirty words on each commit.
+ * <p/>
+ * The server only listens on the loopback interface and advertises its port along with a random
+ * token in ~/.gitsetup/hookd.port which is only readable by the owner. A request consists of the
+ * following lines:
+ * <ul>
+ * <li>the token</li>
+ * <li>the working directory of the git hook</li>
+ * <li>the git directory (i.e. <code>GIT_DIR</code>; may be empty)</li>
+ * <li>the index file (i.e. <code>GIT_INDEX_FILE</code>; may be empty)</li>
+ * <li>the base directory for the hooks setup files</li>
+ * <li>the maven settings file (may be empty)</li>
+ * <li>the class name of the java hook to execute</li>
+ * <li>the number of git arguments followed by one line per argument</li>
+ * </ul>
+ * The output of the hook is sent back followed by a final line with {@link #EXIT_MARKER} and the
+ * exit code. Clients should fall back to running the hook in-process if they don't receive it.
+ * <p/>
+ * The server exits once it has been idle for the number of minutes defined by the
+ * <code>githooks.daemonIdleMinutes</code> system property or git config setting of the repository
+ * it is started from (defaults to 60).
+ */
+public class HookServer {
+    public static final String EXIT_MARKER = "@@hookd-exit ";
+
+    public static final String IDLE_SETTING = "daemonIdleMinutes";
+
+    private static final Logger LOGGER = Logger.getLogger(HookServer.class.getName());
+
+    private static final long MILLIS_PER_MINUTE = 60L * 1000L;
+
+    private static final int DEFAULT_IDLE_MINUTES = 60;
+
+    // Configure the logging
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    private static RoutingOutputStream routing;
+
+    private final File portFile;
+
+    private final long idleMillis;
+
+    private final String token;
+
+    private final Map<String, GitHandler> handlers = new HashMap<String, GitHandler>();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final ServerSocket server;
+
+    /**
+     * Instantiates a new hook server bound to an ephemeral port on the loopback interface.
+     *
+     * @param portFile   the file where to advertise the port and token
+     * @param idleMillis the number of milliseconds the server can be idle before shutting down
+     * @throws IOException if unable to bind the server socket
+     */
+    public HookServer(File portFile, long idleMillis) throws IOException {
+        final byte[] bytes = new byte[16];
+
+        new SecureRandom().nextBytes(bytes);
+        this.portFile = portFile;
+        this.idleMillis = idleMillis;
+        this.token = toHex(bytes);
+        this.server = new ServerSocket();
+        server.bind(new InetSocketAddress(InetAddress.getByName(null), 0));
+    }
+
+    /**
+     * Entry point for the hook server.
+     *
+     * @param args the basedir where the gitsetup pom.xml is defined (optional)
+     */
+    public static void main(String[] args) {
+        try {
+            final String uhome = System.getProperty("user.home");
+
+            if (StringUtils.isEmpty(uhome)) {
+                LOGGER.log(Level.WARNING, "Unable to determine the user's home directory");
+                System.exit(Hook.ERROR_CODE);
+            }
+            final File portFile = new File(new File(uhome, ".gitsetup"), "hookd.port");
+
+            if (isRunning(portFile)) {
+                LOGGER.log(Level.FINE, "Hook server is already running");
+                return;
+            }
+            new HookServer(portFile,
+                    getIdleMinutes(new File(ArrayUtils.isEmpty(args) ? "." : args[0])) * MILLIS_PER_MINUTE).serve();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Exception caught: " + e.getMessage(), e);
+            System.exit(Hook.ERROR_CODE);
+        }
+    }
+
+    /**
+     * Gets the number of minutes the server can be idle from the settings of the repository found
+     * in the current directory.
+     *
+     * @param basedir the base directory for the hooks setup files
+     * @return the number of minutes the server can be idle
+     */
+    static int getIdleMinutes(File basedir) {
+        try {
+            final GitHandler handler = new GitHandler(new File("."), null, basedir);
+
+            try {
+                return handler.getHookSetting(IDLE_SETTING, DEFAULT_IDLE_MINUTES);
+            } finally {
+                handler.close();
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Unable to read the hook server settings: " + e.getMessage(), e);
+            return Integer.getInteger(RepositoryHandler.SETTINGS_SECTION + '.' + IDLE_SETTING, DEFAULT_IDLE_MINUTES);
+        }
+    }
+
+    /**
+     * Checks if a hook server is already listening on the port advertised in the specified file.
+     *
+     * @param portFile the file where the port is advertised
+     * @return <code>true</code> if a server is listening; <code>false</code> otherwise
+     */
+    static boolean isRunning(File portFile) {
+        if (!portFile.exists()) {
+            return false;
+        }
+        Socket s = null;
+
+        try {
+            final String[] info = StringUtils.split(FileUtils.readFileToString(portFile, Charsets.UTF_8));
+
+            s = new Socket(InetAddress.getByName(null), Integer.parseInt(info[0]));
+            return true;
+        } catch (Exception e) {
+            return false;
+        } finally {
+            IOUtils.closeQuietly(s);
+        }
+    }
+
+    /**
+     * Gets the port this server is listening on.
+     *
+     * @return the port for this server
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Gets the token clients must provide to use this server.
+     *
+     * @return the token for this server
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Advertises this server and serves requests until it has been idle for too long or until it is
+     * closed.
+     *
+     * @throws IOException if an error occurs while advertising the server
+     */
+    public void serve() throws IOException {
+        installRouting();
+        advertise();
+        final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "hookd-" + count.incrementAndGet());
+
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        LOGGER.log(Level.INFO, "Hook server listening on port {0}", getPort());
+        try {
+            server.setSoTimeout((int) Math.min(idleMillis, Integer.MAX_VALUE));
+            while (!server.isClosed()) {
+                try {
+                    final Socket s = server.accept();
+
+                    active.incrementAndGet();
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                handle(s);
+                            } finally {
+                                active.decrementAndGet();
+                            }
+                        }
+                    });
+                } catch (SocketTimeoutException e) {
+                    if (active.get() == 0) {
+                        LOGGER.log(Level.INFO, "Hook server idle; shutting down");
+                        break;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!server.isClosed()) {
+                throw e;
+            }
+        } finally {
+            close();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Stops this server and releases all cached repositories.
+     */
+    public void close() {
+        IOUtils.closeQuietly(server);
+        try {
+            final String info = portFile.exists() ?
+                    FileUtils.readFileToString(portFile, Charsets.UTF_8) :
+                    "";
+
+            // only remove our own advertisement as another server might have replaced us
+            if (info.contains(token)) {
+                FileUtils.deleteQuietly(portFile);
+            }
+        } catch (IOException e) { // ignore
+        }
+        synchronized (handlers) {
+            for (final GitHandler h: handlers.values()) {
+                h.close();
+            }
+            handlers.clear();
+        }
+    }
+
+    private void advertise() throws IOException {
+        FileUtils.forceMkdir(portFile.getParentFile());
+        FileUtils.deleteQuietly(portFile);
+        if (!portFile.createNewFile()) {
+            throw new IOException("Unable to create " + portFile);
+        }
+        // restrict access to the owner before writing the token
+        portFile.setReadable(false, false);
+        portFile.setWritable(false, false);
+        portFile.setReadable(true, true);
+        portFile.setWritable(true, true);
+        FileUtils.writeStringToFile(portFile, getPort() + " " + token + "\n", Charsets.UTF_8);
+    }
+
+    private void handle(Socket s) {
+        ResponseOutputStream out = null;
+
+        try {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(),
+                    Charsets.UTF_8));
+
+            if (!MessageDigest.isEqual(token.getBytes(Charsets.UTF_8),
+                    StringUtils.defaultString(in.readLine())
+                            .getBytes(Charsets.UTF_8))) {
+                LOGGER.log(Level.WARNING, "Rejecting hook request with an invalid token");
+                return;
+            }
+            final File cwd = new File(readLine(in));
+            final File gitDir = resolve(cwd, readLine(in));
+            final File indexFile = resolve(cwd, readLine(in));
+            final File basedir = new File(readLine(in));
+            final String settings = readLine(in);
+            final String hookClass = readLine(in);
+            final String[] args = new String[Integer.parseInt(readLine(in))];
+
+            for (int i = 0; i < args.length; i++) {
+                args[i] = readLine(in);
+            }
+            out = new ResponseOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            final int rc = run(cwd, gitDir, indexFile, basedir, settings, hookClass, args, out);
+
+            if (out.last != '\n') {
+                out.write('\n');
+            }
+            out.write((EXIT_MARKER + rc + "\n").getBytes(Charsets.UTF_8));
+            out.flush();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Exception caught: " + e.getMessage(), e);
+        } finally {
+            IOUtils.closeQuietly(out);
+            IOUtils.closeQuietly(s);
+        }
+    }
+
+    private int run(File cwd, File gitDir, File indexFile, File basedir, String settings,
+            String hookClass, String[] args, OutputStream out) {
+        final PrintStream ps = new PrintStream(out, true);
+
+        route(ps);
+        try {
+            final HookMetrics metrics = new HookMetrics(hookClass);
+            final long start = System.nanoTime();
+            final GitHandler handler = getHandler(cwd, gitDir, basedir);
+
+            metrics.phase("repo", start);
+            metrics.set("daemon", true);
+
+            LOGGER.log(Level.FINE,
+                    "Hook {0} being served for {1} with arguments: {2}",
+                    new Object[] {hookClass, cwd, StringUtils.join(args, ' ')});
+            // the index file is per request so serialize the requests on a given repository
+            synchronized (handler) {
+                handler.setIndexFile(indexFile);
+                try {
+                    return Hook.run(handler, settings, hookClass, args, metrics);
+                } finally {
+                    handler.setIndexFile(null);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Exception caught: " + e.getMessage(), e);
+            ps.println("Hook " + hookClass + " failed: " + e.getMessage());
+            return Hook.ERROR_CODE;
+        } finally {
+            ps.flush();
+            route(null);
+        }
+    }
+
+    private GitHandler getHandler(File cwd, File gitDir, File basedir) throws IOException {
+        final String key = ((gitDir != null) ? gitDir : cwd).getPath() + File.pathSeparator + basedir
+                .getPath();
+
+        synchronized (handlers) {
+            GitHandler handler = handlers.get(key);
+
+            if ((handler == null) || !handler.getMetadir()
+                    .isDirectory()) {
+                LOGGER.log(Level.FINE, "Opening repository for {0}", key);
+                handler = new GitHandler(cwd, gitDir, basedir);
+                handlers.put(key, handler);
+            }
+            return handler;
+        }
+    }
+
+    private static String readLine(BufferedReader in) throws IOException {
+        final String line = in.readLine();
+
+        if (line == null) {
+            throw new IOException("Incomplete hook request");
+        }
+        return line;
+    }
+
+    private static File resolve(File cwd, String path) {
+        if (path.isEmpty()) {
+            return null;
+        }
+        final File f = new File(path);
+
+        return f.isAbsolute() ? f : new File(cwd, path);
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+
+        for (final byte b: bytes) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Replaces {@link System#out} with a stream that sends the output of each request back to its
+     * client. This must be done before the hook classes are loaded since some of them keep a
+     * reference to it.
+     */
+    private static synchronized void installRouting() {
+        if (routing == null) {
+            routing = new RoutingOutputStream(System.out);
+            System.setOut(new PrintStream(routing, true));
+        }
+    }
+
+    private static void route(OutputStream out) {
+        if (routing != null) {
+            routing.target.set(out);
+        }
+    }
+
+    /**
+     * Output stream which forwards to a stream specific to the current thread or to a default one.
+     */
+    private static class RoutingOutputStream extends OutputStream {
+        private final OutputStream dflt;
+
+        private final ThreadLocal<OutputStream> target = new ThreadLocal<OutputStream>();
+
+        RoutingOutputStream(OutputStream dflt) {
+            this.dflt = dflt;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            getTarget().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            getTarget().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            getTarget().flush();
+        }
+
+        private OutputStream getTarget() {
+            final OutputStream out = target.get();
+
+            return (out != null) ? out : dflt;
+        }
+    }
+
+    /**
+     * Output stream which keeps track of the last byte written.
+     */
+    private static class ResponseOutputStream extends FilterOutputStream {
+        private int last = '\n';
+
+        ResponseOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            this.last = b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                out.write(b, off, len);
+                this.last = b[off + len - 1];
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import java.io.PrintWriter;
+import java.util.Collection;
+
+/**
+ * Helpers for writing the machine-readable JSON reports produced by the scanning hooks.
+ */
+final class Json {
+    private Json() {
+    }
+
+    /**
+     * Writes the specified string as a quoted JSON string.
+     *
+     * @param out the writer where to write
+     * @param s   the string to write
+     */
+    static void quote(PrintWriter out, String s) {
+        out.append(Json.quote(new StringBuilder(s.length() + 2), s));
+    }
+
+    /**
+     * Appends the specified string as a quoted JSON string.
+     *
+     * @param sb the builder where to append
+     * @param s  the string to append
+     * @return <code>sb</code> for chaining
+     */
+    static StringBuilder quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+
+            switch (c) {
+                case '"':
+                case '\\':
+                    sb.append('\\')
+                            .append(c);
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"');
+    }
+
+    /**
+     * Writes the specified strings as a JSON array.
+     *
+     * @param out     the writer where to write
+     * @param strings the strings to write
+     */
+    static void array(PrintWriter out, Collection<String> strings) {
+        String sep = "";
+
+        out.print('[');
+        for (final String s: strings) {
+            out.print(sep);
+            Json.quote(out, s);
+            sep = ",";
+        }
+        out.print(']');
+    }
+}
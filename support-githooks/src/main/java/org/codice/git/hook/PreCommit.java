@@ -13,14 +13,25 @@
  */
 package org.codice.git.hook;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.commons.lang3.StringUtils;
+import org.codice.git.CleanBlobIndex;
+import org.codice.git.DiffListener;
+import org.codice.git.DirtyWordHit;
 import org.codice.git.RepositoryHandler;
+import org.eclipse.jgit.util.RawParseUtils;
 
 public class PreCommit extends Hook {
     protected static final String ERR_MSG =
@@ -28,6 +39,19 @@ public class PreCommit extends Hook {
                     + "%sTo commit anyway, use --no-verify (which you should never do!)%n"
                     + "-------------------------------------------------------------------------------%n";
 
+    // the number of threads to use when generating and scanning the diffs of the staged files
+    protected static final String THREADS_SETTING = "scanThreads";
+
+    // the maximum number of entries to keep in the index of changes already verified clean (0 to disable)
+    protected static final String CLEAN_BLOBS_SETTING = "cleanBlobs";
+
+    // the maximum number of dirty word locations to report per file (0 to only report the files)
+    protected static final String MAX_HITS_SETTING = "maxHitsPerFile";
+
+    private static final int DEFAULT_CLEAN_BLOBS = 4096;
+
+    private static final int DEFAULT_MAX_HITS = 10;
+
     private static final Logger LOGGER = Logger.getLogger(PreCommit.class.getName());
 
     public PreCommit(RepositoryHandler handler) throws IOException {
@@ -38,39 +62,44 @@ public class PreCommit extends Hook {
         if (!hasDirtyWords()) { // no dirty words; all accepted so bail!
             return false;
         }
-        LOGGER.finer("Executing the git diff to determine files with changes.");
-        final String diff = repoHandler.getDiff();
-        final Set<String> foundWords = new HashSet<String>();
-        final Set<String> foundInFiles = new HashSet<String>();
-        final StringBuilder sb = new StringBuilder();
-        String currentFile = "???";
-        boolean dirty = false;
-
-        LOGGER.log(Level.FINEST, "Diff for this commit: {0}", diff);
-        for (final String line: StringUtils.split(diff, '\n')) {
-            if (line.startsWith("+++ b/")) {
-                if ((sb.length() > 0) && containsDirtyWords(sb.toString(), foundWords)) {
-                    dirty = true;
-                    foundInFiles.add(currentFile);
-                }
-                sb.setLength(0);
-                currentFile = StringUtils.substringAfter(line, "+++ b/");
-                // continue which will allow us to validate the filename as well
+        final int threads = repoHandler.getHookSetting(PreCommit.THREADS_SETTING, 1);
+        final int cleanBlobs = repoHandler.getHookSetting(PreCommit.CLEAN_BLOBS_SETTING,
+                PreCommit.DEFAULT_CLEAN_BLOBS);
+        final int maxHits = repoHandler.getHookSetting(PreCommit.MAX_HITS_SETTING,
+                PreCommit.DEFAULT_MAX_HITS);
+        final Scanner scanner = new Scanner(maxHits, ((cleanBlobs > 0) && (repoHandler.getMetadir() != null)) ?
+                new CleanBlobIndex(new File(repoHandler.getCacheDir(), "clean-blobs.txt"),
+                        repoHandler.getDirtyWordsHash(),
+                        cleanBlobs) :
+                null);
+
+        LOGGER.log(Level.FINER,
+                "Executing the git diff to determine files with changes using {0} thread(s).",
+                threads);
+        final long start = System.nanoTime();
+
+        repoHandler.streamDiff(scanner, threads);
+        scanner.recordCleanBlobs();
+        metrics.phase("diff", start);
+        // merge the results per files in a deterministic order
+        final Map<String, Set<String>> found = new TreeMap<String, Set<String>>(scanner.found);
+
+        if (!found.isEmpty()) {
+            final Set<String> foundWords = new TreeSet<String>();
+            final Set<String> foundInFiles = found.keySet();
+
+            for (final Set<String> words: found.values()) {
+                foundWords.addAll(words);
             }
-            sb.append(line).append('\n'); // accumulate all lines to check in one shot
-        }
-        if ((sb.length() > 0) && containsDirtyWords(sb.toString(), foundWords)) {
-            dirty = true;
-            foundInFiles.add(currentFile);
-        }
-        if (dirty) {
             LOGGER.log(Level.FINE, "Dirty words found: {0}", foundWords);
             LOGGER.log(Level.FINE, "Files with dirty words: {0}", foundInFiles);
-            sb.setLength(0);
+            final StringBuilder sb = new StringBuilder();
+
             Hook.appendDirtyWords(sb, foundWords)
                     .append("In files:%n");
             for (final String f: foundInFiles) {
                 sb.append('\t').append(f).append("%n");
+                appendHits(sb, scanner.hits.get(f), scanner.truncated.contains(f));
             }
             // the double formatting is to properly support %n in the string builder too!
             System.out.printf(String.format(ERR_MSG, sb));
@@ -81,4 +110,181 @@ public class PreCommit extends Hook {
             return false;
         }
     }
+
+    private static void appendHits(StringBuilder sb, List<DirtyWordHit> hits, boolean truncated) {
+        if (hits == null) {
+            return;
+        }
+        for (final DirtyWordHit h: hits) {
+            sb.append("\t\t")
+                    .append(h.getLine())
+                    .append(':')
+                    .append(h.getColumn())
+                    .append(": ")
+                    .append(h.getWord().replace("%", "%%"))
+                    .append("%n");
+        }
+        if (truncated) {
+            sb.append("\t\t... more not shown%n");
+        }
+    }
+
+    /**
+     * Scans the added lines of each files as they are streamed from the diff. Files might be
+     * streamed concurrently but all lines for a given file are always streamed from the same thread.
+     * Files whose changes were already verified clean are skipped. The location of the dirty words
+     * found in lines with known line numbers are reported up to a maximum per file such that huge
+     * dirty files do not flood the output nor slow down the hook.
+     */
+    private class Scanner implements DiffListener {
+        private final Map<String, Set<String>> found = new ConcurrentHashMap<String, Set<String>>();
+
+        private final Map<String, List<DirtyWordHit>> hits = new ConcurrentHashMap<String, List<DirtyWordHit>>();
+
+        // the files for which more dirty words were found than reported
+        private final Set<String> truncated = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        private final int maxHits;
+
+        private final CleanBlobIndex clean;
+
+        // the scope of the dirty words along with the old and new blob ids of the files being
+        // scanned for which we know the ids
+        private final Map<String, String[]> blobs = new ConcurrentHashMap<String, String[]>();
+
+        private final Set<String> dirtyBlobs = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        Scanner(int maxHits, CleanBlobIndex clean) {
+            this.maxHits = maxHits;
+            this.clean = clean;
+        }
+
+        @Override
+        public void startFile(String path) throws IOException {
+            LOGGER.log(Level.FINEST, "Scanning changes for: {0}", path);
+            metrics.count("files", 1L);
+            scan(path, path); // validate the filename as well
+        }
+
+        @Override
+        public boolean skipContent(String path, String oldId, String newId) throws IOException {
+            if (clean == null) {
+                return false;
+            }
+            final String scope = getDirtyWordScope(path);
+
+            if (clean.isClean(scope, oldId, newId)) {
+                LOGGER.log(Level.FINEST, "Changes already verified clean for: {0}", path);
+                metrics.count("skippedFiles", 1L);
+                return true;
+            }
+            blobs.put(path, new String[] {scope, oldId, newId});
+            return false;
+        }
+
+        @Override
+        public void addedLines(String path, CharSequence lines) throws IOException {
+            if (scan(path, lines)) {
+                dirtyBlobs.add(path);
+            }
+        }
+
+        @Override
+        public void addedLines(String path, byte[] raw, int start, int end) throws IOException {
+            final Set<String> words = new HashSet<String>();
+
+            if (containsDirtyWords(path, raw, start, end, words)) {
+                record(path, words);
+                dirtyBlobs.add(path);
+            }
+        }
+
+        @Override
+        public void addedLines(String path, byte[] raw, int start, int end, int[] lineNumbers)
+                throws IOException {
+            final Set<String> words = new HashSet<String>();
+
+            if (containsDirtyWords(path, raw, start, end, words)) {
+                record(path, words);
+                dirtyBlobs.add(path);
+                if (maxHits > 0) {
+                    locate(path, raw, start, end, lineNumbers);
+                }
+            }
+        }
+
+        @Override
+        public void endFile(String path) throws IOException {
+        }
+
+        /**
+         * Records the blobs that were scanned and found clean. This is done even if the commit is
+         * aborted as the clean ones won't have to be rescanned when it is attempted again.
+         */
+        void recordCleanBlobs() {
+            if (clean == null) {
+                return;
+            }
+            for (final Map.Entry<String, String[]> e: blobs.entrySet()) {
+                if (!dirtyBlobs.contains(e.getKey())) {
+                    clean.addClean(e.getValue()[0], e.getValue()[1], e.getValue()[2]);
+                }
+            }
+            clean.save();
+        }
+
+        private boolean scan(String path, CharSequence s) throws IOException {
+            final Set<String> words = new HashSet<String>();
+
+            if (containsDirtyWords(path, s, words)) {
+                record(path, words);
+                return true;
+            }
+            return false;
+        }
+
+        private void locate(String path, byte[] raw, int start, int end, int[] lineNumbers)
+                throws IOException {
+            List<DirtyWordHit> fhits = hits.get(path);
+
+            if (fhits == null) {
+                fhits = new ArrayList<DirtyWordHit>();
+                hits.put(path, fhits);
+            }
+            int s = start;
+
+            for (int k = 0; (k < lineNumbers.length) && (s < end); k++) {
+                if (fhits.size() >= maxHits) { // the block is dirty so check if anything is left
+                    if (containsDirtyWords(path, raw, s, end, new HashSet<String>())) {
+                        truncated.add(path);
+                    }
+                    return;
+                }
+                final int e = Math.min(end, RawParseUtils.nextLF(raw, s));
+                // look for one more than we can report to know if some are left out
+                final List<DirtyWordHit> lhits = locateDirtyWords(path,
+                        lineNumbers[k],
+                        RawParseUtils.decode(raw, s, e),
+                        maxHits - fhits.size() + 1);
+
+                if (fhits.size() + lhits.size() > maxHits) {
+                    fhits.addAll(lhits.subList(0, maxHits - fhits.size()));
+                    truncated.add(path);
+                    return;
+                }
+                fhits.addAll(lhits);
+                s = e;
+            }
+        }
+
+        private void record(String path, Set<String> words) {
+            Set<String> fwords = found.get(path);
+
+            if (fwords == null) {
+                fwords = new HashSet<String>();
+                found.put(path, fwords);
+            }
+            fwords.addAll(words);
+        }
+    }
 }
@@ -0,0 +1,253 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.codice.git.CommitListener;
+import org.codice.git.DiffListener;
+import org.codice.git.RepositoryHandler;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Scans all commits in a revision range (e.g. <code>origin/master..HEAD</code>) for dirty words in
+ * their messages, the names of the files they change, and the lines they add. This is meant for CI
+ * builds and pre-push verifications which would otherwise have to replay the hooks commit by
+ * commit. Each commit is diffed only once and commits are scanned concurrently using up to
+ * <code>githooks.scanThreads</code> threads. Merge commits are diffed against their first parent
+ * unless <code>githooks.scanMerges</code> is set to <code>false</code>.
+ * <p/>
+ * The hook expects the range followed optionally by the file where to write the report; it is
+ * written to the standard output otherwise. The report is a JSON document listing the words found
+ * per commit and file:
+ * <pre>
+ * {"range":"origin/master..HEAD","commits":2,"clean":false,"findings":[
+ * {"commit":"&lt;id&gt;","type":"message","words":["bill"]},
+ * {"commit":"&lt;id&gt;","type":"file","path":"src/Bill.java","words":["bill"]}
+ * ]}
+ * </pre>
+ * It can be invoked through {@link Hook#main} like any other hook or directly through {@link #main}.
+ */
+public class RangeScan extends Hook {
+    private static final Logger LOGGER = Logger.getLogger(RangeScan.class.getName());
+
+    private final Map<String, Result> found = new ConcurrentHashMap<String, Result>();
+
+    private final AtomicInteger commits = new AtomicInteger();
+
+    public RangeScan(RepositoryHandler handler) throws IOException {
+        super(handler);
+    }
+
+    /**
+     * Entry point for scanning a range from the command line.
+     *
+     * @param args the basedir where the gitsetup pom.xml is defined, the maven settings file (may be
+     *             empty), the revision range to scan, and optionally the file where to write the
+     *             report
+     */
+    public static void main(String[] args) {
+        if (ArrayUtils.getLength(args) < 3) {
+            LOGGER.log(Level.WARNING, "Missing arguments");
+            System.exit(Hook.ERROR_CODE);
+        }
+        Hook.main(ArrayUtils.add(args, 2, RangeScan.class.getName()));
+    }
+
+    /**
+     * Scans the commits in the range provided as first argument and writes the report.
+     *
+     * @param args the revision range to scan and optionally the file where to write the report
+     * @return <code>true</code> if dirty words were found or if no range was provided;
+     * <code>false</code> otherwise
+     * @throws Exception if any errors occur while walking the range or writing the report
+     */
+    @Override
+    public boolean executeHook(String[] args) throws Exception {
+        if (ArrayUtils.isEmpty(args)) {
+            LOGGER.log(Level.WARNING, "Missing revision range argument");
+            return true;
+        }
+        final String range = args[0];
+        final int threads = repoHandler.getHookSetting(PreCommit.THREADS_SETTING, 1);
+        final long start = System.nanoTime();
+
+        LOGGER.log(Level.FINE, "Scanning commits in {0} using {1} thread(s)", new Object[] {range, threads});
+        repoHandler.streamCommits(range, new Scanner(), threads);
+        metrics.phase("diff", start);
+        metrics.count("commits", commits.get());
+        if (args.length > 1) {
+            final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(new File(
+                    args[1])), Charsets.UTF_8));
+
+            try {
+                writeReport(out, range);
+            } finally {
+                out.close();
+            }
+        } else {
+            final PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, Charsets.UTF_8));
+
+            writeReport(out, range);
+            out.flush();
+        }
+        if (!found.isEmpty()) {
+            LOGGER.log(Level.INFO, "Dirty words found in commits: {0}", new TreeSet<String>(found.keySet()));
+            return true;
+        }
+        LOGGER.log(Level.INFO, "All {0} commits are clean.", commits.get());
+        return false;
+    }
+
+    /**
+     * Writes the report of the words found so far, sorted by commit id and path.
+     *
+     * @param out   the writer where to write the report
+     * @param range the revision range that was scanned
+     */
+    void writeReport(PrintWriter out, String range) {
+        final Map<String, Result> results = new TreeMap<String, Result>(found);
+        String sep = "\n";
+
+        out.print("{\"range\":");
+        Json.quote(out, range);
+        out.print(",\"commits\":" + commits.get() + ",\"clean\":" + results.isEmpty() + ",\"findings\":[");
+        for (final Map.Entry<String, Result> e: results.entrySet()) {
+            final Result r = e.getValue();
+
+            if (!r.message.isEmpty()) {
+                out.print(sep);
+                RangeScan.writeFinding(out, e.getKey(), null, r.message);
+                sep = ",\n";
+            }
+            for (final Map.Entry<String, Set<String>> f: r.files.entrySet()) {
+                out.print(sep);
+                RangeScan.writeFinding(out, e.getKey(), f.getKey(), f.getValue());
+                sep = ",\n";
+            }
+        }
+        out.println(results.isEmpty() ? "]}" : "\n]}");
+    }
+
+    private static void writeFinding(PrintWriter out, String commit, String path, Set<String> words) {
+        out.print("{\"commit\":");
+        Json.quote(out, commit);
+        if (path == null) {
+            out.print(",\"type\":\"message\"");
+        } else {
+            out.print(",\"type\":\"file\",\"path\":");
+            Json.quote(out, path);
+        }
+        out.print(",\"words\":");
+        Json.array(out, words);
+        out.print('}');
+    }
+
+    /**
+     * The words found in a given commit.
+     */
+    private static class Result {
+        private final Set<String> message = new TreeSet<String>();
+
+        private final Map<String, Set<String>> files = new TreeMap<String, Set<String>>();
+
+        boolean isEmpty() {
+            return message.isEmpty() && files.isEmpty();
+        }
+    }
+
+    /**
+     * Scans the messages and added lines of each commit as they are streamed. Commits might be
+     * streamed concurrently but all calls for a given commit are always made from the same thread
+     * so each commit gets its own file listener. The content of the commits is not even diffed when
+     * there are no dirty words.
+     */
+    private class Scanner implements CommitListener {
+        @Override
+        public DiffListener startCommit(final String id, String message) throws IOException {
+            final Result result = new Result();
+
+            LOGGER.log(Level.FINEST, "Scanning commit: {0}", id);
+            commits.incrementAndGet();
+            found.put(id, result);
+            containsDirtyWords(message, result.message);
+            if (!hasDirtyWords()) {
+                return null;
+            }
+            return new DiffListener() {
+                @Override
+                public void startFile(String path) throws IOException {
+                    metrics.count("files", 1L);
+                    addedLines(path, path); // validate the filename as well
+                }
+
+                @Override
+                public void addedLines(String path, CharSequence lines) throws IOException {
+                    final Set<String> words = new HashSet<String>();
+
+                    if (containsDirtyWords(path, lines, words)) {
+                        record(path, words);
+                    }
+                }
+
+                @Override
+                public void addedLines(String path, byte[] raw, int start, int end) throws IOException {
+                    final Set<String> words = new HashSet<String>();
+
+                    if (containsDirtyWords(path, raw, start, end, words)) {
+                        record(path, words);
+                    }
+                }
+
+                @Override
+                public void endFile(String path) {
+                }
+
+                private void record(String path, Set<String> words) {
+                    Set<String> fwords = result.files.get(path);
+
+                    if (fwords == null) {
+                        fwords = new TreeSet<String>();
+                        result.files.put(path, fwords);
+                    }
+                    fwords.addAll(words);
+                }
+            };
+        }
+
+        @Override
+        public void endCommit(String id) {
+            final Result result = found.get(id);
+
+            if ((result != null) && result.isEmpty()) { // only keep track of dirty commits
+                found.remove(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import java.util.Locale;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Policy controlling when a downloaded artifact is refreshed. The syntax follows maven's update
+ * policies with the addition of <code>offline</code>:
+ * <ul>
+ * <li><code>always</code>: refresh it every time</li>
+ * <li><code>daily</code>: refresh it once a day (the default)</li>
+ * <li><code>interval:X</code>: refresh it every X minutes</li>
+ * <li><code>never</code>: only download it if missing</li>
+ * <li><code>offline</code>: never access the network, not even if missing</li>
+ * </ul>
+ */
+final class RefreshPolicy {
+    private static final long MILLIS_PER_MINUTE = 1000L * 60L;
+
+    private static final long MILLIS_PER_DAY = MILLIS_PER_MINUTE * 60L * 24L;
+
+    private static final String INTERVAL_PREFIX = "interval:";
+
+    static final RefreshPolicy DAILY = new RefreshPolicy("daily", MILLIS_PER_DAY, false);
+
+    private final String value;
+
+    // the minimum time between refreshes in milliseconds or -1 if never refreshed
+    private final long interval;
+
+    private final boolean offline;
+
+    private RefreshPolicy(String value, long interval, boolean offline) {
+        this.value = value;
+        this.interval = interval;
+        this.offline = offline;
+    }
+
+    /**
+     * Parses the specified policy.
+     *
+     * @param value the policy to parse
+     * @return the corresponding policy
+     * @throws IllegalArgumentException if the policy is invalid
+     */
+    static RefreshPolicy parse(String value) {
+        final String v = StringUtils.trimToEmpty(value)
+                .toLowerCase(Locale.ROOT);
+
+        switch (v) {
+            case "always":
+                return new RefreshPolicy(v, 0L, false);
+            case "daily":
+                return RefreshPolicy.DAILY;
+            case "never":
+                return new RefreshPolicy(v, -1L, false);
+            case "offline":
+                return new RefreshPolicy(v, -1L, true);
+            default:
+                if (v.startsWith(INTERVAL_PREFIX)) {
+                    try {
+                        final long minutes = Long.parseLong(v.substring(INTERVAL_PREFIX.length()));
+
+                        if (minutes >= 0L) {
+                            return new RefreshPolicy(v, minutes * MILLIS_PER_MINUTE, false);
+                        }
+                    } catch (NumberFormatException e) { // fall through to report it as invalid
+                    }
+                }
+                throw new IllegalArgumentException("invalid refresh policy: " + value);
+        }
+    }
+
+    /**
+     * Checks if the network must not be accessed.
+     *
+     * @return <code>true</code> if offline; <code>false</code> otherwise
+     */
+    boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * Checks if an artifact last refreshed at the specified time is due to be refreshed.
+     *
+     * @param lastModified the time the artifact was last refreshed in milliseconds
+     * @return <code>true</code> if the artifact should be refreshed; <code>false</code> otherwise
+     */
+    boolean isDue(long lastModified) {
+        return (interval >= 0L) && (System.currentTimeMillis() - lastModified >= interval);
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CleanBlobIndexTest {
+    // Configure the logging for this test
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    private File dir;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dir = File.createTempFile("githook_test_", "_tmp");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        this.file = new File(new File(dir, "githooks"), "clean-blobs.txt");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testAddedBlobsAreCleanFromAnyOldBlob() throws Exception {
+        final CleanBlobIndex index = new CleanBlobIndex(file, "hash", 10);
+
+        index.addClean(null, "b1");
+        assertTrue(index.isClean(null, "b1"));
+        assertTrue(index.isClean("b0", "b1"));
+    }
+
+    @Test
+    public void testChangesFromUnknownBlobsAreOnlyCleanFromThatBlob() throws Exception {
+        final CleanBlobIndex index = new CleanBlobIndex(file, "hash", 10);
+
+        index.addClean("b0", "b1");
+        assertTrue(index.isClean("b0", "b1"));
+        assertFalse(index.isClean(null, "b1"));
+        assertFalse(index.isClean("b2", "b1"));
+        // but changes from a clean blob are clean
+        index.addClean("b1", "b2");
+        assertTrue(index.isClean("b1", "b2"));
+        assertFalse(index.isClean("b3", "b2"));
+        index.addClean(null, "b1");
+        index.addClean("b1", "b2");
+        assertTrue(index.isClean("b3", "b2"));
+    }
+
+    @Test
+    public void testEntriesAreOnlyCleanForTheirScope() throws Exception {
+        final CleanBlobIndex index = new CleanBlobIndex(file, "hash", 10);
+
+        index.addClean("vendor/", null, "b1");
+        index.addClean("vendor/", "b1", "b2");
+        assertTrue(index.isClean("vendor/", "b0", "b1"));
+        assertTrue(index.isClean("vendor/", "b3", "b2"));
+        assertFalse(index.isClean(null, "b1"));
+        assertFalse(index.isClean("b1", "b2"));
+        assertFalse(index.isClean("src/", "b1", "b2"));
+        index.addClean("b1", "b2");
+        assertTrue(index.isClean("b1", "b2"));
+        assertFalse(index.isClean("src/", "b1", "b2"));
+    }
+
+    @Test
+    public void testIndexIsSavedAndDiscardedWhenHashChanges() throws Exception {
+        final CleanBlobIndex index = new CleanBlobIndex(file, "hash", 10);
+
+        index.addClean(null, "b1");
+        index.save();
+        assertTrue(file.exists());
+        assertTrue(new CleanBlobIndex(file, "hash", 10).isClean(null, "b1"));
+        assertFalse(new CleanBlobIndex(file, "other", 10).isClean(null, "b1"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreDropped() throws Exception {
+        final CleanBlobIndex index = new CleanBlobIndex(file, "hash", 2);
+
+        index.addClean(null, "b1");
+        index.addClean(null, "b2");
+        assertTrue(index.isClean(null, "b1"));
+        index.addClean(null, "b3");
+        assertEquals(2, index.size());
+        assertTrue(index.isClean(null, "b1"));
+        assertFalse(index.isClean(null, "b2"));
+        assertTrue(index.isClean(null, "b3"));
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DirtyWordCacheTest {
+    // Configure the logging for this test
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    private final MockRepoHandler repHandler = new MockRepoHandler();
+
+    private File dir;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dir = File.createTempFile("githook_test_", "_tmp");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        this.file = new File(new File(dir, "githooks"), "dirty-words.ser");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testLoadReturnsTheSavedRouter() throws Exception {
+        new DirtyWordCache(file).save("hash", newRouter());
+
+        final DirtyWordRouter router = new DirtyWordCache(file).load("hash");
+
+        assertNotNull(router);
+        assertFalse(router.isEmpty());
+    }
+
+    @Test
+    public void testLoadIgnoresRoutersBuiltFromOtherSources() throws Exception {
+        new DirtyWordCache(file).save("hash", newRouter());
+
+        assertNull(new DirtyWordCache(file).load("other"));
+    }
+
+    @Test
+    public void testLoadIgnoresRoutersCachedWithAnotherFormatVersion() throws Exception {
+        FileUtils.forceMkdir(file.getParentFile());
+        final ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+
+        try {
+            out.writeInt(DirtyWordCache.FORMAT_VERSION - 1);
+            out.writeUTF("hash");
+            out.writeObject(newRouter());
+        } finally {
+            out.close();
+        }
+        assertNull(new DirtyWordCache(file).load("hash"));
+    }
+
+    @Test
+    public void testLoadIgnoresCachesWithoutFormatVersion() throws Exception {
+        FileUtils.forceMkdir(file.getParentFile());
+        final ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+
+        try {
+            out.writeUTF("hash");
+            out.writeObject(newRouter());
+        } finally {
+            out.close();
+        }
+        assertNull(new DirtyWordCache(file).load("hash"));
+    }
+
+    private DirtyWordRouter newRouter() {
+        final Map<String, Pattern> words = Collections.singletonMap("bill", repHandler.getPatternFor("bill"));
+
+        return new DirtyWordRouter(Collections.singletonMap(RepositoryHandler.GLOBAL_SCOPE, words));
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+public class DirtyWordMatcherTest {
+    // Configure the logging for this test
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    private final MockRepoHandler repHandler = new MockRepoHandler();
+
+    @Test
+    public void testFindReportsAllOverlappingLiterals() throws Exception {
+        final DirtyWordMatcher matcher = newMatcher("march", "march madness", "madness", "ness");
+        final Set<String> found = new HashSet<String>();
+
+        assertTrue(matcher.find("It is MARCH Madness again", found));
+        assertEquals(new HashSet<String>(Arrays.asList("march", "march madness", "madness")), found);
+    }
+
+    @Test
+    public void testFindHonorsWordBoundaries() throws Exception {
+        final DirtyWordMatcher matcher = newMatcher("bill", ".printMyTrace");
+        final Set<String> found = new HashSet<String>();
+
+        assertFalse(matcher.find("billions of abill", found));
+        assertTrue(matcher.find("billions of bill_ and e.printMyTrace()", found));
+        assertEquals(new HashSet<String>(Arrays.asList("bill", ".printMyTrace")), found);
+    }
+
+    @Test
+    public void testFindReportsAllRegexesMatchingAtTheSameLocation() throws Exception {
+        final DirtyWordMatcher matcher = newMatcher("REGEX:sys\\w+",
+                "REGEX:system\\.out",
+                "REGEX:(a)x\\1",
+                "REGEX:nothing");
+        final Set<String> found = new HashSet<String>();
+
+        assertTrue(matcher.find("System.out and axa", found));
+        assertEquals(new HashSet<String>(Arrays.asList("REGEX:sys\\w+",
+                "REGEX:system\\.out",
+                "REGEX:(a)x\\1")), found);
+    }
+
+    @Test
+    public void testFindReportsRegexesFollowingRepeatedMatches() throws Exception {
+        final DirtyWordMatcher matcher = newMatcher("REGEX:x\\w*", "REGEX:xyz", "REGEX:x\\d");
+        final Set<String> found = new HashSet<String>();
+
+        assertTrue(matcher.find("xa xb xc xyz", found));
+        assertEquals(new HashSet<String>(Arrays.asList("REGEX:x\\w*", "REGEX:xyz")), found);
+    }
+
+    @Test
+    public void testFindMatchesEachPatternIndividually() throws Exception {
+        final Random random = new Random(0L);
+        final String alphabet = "abAB _-.:\n1\u00e9\u00c9";
+        final String[] regexes = new String[] {"REGEX:a+b", "REGEX:(a|b)b", "REGEX:b(a)\\1", "REGEX:[ab]{2}"};
+
+        for (int i = 0; i < 2000; i++) {
+            final Map<String, Pattern> words = new HashMap<String, Pattern>();
+
+            for (int j = random.nextInt(8); j >= 0; j--) {
+                final String w = (random.nextInt(4) == 0) ?
+                        regexes[random.nextInt(regexes.length)] :
+                        randomString(random, alphabet, 1 + random.nextInt(4)).trim();
+
+                if (!w.isEmpty()) {
+                    words.put(w, repHandler.getPatternFor(w));
+                }
+            }
+            final String text = randomString(random, alphabet, random.nextInt(40));
+            final Set<String> expected = new HashSet<String>();
+            final Set<String> found = new HashSet<String>();
+
+            for (final Map.Entry<String, Pattern> e: words.entrySet()) {
+                if (e.getValue()
+                        .matcher(text)
+                        .find()) {
+                    expected.add(e.getKey());
+                }
+            }
+            final DirtyWordMatcher matcher = new DirtyWordMatcher(words);
+            final byte[] raw = ("\u00e9\n" + text).getBytes(StandardCharsets.UTF_8);
+            final Set<String> rawFound = new HashSet<String>();
+
+            assertEquals(!expected.isEmpty(), matcher.find(text, found));
+            assertEquals("words: " + words.keySet() + " text: " + text, expected, found);
+            assertEquals(!expected.isEmpty(), matcher.find(raw, 3, raw.length, rawFound));
+            assertEquals("words: " + words.keySet() + " raw text: " + text, expected, rawFound);
+        }
+    }
+
+    @Test
+    public void testFindInRawText() throws Exception {
+        final DirtyWordMatcher matcher = newMatcher("bill", "caf\u00e9", "REGEX:sys\\w+");
+        final byte[] ascii = "Bill in system\n".getBytes(StandardCharsets.US_ASCII);
+        final byte[] utf8 = "x\nCAF\u00c9 au lait\n".getBytes(StandardCharsets.UTF_8);
+        final byte[] latin1 = "no bill\ncaf\u00e9\n".getBytes(StandardCharsets.ISO_8859_1);
+        final Set<String> found = new HashSet<String>();
+
+        assertFalse(matcher.find(ascii, 1, 8, found)); // "ill in s"
+        assertTrue(matcher.find(ascii, 0, ascii.length, found));
+        assertEquals(new HashSet<String>(Arrays.asList("bill", "REGEX:sys\\w+")), found);
+        found.clear();
+        assertTrue(matcher.find(utf8, 2, utf8.length, found));
+        assertEquals(new HashSet<String>(Arrays.asList("caf\u00e9")), found);
+        found.clear();
+        // lines which are not valid UTF-8 are decoded on their own like git does
+        assertTrue(matcher.find(latin1, 0, latin1.length, found));
+        assertEquals(new HashSet<String>(Arrays.asList("bill", "caf\u00e9")), found);
+    }
+
+    @Test
+    public void testFindInBuffer() throws Exception {
+        final DirtyWordMatcher matcher = newMatcher("bill", "caf\u00e9", "REGEX:sys\\w+");
+        final byte[] ascii = "Bill in system\n".getBytes(StandardCharsets.US_ASCII);
+        final byte[] utf8 = "x\nCAF\u00c9 au lait\n".getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(ascii.length + utf8.length);
+        final Set<String> found = new HashSet<String>();
+
+        direct.put(ascii)
+                .put(utf8)
+                .flip();
+        direct.position(1)
+                .limit(8); // "ill in s"
+        assertFalse(matcher.find(direct, found));
+        direct.limit(ascii.length)
+                .position(0);
+        assertTrue(matcher.find(direct, found));
+        assertEquals(new HashSet<String>(Arrays.asList("bill", "REGEX:sys\\w+")), found);
+        assertEquals(0, direct.position()); // left untouched
+        found.clear();
+        direct.limit(direct.capacity())
+                .position(ascii.length + 2);
+        assertTrue(matcher.find(direct, found));
+        assertEquals(new HashSet<String>(Arrays.asList("caf\u00e9")), found);
+        found.clear();
+        assertTrue(matcher.find(ByteBuffer.wrap(utf8, 2, utf8.length - 2)
+                .slice(), found));
+        assertEquals(new HashSet<String>(Arrays.asList("caf\u00e9")), found);
+    }
+
+    @Test
+    public void testLocate() throws Exception {
+        final DirtyWordMatcher matcher = newMatcher("bill", "big bill", "REGEX:sys\\w+");
+        final List<DirtyWordHit> hits = matcher.locate("a.txt", 3, "Big Bill and bill use system_bill\n", 10);
+
+        assertEquals(Arrays.asList(new DirtyWordHit("a.txt", 3, 1, "big bill"),
+                new DirtyWordHit("a.txt", 3, 5, "bill"),
+                new DirtyWordHit("a.txt", 3, 14, "bill"),
+                new DirtyWordHit("a.txt", 3, 23, "REGEX:sys\\w+"),
+                new DirtyWordHit("a.txt", 3, 30, "bill")), hits);
+        assertEquals(hits.subList(0, 2), matcher.locate("a.txt", 3, "Big Bill and bill use system_bill\n", 2));
+        assertTrue(matcher.locate("a.txt", 3, "billing\n", 10)
+                .isEmpty());
+    }
+
+    @Test(timeout = 30000L)
+    public void testFindReportsRegexesExceedingTheirBudget() throws Exception {
+        // the first one is merged with the others while the back reference keeps the second apart
+        final DirtyWordMatcher unguarded = newMatcher("bill",
+                "REGEX:sys\\w+",
+                "REGEX:(x+x+)+y",
+                "REGEX:((a+)+)\\2b");
+        final DirtyWordMatcher matcher = unguarded.withRegexLimits(256, 1000);
+        final String text = "Bill in system " + StringUtils.repeat('x', 200) + ' ' + StringUtils.repeat('a', 30)
+                + '\n';
+        final Set<String> expected = new HashSet<String>(Arrays.asList("bill",
+                "REGEX:sys\\w+",
+                "REGEX:(x+x+)+y",
+                "REGEX:((a+)+)\\2b"));
+        final Set<String> found = new HashSet<String>();
+
+        assertSame(unguarded, unguarded.withRegexLimits(0, 0));
+        assertTrue(matcher.find(text, found));
+        assertEquals(expected, found);
+        found.clear();
+        assertTrue(matcher.find(text.getBytes(StandardCharsets.US_ASCII), 0, text.length(), found));
+        assertEquals(expected, found);
+        assertEquals(Arrays.asList(new DirtyWordHit("a.txt", 1, 1, "REGEX:((a+)+)\\2b"),
+                new DirtyWordHit("a.txt", 1, 1, "REGEX:(x+x+)+y"),
+                new DirtyWordHit("a.txt", 1, 1, "bill"),
+                new DirtyWordHit("a.txt", 1, 9, "REGEX:sys\\w+")),
+                matcher.locate("a.txt", 1, text, 10));
+        // the fixed allowance is enough for well behaved entries on short texts
+        found.clear();
+        assertTrue(unguarded.withRegexLimits(1, 0)
+                .find("xxxxy system", found));
+        assertEquals(new HashSet<String>(Arrays.asList("REGEX:sys\\w+", "REGEX:(x+x+)+y")), found);
+        found.clear();
+        assertFalse(unguarded.withRegexLimits(1, 0)
+                .find("xxxx symbol", found));
+    }
+
+    @Test
+    public void testFindAfterSerialization() throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bos);
+
+        out.writeObject(newMatcher("bill", "march madness", "REGEX:sys\\w+", "REGEX:(a)x\\1"));
+        out.close();
+        final DirtyWordMatcher matcher = (DirtyWordMatcher) new ObjectInputStream(new ByteArrayInputStream(
+                bos.toByteArray())).readObject();
+        final Set<String> found = new HashSet<String>();
+
+        assertEquals(4, matcher.size());
+        assertFalse(matcher.find("billions of march", found));
+        assertTrue(matcher.find("Bill and March Madness in system axa", found));
+        assertEquals(new HashSet<String>(Arrays.asList("bill",
+                "march madness",
+                "REGEX:sys\\w+",
+                "REGEX:(a)x\\1")), found);
+    }
+
+    private DirtyWordMatcher newMatcher(String... words) {
+        final Map<String, Pattern> map = new HashMap<String, Pattern>();
+
+        for (final String w: words) {
+            map.put(w, repHandler.getPatternFor(w));
+        }
+        return new DirtyWordMatcher(map);
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        final StringBuilder sb = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
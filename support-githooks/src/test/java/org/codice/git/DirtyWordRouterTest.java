@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class DirtyWordRouterTest {
+    // Configure the logging for this test
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    private final MockRepoHandler repHandler = new MockRepoHandler();
+
+    @Test
+    public void testGetMatcherPicksTheDeepestScope() throws Exception {
+        final Map<String, Map<String, Pattern>> scoped = new HashMap<String, Map<String, Pattern>>();
+
+        scoped.put(RepositoryHandler.GLOBAL_SCOPE, newWords("bill"));
+        scoped.put("vendor/", newWords("bill", "what"));
+        scoped.put("vendor/lib/", newWords());
+        final DirtyWordRouter router = new DirtyWordRouter(scoped);
+
+        assertFalse(router.isEmpty());
+        assertEquals(new HashSet<String>(Arrays.asList("", "vendor/", "vendor/lib/")), router.getScopes());
+        assertSame(router.getGlobalMatcher(), router.getMatcher("a.txt"));
+        assertSame(router.getGlobalMatcher(), router.getMatcher("src/vendor/a.txt"));
+        assertSame(router.getGlobalMatcher(), router.getMatcher("vendor")); // a file, not the directory
+        assertSame(router.getGlobalMatcher(), router.getMatcher(null));
+        assertEquals(2, router.getMatcher("vendor/a.txt")
+                .size());
+        assertEquals(2, router.getMatcher("vendor/other/lib/a.txt")
+                .size());
+        assertTrue(router.getMatcher("vendor/lib/a.txt")
+                .isEmpty());
+        assertTrue(router.getMatcher("vendor/lib/deeper/a.txt")
+                .isEmpty());
+    }
+
+    @Test
+    public void testWithRegexLimitsLeavesTheRouterUntouched() throws Exception {
+        final Map<String, Map<String, Pattern>> scoped = new HashMap<String, Map<String, Pattern>>();
+
+        scoped.put(RepositoryHandler.GLOBAL_SCOPE, newWords("bill"));
+        scoped.put("vendor/", newWords("REGEX:sys\\w+"));
+        final DirtyWordRouter router = new DirtyWordRouter(scoped);
+        final DirtyWordMatcher matcher = router.getMatcher("vendor/a.txt");
+        final DirtyWordRouter guarded = router.withRegexLimits(256, 1000);
+
+        assertSame(matcher, router.getMatcher("vendor/a.txt"));
+        assertNotSame(matcher, guarded.getMatcher("vendor/a.txt"));
+        assertEquals("vendor/", guarded.getScope("vendor/a.txt"));
+        assertEquals(router.getScopes(), guarded.getScopes());
+        assertTrue(guarded.getMatcher("vendor/a.txt")
+                .find("system", new HashSet<String>()));
+    }
+
+    @Test
+    public void testIsEmpty() throws Exception {
+        assertTrue(new DirtyWordRouter(Collections.<String, Map<String, Pattern>>emptyMap()).isEmpty());
+        assertFalse(new DirtyWordRouter(Collections.singletonMap("vendor/", newWords("bill"))).isEmpty());
+    }
+
+    @Test
+    public void testGetMatcherAfterSerialization() throws Exception {
+        final Map<String, Map<String, Pattern>> scoped = new HashMap<String, Map<String, Pattern>>();
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bos);
+
+        scoped.put(RepositoryHandler.GLOBAL_SCOPE, newWords("bill"));
+        scoped.put("vendor/", newWords("what"));
+        out.writeObject(new DirtyWordRouter(scoped));
+        out.close();
+        final DirtyWordRouter router = (DirtyWordRouter) new ObjectInputStream(new ByteArrayInputStream(
+                bos.toByteArray())).readObject();
+        final Set<String> found = new HashSet<String>();
+
+        assertTrue(router.getMatcher("vendor/a.txt")
+                .find("bill and what", found));
+        assertEquals(Collections.singleton("what"), found);
+    }
+
+    private Map<String, Pattern> newWords(String... words) {
+        final Map<String, Pattern> map = new HashMap<String, Pattern>();
+
+        for (final String w: words) {
+            map.put(w, repHandler.getPatternFor(w));
+        }
+        return map;
+    }
+}
@@ -14,12 +14,23 @@
 package org.codice.git;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
 import org.codice.git.hook.GitHooks;
@@ -186,6 +197,146 @@ public class GitHandlerTest extends RepositoryTestCase {
                         .keySet());
     }
 
+    @Test
+    public void testGetScopedDirtyWords() throws Exception {
+        final Set<String> expected = readDefaultBlacklist();
+
+        expected.add("a1");
+        GitIntegrationTest.writeToFile(gh.getBlacklistFile(),
+                "a1\n[vendor/**]\nb2\nc3\n[vendor/lib/]\nd4\n[src/*.js]\ne5\n[**]\nf6");
+        GitIntegrationTest.writeToFile(gh.getWhitelistFile(), "[vendor/lib]\nc3\na1");
+        expected.add("e5");
+        expected.add("f6");
+        final Map<String, Map<String, Pattern>> scoped = gh.getScopedDirtyWords();
+
+        assertEquals(new HashSet<String>(Arrays.asList("", "vendor/", "vendor/lib/")), scoped.keySet());
+        assertEquals(expected,
+                scoped.get(RepositoryHandler.GLOBAL_SCOPE)
+                        .keySet());
+        assertEquals(expected, gh.getDirtyWords()
+                .keySet());
+        expected.add("b2");
+        expected.add("c3");
+        assertEquals(expected,
+                scoped.get("vendor/")
+                        .keySet());
+        expected.add("d4");
+        expected.remove("c3");
+        expected.remove("a1");
+        assertEquals(expected,
+                scoped.get("vendor/lib/")
+                        .keySet());
+        final Set<String> found = new HashSet<String>();
+
+        assertTrue(gh.getDirtyWordRouter()
+                .getMatcher("vendor/lib/a.js")
+                .find("a1 b2 c3 d4 e5", found));
+        assertEquals(new HashSet<String>(Arrays.asList("b2", "d4", "e5")), found);
+    }
+
+    @Test
+    public void testGetScopedDirtyWordsWithUnsupportedSections() throws Exception {
+        final Set<String> expected = readDefaultBlacklist();
+
+        GitIntegrationTest.writeToFile(gh.getBlacklistFile(), "[vendor/**]\na1\n[**/gen/**]\nb2\nc3\n[src/*.js]\nd4");
+        GitIntegrationTest.writeToFile(gh.getWhitelistFile(), "[src/*.js]\nb2\n[vendor/]\nd4");
+        expected.add("b2");
+        expected.add("c3");
+        expected.add("d4");
+        final Map<String, Map<String, Pattern>> scoped = gh.getScopedDirtyWords();
+
+        assertEquals(new HashSet<String>(Arrays.asList("", "vendor/")), scoped.keySet());
+        assertEquals(expected,
+                scoped.get(RepositoryHandler.GLOBAL_SCOPE)
+                        .keySet());
+        expected.add("a1");
+        expected.remove("d4");
+        assertEquals(expected,
+                scoped.get("vendor/")
+                        .keySet());
+    }
+
+    @Test
+    public void testGetDirtyWordsWithBracketedEntries() throws Exception {
+        final Set<String> expected = readDefaultBlacklist();
+
+        expected.add("[REDACTED]");
+        expected.add("[SECRET]");
+        expected.add("a1");
+        GitIntegrationTest.writeToFile(gh.getBlacklistFile(), "[REDACTED]\n[SECRET]\na1\n[vendor/]\nb2");
+        assertEquals(expected,
+                gh.getDirtyWords()
+                        .keySet());
+        assertTrue(gh.getScopedDirtyWords()
+                .get("vendor/")
+                .keySet()
+                .containsAll(Arrays.asList("[REDACTED]", "[SECRET]", "a1", "b2")));
+    }
+
+    @Test
+    public void testIsSectionHeader() throws Exception {
+        assertTrue(RepositoryHandler.isSectionHeader("[vendor/**]"));
+        assertTrue(RepositoryHandler.isSectionHeader("[vendor/]"));
+        assertTrue(RepositoryHandler.isSectionHeader("[**]"));
+        assertTrue(RepositoryHandler.isSectionHeader("[src/*.js]"));
+        assertFalse(RepositoryHandler.isSectionHeader("[SECRET]"));
+        assertFalse(RepositoryHandler.isSectionHeader("[*.js]"));
+        assertFalse(RepositoryHandler.isSectionHeader("[]"));
+        assertFalse(RepositoryHandler.isSectionHeader("vendor/**"));
+    }
+
+    @Test
+    public void testParseScope() throws Exception {
+        assertEquals("vendor/", RepositoryHandler.parseScope("vendor/**"));
+        assertEquals("vendor/", RepositoryHandler.parseScope("/vendor"));
+        assertEquals("vendor/lib/", RepositoryHandler.parseScope(" vendor/lib/ "));
+        assertEquals(RepositoryHandler.GLOBAL_SCOPE, RepositoryHandler.parseScope("**"));
+        assertEquals(null, RepositoryHandler.parseScope("*.js"));
+        assertEquals(null, RepositoryHandler.parseScope("vendor/**/lib"));
+        assertEquals(null, RepositoryHandler.parseScope(""));
+    }
+
+    @Test
+    public void testGetDirtyWordMatcherIsCachedUntilBlacklistChanges() throws Exception {
+        final File cache = new File(gh.getCacheDir(), "dirty-words.ser");
+        final Set<String> found = new HashSet<String>();
+
+        GitIntegrationTest.writeToFile(gh.getBlacklistFile(), "a1\nb2");
+        assertFalse(cache.exists());
+        assertTrue(gh.getDirtyWordMatcher()
+                .find("a1 b2 c3", found));
+        assertTrue(cache.exists());
+        final String hash = gh.getDirtyWordsHash();
+        final GitHandler other = new GitHandler(sourceFile, gh.getBasedir());
+
+        assertEquals(hash, other.getDirtyWordsHash());
+        assertEquals(gh.getDirtyWordMatcher()
+                .size(),
+                other.getDirtyWordMatcher()
+                        .size());
+        GitIntegrationTest.writeToFile(gh.getWhitelistFile(), "b2");
+        assertNotEquals(hash, other.getDirtyWordsHash());
+        found.clear();
+        assertTrue(other.getDirtyWordMatcher()
+                .find("a1 b2 c3", found));
+        assertEquals(new HashSet<String>(Arrays.asList("a1")), found);
+    }
+
+    @Test
+    public void testGetDirtyWordMatcherIsNotCachedInNativeImage() throws Exception {
+        final File cache = new File(gh.getCacheDir(), "dirty-words.ser");
+
+        GitIntegrationTest.writeToFile(gh.getBlacklistFile(), "a1\nb2");
+        System.setProperty("org.graalvm.nativeimage.imagecode", "runtime");
+        try {
+            assertTrue(gh.getDirtyWordMatcher()
+                    .find("a1 b2 c3", new HashSet<String>()));
+        } finally {
+            System.clearProperty("org.graalvm.nativeimage.imagecode");
+        }
+        assertFalse(cache.exists());
+    }
+
     @Test
     public void testGetFileAsString() throws Exception {
         File test = new File(TEST_FILE_RELPATH);
@@ -202,6 +353,643 @@ public class GitHandlerTest extends RepositoryTestCase {
         assert (contents.equals(TEST_FILE_DATA));
     }
 
+    @Test
+    public void testStreamDiff() throws Exception {
+        GitIntegrationTest.writeToFile(sourceFile, "Hello World.\nHello Bill.\n");
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "NewFile.txt"), "Line1\nLine2\n");
+        source.add()
+                .addFilepattern("SomeFile.txt")
+                .addFilepattern("NewFile.txt")
+                .call();
+        final StringBuilder sb = new StringBuilder();
+
+        gh.streamDiff(new DiffListener() {
+            @Override
+            public void startFile(String path) {
+                sb.append("start ")
+                        .append(path)
+                        .append('\n');
+            }
+
+            @Override
+            public void addedLines(String path, CharSequence lines) {
+                sb.append(lines);
+            }
+
+            @Override
+            public void endFile(String path) {
+                sb.append("end\n");
+            }
+        });
+        assertEquals("start NewFile.txt\nLine1\nLine2\nend\nstart SomeFile.txt\nHello Bill.\nend\n",
+                sb.toString());
+    }
+
+    @Test
+    public void testStreamDiffSkipsContent() throws Exception {
+        GitIntegrationTest.writeToFile(sourceFile, "Hello World.\nHello Bill.\n");
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "NewFile.txt"), "Line1\nLine2\n");
+        source.add()
+                .addFilepattern("SomeFile.txt")
+                .addFilepattern("NewFile.txt")
+                .call();
+        final StringBuilder sb = new StringBuilder();
+
+        gh.streamDiff(new DiffListener() {
+            @Override
+            public void startFile(String path) {
+                sb.append("start ")
+                        .append(path)
+                        .append('\n');
+            }
+
+            @Override
+            public boolean skipContent(String path, String oldId, String newId) {
+                sb.append((oldId == null) ? "added" : "modified")
+                        .append('\n');
+                return oldId != null;
+            }
+
+            @Override
+            public void addedLines(String path, CharSequence lines) {
+                sb.append(lines);
+            }
+
+            @Override
+            public void endFile(String path) {
+                sb.append("end\n");
+            }
+        });
+        assertEquals("start NewFile.txt\nadded\nLine1\nLine2\nend\nstart SomeFile.txt\nmodified\nend\n",
+                sb.toString());
+    }
+
+    @Test
+    public void testStreamDiffWithScanFilter() throws Exception {
+        GitIntegrationTest.writeToFile(new File(gh.getBasedir(), ScanFilter.EXCLUDES_FILE),
+                "# comment\n*.log\ngenerated/\n");
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "a.log"), "Line1\n");
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "generated/b.txt"), "Line2\n");
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "c.txt"), "Line3 is too long\n");
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "d.bin"), "Line4\u0000\n");
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "e.txt"), "Line5\n");
+        source.add()
+                .addFilepattern("a.log")
+                .addFilepattern("generated")
+                .addFilepattern("c.txt")
+                .addFilepattern("d.bin")
+                .addFilepattern("e.txt")
+                .call();
+        final StringBuilder sb = new StringBuilder();
+
+        System.setProperty("githooks." + ScanFilter.MAX_SIZE_SETTING, "10");
+        System.setProperty("githooks." + ScanFilter.SKIP_BINARY_SETTING, "true");
+        try {
+            gh.streamDiff(new DiffListener() {
+                @Override
+                public void startFile(String path) {
+                    sb.append("start ")
+                            .append(path)
+                            .append('\n');
+                }
+
+                @Override
+                public void addedLines(String path, CharSequence lines) {
+                    sb.append(lines);
+                }
+
+                @Override
+                public void endFile(String path) {
+                    sb.append("end\n");
+                }
+            });
+        } finally {
+            System.clearProperty("githooks." + ScanFilter.MAX_SIZE_SETTING);
+            System.clearProperty("githooks." + ScanFilter.SKIP_BINARY_SETTING);
+        }
+        assertEquals("start a.log\nend\nstart c.txt\nend\nstart d.bin\nend\nstart generated/b.txt\nend\n"
+                + "start e.txt\nLine5\nend\n", sb.toString());
+    }
+
+    @Test
+    public void testStreamDiffWithLineNumbers() throws Exception {
+        GitIntegrationTest.writeToFile(sourceFile, "Hello Bob.\nHello World.\nHello Bill.\n");
+        source.add()
+                .addFilepattern("SomeFile.txt")
+                .call();
+        final StringBuilder sb = new StringBuilder();
+
+        gh.streamDiff(new DiffListener() {
+            @Override
+            public void startFile(String path) {
+            }
+
+            @Override
+            public void addedLines(String path, CharSequence lines) {
+                fail("line numbers should have been provided");
+            }
+
+            @Override
+            public void addedLines(String path, byte[] raw, int start, int end, int[] lineNumbers) {
+                sb.append(Arrays.toString(lineNumbers))
+                        .append(' ')
+                        .append(new String(raw, start, end - start, Charsets.UTF_8));
+            }
+
+            @Override
+            public void endFile(String path) {
+            }
+        });
+        assertEquals("[1, 3] Hello Bob.\nHello Bill.\n", sb.toString());
+    }
+
+    @Test
+    public void testStreamDiffWithRenameDetection() throws Exception {
+        final StringBuilder content = new StringBuilder();
+
+        for (int i = 0; i < 50; i++) {
+            content.append("Line")
+                    .append(i)
+                    .append('\n');
+        }
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "Old.txt"), content.toString());
+        source.add()
+                .addFilepattern("Old.txt")
+                .call();
+        source.commit()
+                .setMessage("Adding a file to rename.")
+                .call();
+        source.rm()
+                .addFilepattern("Old.txt")
+                .call();
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "New.txt"), content + "Hello Bill.\n");
+        source.add()
+                .addFilepattern("New.txt")
+                .call();
+        final StringBuilder sb = new StringBuilder();
+        final DiffListener listener = new DiffListener() {
+            @Override
+            public void startFile(String path) {
+                sb.append("start ")
+                        .append(path)
+                        .append('\n');
+            }
+
+            @Override
+            public void addedLines(String path, CharSequence lines) {
+                sb.append(lines);
+            }
+
+            @Override
+            public void endFile(String path) {
+                sb.append("end\n");
+            }
+        };
+
+        gh.streamDiff(listener);
+        assertEquals("start New.txt\n" + content + "Hello Bill.\nend\n", sb.toString());
+        sb.setLength(0);
+        System.setProperty("githooks." + GitHandler.DETECT_RENAMES_SETTING, "true");
+        System.setProperty("githooks." + GitHandler.RENAME_SCORE_SETTING, "90");
+        try {
+            gh.streamDiff(listener);
+        } finally {
+            System.clearProperty("githooks." + GitHandler.DETECT_RENAMES_SETTING);
+            System.clearProperty("githooks." + GitHandler.RENAME_SCORE_SETTING);
+        }
+        assertEquals("start New.txt\nHello Bill.\nend\n", sb.toString());
+    }
+
+    @Test
+    public void testStreamDiffWithMultipleThreads() throws Exception {
+        final Map<String, String> expected = new TreeMap<String, String>();
+
+        for (int i = 0; i < 20; i++) {
+            final String name = "File" + i + ".txt";
+
+            expected.put(name, "Line" + i + '\n');
+            GitIntegrationTest.writeToFile(new File(db.getWorkTree(), name), "Line" + i + '\n');
+            source.add()
+                    .addFilepattern(name)
+                    .call();
+        }
+        final Map<String, String> found = new ConcurrentHashMap<String, String>();
+
+        gh.streamDiff(new DiffListener() {
+            @Override
+            public void startFile(String path) {
+                found.put(path, "");
+            }
+
+            @Override
+            public void addedLines(String path, CharSequence lines) {
+                found.put(path, found.get(path) + lines);
+            }
+
+            @Override
+            public void endFile(String path) {
+            }
+        }, 4);
+        assertEquals(expected, new TreeMap<String, String>(found));
+    }
+
+    @Test
+    public void testStreamDiffWithNothingStaged() throws Exception {
+        GitIntegrationTest.writeToFile(sourceFile, "Hello World.\nHello Bill.\n"); // not staged
+        final StringBuilder sb = new StringBuilder();
+
+        gh.streamDiff(new DiffListener() {
+            @Override
+            public void startFile(String path) {
+                sb.append(path);
+            }
+
+            @Override
+            public void addedLines(String path, CharSequence lines) {
+                sb.append(lines);
+            }
+
+            @Override
+            public void endFile(String path) {
+            }
+        });
+        assertEquals("", sb.toString());
+    }
+
+    @Test
+    public void testStreamDiffInNestedDirectories() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "dir" + i + "/sub/File.txt"),
+                    "Line" + i + '\n');
+        }
+        source.add()
+                .addFilepattern(".")
+                .call();
+        source.commit()
+                .setMessage("Nested")
+                .call();
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "dir3/sub/File.txt"), "Line3\nBill\n");
+        source.add()
+                .addFilepattern("dir3/sub/File.txt")
+                .call();
+        final StringBuilder sb = new StringBuilder();
+
+        gh.streamDiff(new DiffListener() {
+            @Override
+            public void startFile(String path) {
+                sb.append("start ")
+                        .append(path)
+                        .append('\n');
+            }
+
+            @Override
+            public void addedLines(String path, CharSequence lines) {
+                sb.append(lines);
+            }
+
+            @Override
+            public void endFile(String path) {
+                sb.append("end\n");
+            }
+        });
+        assertEquals("start dir3/sub/File.txt\nBill\nend\n", sb.toString());
+    }
+
+    @Test
+    public void testStreamCommits() throws Exception {
+        GitIntegrationTest.writeToFile(sourceFile, "Hello World.\nHello Bill.\n");
+        source.add()
+                .addFilepattern("SomeFile.txt")
+                .call();
+        final String first = source.commit()
+                .setMessage("Second commit")
+                .call()
+                .name();
+
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "New.txt"), "Hello Ray.\n");
+        source.add()
+                .addFilepattern("New.txt")
+                .call();
+        final String second = source.commit()
+                .setMessage("Third commit")
+                .call()
+                .name();
+        final Map<String, String> found = new ConcurrentHashMap<String, String>();
+
+        gh.streamCommits("HEAD~2..HEAD", new CommitListener() {
+            @Override
+            public DiffListener startCommit(final String id, String message) {
+                found.put(id, message);
+                return new DiffListener() {
+                    @Override
+                    public void startFile(String path) {
+                        found.put(id, found.get(id) + "start " + path + '\n');
+                    }
+
+                    @Override
+                    public void addedLines(String path, CharSequence lines) {
+                        found.put(id, found.get(id) + lines);
+                    }
+
+                    @Override
+                    public void endFile(String path) {
+                        found.put(id, found.get(id) + "end\n");
+                    }
+                };
+            }
+
+            @Override
+            public void endCommit(String id) {
+                found.put(id, found.get(id) + "done");
+            }
+        }, 2);
+        final Map<String, String> expected = new TreeMap<String, String>();
+
+        expected.put(first, "Second commitstart SomeFile.txt\nHello Bill.\nend\ndone");
+        expected.put(second, "Third commitstart New.txt\nHello Ray.\nend\ndone");
+        assertEquals(expected, new TreeMap<String, String>(found));
+    }
+
+    @Test
+    public void testStreamCommitsDiffsMergesAgainstTheirFirstParent() throws Exception {
+        final String merge = createMergeCommit();
+        final Map<String, String> found = streamCommits("HEAD~1..HEAD");
+
+        assertEquals("Merge commitstart Side.txt\nHello Ray.\nend\nstart SomeFile.txt\nHello Bill.\nend\ndone",
+                found.get(merge));
+        assertEquals(2, found.size());
+    }
+
+    @Test
+    public void testStreamCommitsWithoutScanningMerges() throws Exception {
+        final String merge = createMergeCommit();
+
+        System.setProperty("githooks." + GitHandler.SCAN_MERGES_SETTING, "false");
+        try {
+            assertEquals("Merge commitdone",
+                    streamCommits("HEAD~1..HEAD").get(merge));
+        } finally {
+            System.clearProperty("githooks." + GitHandler.SCAN_MERGES_SETTING);
+        }
+    }
+
+    @Test
+    public void testStreamCommitsFromRoot() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+
+        gh.streamCommits("HEAD", new CommitListener() {
+            @Override
+            public DiffListener startCommit(String id, String message) {
+                sb.append(message);
+                return new DiffListener() {
+                    @Override
+                    public void startFile(String path) {
+                        sb.append(path)
+                                .append(':');
+                    }
+
+                    @Override
+                    public void addedLines(String path, CharSequence lines) {
+                        sb.append(lines);
+                    }
+
+                    @Override
+                    public void endFile(String path) {
+                    }
+                };
+            }
+
+            @Override
+            public void endCommit(String id) {
+            }
+        }, 1);
+        assertEquals("Initial commit for source.SomeFile.txt:Hello World.\n", sb.toString());
+    }
+
+    @Test
+    public void testStreamCommitsWithEmptyRange() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+
+        gh.streamCommits("HEAD..HEAD", new CommitListener() {
+            @Override
+            public DiffListener startCommit(String id, String message) {
+                sb.append(id);
+                return null;
+            }
+
+            @Override
+            public void endCommit(String id) {
+            }
+        }, 4);
+        assertEquals("", sb.toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void testStreamCommitsWithUnknownRevision() throws Exception {
+        gh.streamCommits("origin/missing..HEAD", new CommitListener() {
+            @Override
+            public DiffListener startCommit(String id, String message) {
+                return null;
+            }
+
+            @Override
+            public void endCommit(String id) {
+            }
+        }, 1);
+    }
+
+    @Test
+    public void testStreamBlobs() throws Exception {
+        final String initial = db.resolve("HEAD")
+                .name();
+
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "dir/Copy.txt"), "Hello World.\n");
+        GitIntegrationTest.writeToFile(sourceFile, "Hello World.\nHello Bill.\n");
+        source.add()
+                .addFilepattern("dir/Copy.txt")
+                .addFilepattern("SomeFile.txt")
+                .call();
+        final String second = source.commit()
+                .setMessage("Second commit")
+                .call()
+                .name();
+        final Map<String, String> found = new ConcurrentHashMap<String, String>();
+
+        gh.streamBlobs(Collections.<String>emptyList(), new AuditListener() {
+            @Override
+            public void path(String commit, String path) {
+                assertTrue(path, found.put("path " + path, commit) == null);
+            }
+
+            @Override
+            public void content(String commit, String path, byte[] raw, int start, int end) {
+                final String content = new String(raw, start, end - start, Charsets.UTF_8);
+
+                assertTrue(content, found.put(content, commit + ' ' + path) == null);
+            }
+        }, 2);
+        final Map<String, String> expected = new TreeMap<String, String>();
+
+        expected.put("path SomeFile.txt", initial);
+        expected.put("path dir", second);
+        expected.put("path dir/Copy.txt", second);
+        expected.put("Hello World.\n", initial + " SomeFile.txt");
+        expected.put("Hello World.\nHello Bill.\n", second + " SomeFile.txt");
+        assertEquals(expected, new TreeMap<String, String>(found));
+    }
+
+    @Test
+    public void testStreamBlobsReportsCopiesOfExcludedContent() throws Exception {
+        GitIntegrationTest.writeToFile(new File(gh.getBasedir(), ScanFilter.EXCLUDES_FILE), "*.log\n");
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "a/Bill.log"), "Hello Bill.\n");
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "b/Bill.txt"), "Hello Bill.\n");
+        source.add()
+                .addFilepattern("a/Bill.log")
+                .addFilepattern("b/Bill.txt")
+                .call();
+        source.commit()
+                .setMessage("Second commit")
+                .call();
+        final Map<String, String> found = new ConcurrentHashMap<String, String>();
+
+        gh.streamBlobs(Collections.<String>emptyList(), new AuditListener() {
+            @Override
+            public void path(String commit, String path) {
+            }
+
+            @Override
+            public void content(String commit, String path, byte[] raw, int start, int end) {
+                found.put(path, new String(raw, start, end - start, Charsets.UTF_8));
+            }
+        }, 1);
+        assertFalse(found.containsKey("a/Bill.log"));
+        assertEquals("Hello Bill.\n", found.get("b/Bill.txt"));
+    }
+
+    @Test
+    public void testStreamBlobsReportsContentOncePerScope() throws Exception {
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "vendor/Copy.txt"), "Hello World.\n");
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "dir/Copy.txt"), "Hello World.\n");
+        source.add()
+                .addFilepattern("vendor/Copy.txt")
+                .addFilepattern("dir/Copy.txt")
+                .call();
+        source.commit()
+                .setMessage("Second commit")
+                .call();
+        final Set<String> found = Collections.synchronizedSet(new TreeSet<String>());
+
+        gh.streamBlobs(Collections.<String>emptyList(), new AuditListener() {
+            @Override
+            public void path(String commit, String path) {
+            }
+
+            @Override
+            public String scope(String path) {
+                return path.startsWith("vendor/") ? "vendor/" : RepositoryHandler.GLOBAL_SCOPE;
+            }
+
+            @Override
+            public void content(String commit, String path, byte[] raw, int start, int end) {
+                assertTrue(path, found.add(path));
+            }
+        }, 2);
+        assertEquals(new TreeSet<String>(Arrays.asList("SomeFile.txt", "vendor/Copy.txt")), found);
+    }
+
+    @Test
+    public void testStreamBlobsWithRange() throws Exception {
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "dir/Copy.txt"), "Hello World.\n");
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "New.txt"), "Hello Bill.\n");
+        source.add()
+                .addFilepattern("dir/Copy.txt")
+                .addFilepattern("New.txt")
+                .call();
+        source.commit()
+                .setMessage("Second commit")
+                .call();
+        final StringBuffer sb = new StringBuffer();
+
+        gh.streamBlobs(Arrays.asList("HEAD~1..HEAD"), new AuditListener() {
+            @Override
+            public void path(String commit, String path) {
+                sb.append(path)
+                        .append(':');
+            }
+
+            @Override
+            public void content(String commit, String path, byte[] raw, int start, int end) {
+                sb.append(new String(raw, start, end - start, Charsets.UTF_8));
+            }
+        }, 1);
+        // the content of dir/Copy.txt was already in HEAD~1
+        assertEquals("New.txt:SomeFile.txt:dir:Hello Bill.\ndir/Copy.txt:", sb.toString());
+    }
+
+    @Test
+    public void testStreamWorkTree() throws Exception {
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "ignored/Tracked.txt"), "Tracked Bill\n");
+        source.add()
+                .addFilepattern("ignored/Tracked.txt")
+                .call();
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), ".gitignore"), "/ignored/\n*.log\n");
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "ignored/Bill.txt"), "Bill\n");
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "dir/Bill.log"), "Bill\n");
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "dir/Untracked.txt"), "Hello Bill.\n");
+        final Map<String, String> found = new ConcurrentHashMap<String, String>();
+
+        gh.streamWorkTree(new AuditListener() {
+            @Override
+            public void path(String commit, String path) {
+                found.put(path, "");
+            }
+
+            @Override
+            public void content(String commit, String path, byte[] raw, int start, int end) {
+                found.put(path, found.get(path) + new String(raw, start, end - start, Charsets.UTF_8));
+            }
+        }, 4);
+        assertEquals("Hello World.\n", found.get("SomeFile.txt"));
+        assertEquals("Hello Bill.\n", found.get("dir/Untracked.txt"));
+        assertTrue(found.containsKey(".gitignore"));
+        assertTrue(found.containsKey("dir"));
+        // tracked files are audited even when ignored
+        assertEquals("Tracked Bill\n", found.get("ignored/Tracked.txt"));
+        assertFalse(found.containsKey("ignored/Bill.txt"));
+        assertFalse(found.containsKey("dir/Bill.log"));
+    }
+
+    @Test
+    public void testStreamWorkTreeInChunks() throws Exception {
+        final StringBuilder content = new StringBuilder();
+
+        for (int i = 0; content.length() < 9 * 1024 * 1024; i++) {
+            content.append("Line ")
+                    .append(i)
+                    .append('\n');
+        }
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "Big.txt"), content.toString());
+        final StringBuilder sb = new StringBuilder();
+        final StringBuilder chunks = new StringBuilder();
+
+        gh.streamWorkTree(new AuditListener() {
+            @Override
+            public void path(String commit, String path) {
+            }
+
+            @Override
+            public synchronized void content(String commit, String path, byte[] raw, int start, int end) {
+                if ("Big.txt".equals(path)) {
+                    sb.append(new String(raw, start, end - start, Charsets.UTF_8));
+                    chunks.append((char) raw[end - 1]);
+                }
+            }
+        }, 1);
+        assertEquals(content.toString(), sb.toString());
+        // mapped in windows ending on line boundaries
+        assertEquals("\n\n\n", chunks.toString());
+    }
+
     @Test
     public void testGetPatternForLiteral() throws Exception {
         assertEquals("(?:\\b|_)\\Qabc\\E(?:\\b|_)",
@@ -215,4 +1003,80 @@ public class GitHandlerTest extends RepositoryTestCase {
                 gh.getPatternFor("REGEX:abc")
                         .pattern());
     }
+
+    /**
+     * Creates a merge commit of a side branch which also adds a line of its own to the source file.
+     *
+     * @return the id of the merge commit
+     */
+    private String createMergeCommit() throws Exception {
+        source.branchCreate()
+                .setName("side")
+                .call();
+        source.checkout()
+                .setName("side")
+                .call();
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "Side.txt"), "Hello Ray.\n");
+        source.add()
+                .addFilepattern("Side.txt")
+                .call();
+        source.commit()
+                .setMessage("Side commit")
+                .call();
+        source.checkout()
+                .setName("master")
+                .call();
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "Main.txt"), "Hello Main.\n");
+        source.add()
+                .addFilepattern("Main.txt")
+                .call();
+        source.commit()
+                .setMessage("Main commit")
+                .call();
+        source.merge()
+                .include(db.resolve("side"))
+                .setCommit(false)
+                .call();
+        GitIntegrationTest.writeToFile(sourceFile, "Hello World.\nHello Bill.\n");
+        source.add()
+                .addFilepattern("SomeFile.txt")
+                .call();
+        return source.commit()
+                .setMessage("Merge commit")
+                .call()
+                .name();
+    }
+
+    private Map<String, String> streamCommits(String range) throws Exception {
+        final Map<String, String> found = new ConcurrentHashMap<String, String>();
+
+        gh.streamCommits(range, new CommitListener() {
+            @Override
+            public DiffListener startCommit(final String id, String message) {
+                found.put(id, message);
+                return new DiffListener() {
+                    @Override
+                    public void startFile(String path) {
+                        found.put(id, found.get(id) + "start " + path + '\n');
+                    }
+
+                    @Override
+                    public void addedLines(String path, CharSequence lines) {
+                        found.put(id, found.get(id) + lines);
+                    }
+
+                    @Override
+                    public void endFile(String path) {
+                        found.put(id, found.get(id) + "end\n");
+                    }
+                };
+            }
+
+            @Override
+            public void endCommit(String id) {
+                found.put(id, found.get(id) + "done");
+            }
+        }, 1);
+        return found;
+    }
 }
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedLinesTest {
+    // Configure the logging for this test
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        this.file = File.createTempFile("githook_test_", ".txt");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(file);
+    }
+
+    @Test
+    public void testChunksEndOnLineBoundaries() throws Exception {
+        FileUtils.writeStringToFile(file, "one\ntwo\nthree\nfours", StandardCharsets.US_ASCII);
+        final MappedLines lines = new MappedLines(file, 10);
+
+        try {
+            assertEquals("one\ntwo\n", MappedLinesTest.toString(lines.next()));
+            assertEquals("three\n", MappedLinesTest.toString(lines.next()));
+            assertEquals("fours", MappedLinesTest.toString(lines.next()));
+            assertNull(lines.next());
+        } finally {
+            lines.close();
+        }
+    }
+
+    @Test
+    public void testLinesLargerThanTheWindowAreCut() throws Exception {
+        FileUtils.writeStringToFile(file, "abcdefgh\nij\n", StandardCharsets.US_ASCII);
+        final MappedLines lines = new MappedLines(file, 5);
+
+        try {
+            assertEquals("abcde", MappedLinesTest.toString(lines.next()));
+            assertEquals("fgh\n", MappedLinesTest.toString(lines.next()));
+            assertEquals("ij\n", MappedLinesTest.toString(lines.next()));
+            assertNull(lines.next());
+        } finally {
+            lines.close();
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        final MappedLines lines = new MappedLines(file, 5);
+
+        try {
+            assertNull(lines.next());
+        } finally {
+            lines.close();
+        }
+    }
+
+    private static String toString(ByteBuffer buf) {
+        final byte[] raw = new byte[buf.remaining()];
+
+        buf.get(raw);
+        return new String(raw, StandardCharsets.US_ASCII);
+    }
+}
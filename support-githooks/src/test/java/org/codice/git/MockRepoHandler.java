@@ -26,6 +26,8 @@ public class MockRepoHandler extends RepositoryHandler {
 
     private Map<String, Pattern> dirtyWords;
 
+    private Map<String, Map<String, Pattern>> scopedWords = new HashMap<String, Map<String, Pattern>>();
+
     private String commitFilename;
 
     private String diffString;
@@ -58,17 +60,30 @@ public class MockRepoHandler extends RepositoryHandler {
     }
 
     @Override
-    public Map<String, Pattern> getDirtyWords() throws IOException {
-        return dirtyWords;
+    public Map<String, Map<String, Pattern>> getScopedDirtyWords() throws IOException {
+        final Map<String, Map<String, Pattern>> words = new HashMap<String, Map<String, Pattern>>(scopedWords);
+
+        words.put(RepositoryHandler.GLOBAL_SCOPE, dirtyWords);
+        return words;
     }
 
     public void setDirtyWords(String words) {
-        this.dirtyWords = new HashMap<String, Pattern>();
+        this.dirtyWords = toPatterns(words);
+    }
+
+    public void setScopedDirtyWords(String scope, String words) {
+        scopedWords.put(scope, toPatterns(words));
+    }
+
+    private Map<String, Pattern> toPatterns(String words) {
+        final Map<String, Pattern> patterns = new HashMap<String, Pattern>();
+
         if (StringUtils.isNotEmpty(words)) {
             for (final String w: words.split(",")) {
-                dirtyWords.put(w, getPatternFor(w));
+                patterns.put(w, getPatternFor(w));
             }
         }
+        return patterns;
     }
 
     @Override
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class ScanFilterTest {
+    // Configure the logging for this test
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    private final ScanFilter filter = new ScanFilter(Arrays.asList("*.jar",
+            "target/",
+            "/docs/**/*.pdf",
+            "src/main/resources/big"), 0L, false, 1);
+
+    @Test
+    public void testNamePatternsMatchAtAnyDepth() throws Exception {
+        assertTrue(filter.isExcluded("lib.jar"));
+        assertTrue(filter.isExcluded("a/b/lib.jar"));
+        assertFalse(filter.isExcluded("a/b/lib.jar.txt"));
+    }
+
+    @Test
+    public void testExcludedDirectoriesExcludeTheirContent() throws Exception {
+        assertTrue(filter.isExcluded("target/classes/A.class"));
+        assertTrue(filter.isExcluded("module/target/A.txt"));
+        assertTrue(filter.isExcluded("src/main/resources/big/data.txt"));
+        assertFalse(filter.isExcluded("src/main/resources/bigger.txt"));
+        assertFalse(filter.isExcluded("targets/A.txt"));
+    }
+
+    @Test
+    public void testPathPatternsMatchFromTheRoot() throws Exception {
+        assertTrue(filter.isExcluded("docs/a/b/guide.pdf"));
+        assertFalse(filter.isExcluded("other/docs/a/guide.pdf"));
+        assertFalse(filter.isExcluded("src/main/resources/data/big"));
+    }
+
+    @Test
+    public void testExcludedFiles() throws Exception {
+        final ScanFilter f = new ScanFilter(Arrays.asList("*.jar"), 10L, true, 1);
+        final File dir = File.createTempFile("githook_test_", "_tmp");
+
+        try {
+            FileUtils.forceDelete(dir);
+            FileUtils.writeStringToFile(new File(dir, "a.txt"), "Hello\n", Charsets.UTF_8);
+            FileUtils.writeStringToFile(new File(dir, "big.txt"), "Hello World\n", Charsets.UTF_8);
+            FileUtils.writeByteArrayToFile(new File(dir, "binary.dat"), new byte[] {'a', 0, 'b'});
+            assertFalse(f.isExcluded("a.txt", new File(dir, "a.txt")));
+            assertTrue(f.isExcluded("lib.jar", new File(dir, "a.txt")));
+            assertTrue(f.isExcluded("big.txt", new File(dir, "big.txt")));
+            assertTrue(f.isExcluded("binary.dat", new File(dir, "binary.dat")));
+            assertTrue(f.getSkipped()
+                    .isEmpty());
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+}
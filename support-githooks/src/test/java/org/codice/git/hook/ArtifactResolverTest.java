@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.codice.git.ConfigureLogging;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class ArtifactResolverTest {
+    // Configure the logging for this test
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    private File rootdir;
+
+    private File settings;
+
+    @Before
+    public void setUp() throws Exception {
+        this.rootdir = File.createTempFile("githook_test_", "_tmp");
+        if (!rootdir.delete() || !rootdir.mkdir()) {
+            throw new IOException("Cannot create " + rootdir);
+        }
+        this.settings = ArtifactResolverTest.createRepository(rootdir, "Bill\n");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(rootdir);
+    }
+
+    @Test
+    public void testResolve() throws Exception {
+        final File file = new ArtifactResolver(settings.getAbsolutePath()).resolve(
+                "com.example:blacklist-words:1.0:txt");
+
+        assertTrue(file.getPath(), file.getPath()
+                .startsWith(new File(rootdir, "local").getPath()));
+        assertEquals("Bill\n", FileUtils.readFileToString(file, Charsets.UTF_8));
+    }
+
+    @Test
+    public void testResolveRelease() throws Exception {
+        final File file = new ArtifactResolver(settings.getAbsolutePath()).resolve(
+                "com.example:blacklist-words:RELEASE:txt");
+
+        assertEquals("blacklist-words-1.0.txt", file.getName());
+    }
+
+    @Test
+    public void testResolveReleaseWithUnreachableRepository() throws Exception {
+        // nothing listens on port 1 such that the first repository always fails
+        FileUtils.writeStringToFile(settings,
+                "<settings><localRepository>" + new File(rootdir, "local").getAbsolutePath()
+                        + "</localRepository><profiles><profile><id>test</id><repositories>"
+                        + "<repository><id>down</id><url>http://127.0.0.1:1/repo</url></repository>"
+                        + "<repository><id>test</id><url>" + new File(rootdir, "remote").toURI() + "</url>"
+                        + "</repository></repositories></profile></profiles>"
+                        + "<activeProfiles><activeProfile>test</activeProfile></activeProfiles></settings>",
+                Charsets.UTF_8);
+        final File file = new ArtifactResolver(settings.getAbsolutePath()).resolve(
+                "com.example:blacklist-words:RELEASE:txt");
+
+        assertEquals("blacklist-words-1.0.txt", file.getName());
+    }
+
+    @Test
+    public void testResolveChecksum() throws Exception {
+        assertEquals(ArtifactResolverTest.sha1("Bill\n"),
+                new ArtifactResolver(settings.getAbsolutePath()).resolveChecksum(
+                        "com.example:blacklist-words:RELEASE:txt"));
+    }
+
+    @Test
+    public void testResolveSnapshot() throws Exception {
+        final File adir = new File(rootdir, "remote/com/example/blacklist-words/2.0-SNAPSHOT");
+
+        FileUtils.writeStringToFile(new File(adir, "blacklist-words-2.0-20261017.101500-3.txt"),
+                "Snapshot\n",
+                Charsets.UTF_8);
+        FileUtils.writeStringToFile(new File(adir, "maven-metadata.xml"),
+                "<metadata><versioning><snapshot><timestamp>20261017.101500</timestamp>"
+                        + "<buildNumber>3</buildNumber></snapshot></versioning></metadata>",
+                Charsets.UTF_8);
+        // central, mirrored by the default settings, has no snapshots
+        writeProfileSettings("");
+        final File file = new ArtifactResolver(settings.getAbsolutePath()).resolve(
+                "com.example:blacklist-words:2.0-SNAPSHOT:txt");
+
+        assertEquals("blacklist-words-2.0-SNAPSHOT.txt", file.getName());
+        assertEquals("Snapshot\n", FileUtils.readFileToString(file, Charsets.UTF_8));
+    }
+
+    @Test(expected = IOException.class)
+    public void testResolveWithChecksumMismatchWhenPolicyIsFail() throws Exception {
+        FileUtils.writeStringToFile(new File(rootdir,
+                "remote/com/example/blacklist-words/1.0/blacklist-words-1.0.txt.sha1"), sha1("Old\n"), Charsets.UTF_8);
+        writeProfileSettings("<releases><checksumPolicy>fail</checksumPolicy></releases>");
+
+        new ArtifactResolver(settings.getAbsolutePath()).resolve("com.example:blacklist-words:1.0:txt");
+    }
+
+    @Test
+    public void testResolveOverHttpWithCredentials() throws Exception {
+        final File remote = new File(rootdir, "remote");
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        final String auth = "Basic " + BaseEncoding.base64()
+                .encode("bob:secret".getBytes(Charsets.UTF_8));
+
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final String path = exchange.getRequestURI()
+                        .getPath();
+                final File file = new File(remote, StringUtils.removeStart(path, "/repo/"));
+
+                if (!auth.equals(exchange.getRequestHeaders()
+                        .getFirst("Authorization"))) {
+                    exchange.sendResponseHeaders(401, -1);
+                } else if (path.startsWith("/old/")) { // moved repository
+                    exchange.getResponseHeaders()
+                            .add("Location", "/repo/" + StringUtils.removeStart(path, "/old/"));
+                    exchange.sendResponseHeaders(301, -1);
+                } else if (!file.isFile()) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    final byte[] content = FileUtils.readFileToByteArray(file);
+
+                    exchange.sendResponseHeaders(200, content.length);
+                    exchange.getResponseBody()
+                            .write(content);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            FileUtils.writeStringToFile(settings,
+                    "<settings><localRepository>" + new File(rootdir, "local").getAbsolutePath()
+                            + "</localRepository><mirrors><mirror><id>http</id><mirrorOf>*</mirrorOf>"
+                            + "<url>http://localhost:" + server.getAddress()
+                            .getPort() + "/old</url></mirror></mirrors><servers><server><id>http</id>"
+                            + "<username>bob</username><password>secret</password></server></servers>"
+                            + "</settings>",
+                    Charsets.UTF_8);
+            final ArtifactResolver resolver = new ArtifactResolver(settings.getAbsolutePath());
+
+            assertEquals("Bill\n",
+                    FileUtils.readFileToString(resolver.resolve("com.example:blacklist-words:RELEASE:txt"),
+                            Charsets.UTF_8));
+            assertEquals(ArtifactResolverTest.sha1("Bill\n"),
+                    resolver.resolveChecksum("com.example:blacklist-words:1.0:txt"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testResolveMissingArtifact() throws Exception {
+        new ArtifactResolver(settings.getAbsolutePath()).resolve("com.example:missing:1.0:txt");
+    }
+
+    @Test(expected = IOException.class)
+    public void testResolveInvalidCoordinates() throws Exception {
+        new ArtifactResolver(settings.getAbsolutePath()).resolve("com.example:blacklist-words");
+    }
+
+    /**
+     * Creates a file based remote repository containing version 1.0 of
+     * <code>com.example:blacklist-words:txt</code> and its checksum along with maven settings that
+     * mirror all repositories to it.
+     *
+     * @param dir     the directory where to create the repositories and settings
+     * @param content the content of the artifact
+     * @return the settings file
+     * @throws IOException if an error occurs
+     */
+    static File createRepository(File dir, String content) throws IOException {
+        final File remote = new File(dir, "remote");
+        final File adir = new File(remote, "com/example/blacklist-words");
+        final File settings = new File(dir, "settings.xml");
+
+        FileUtils.writeStringToFile(new File(adir, "1.0/blacklist-words-1.0.txt"), content, Charsets.UTF_8);
+        FileUtils.writeStringToFile(new File(adir, "1.0/blacklist-words-1.0.txt.sha1"),
+                ArtifactResolverTest.sha1(content),
+                Charsets.UTF_8);
+        FileUtils.writeStringToFile(new File(adir, "maven-metadata.xml"),
+                "<metadata><groupId>com.example</groupId><artifactId>blacklist-words</artifactId>"
+                        + "<versioning><latest>1.0</latest><release>1.0</release>"
+                        + "<versions><version>1.0</version></versions></versioning></metadata>",
+                Charsets.UTF_8);
+        FileUtils.writeStringToFile(settings,
+                "<settings><localRepository>" + new File(dir, "local").getAbsolutePath()
+                        + "</localRepository><mirrors><mirror><id>test</id><mirrorOf>*</mirrorOf><url>"
+                        + remote.toURI() + "</url></mirror></mirrors></settings>",
+                Charsets.UTF_8);
+        return settings;
+    }
+
+    /**
+     * Replaces the settings with ones declaring the remote repository from an active profile.
+     *
+     * @param policies the release and snapshot policies for the repository
+     * @throws IOException if an error occurs
+     */
+    private void writeProfileSettings(String policies) throws IOException {
+        FileUtils.writeStringToFile(settings,
+                "<settings><localRepository>" + new File(rootdir, "local").getAbsolutePath()
+                        + "</localRepository><profiles><profile><id>test</id><repositories><repository>"
+                        + "<id>test</id><url>" + new File(rootdir, "remote").toURI() + "</url>" + policies
+                        + "</repository></repositories></profile></profiles>"
+                        + "<activeProfiles><activeProfile>test</activeProfile></activeProfiles></settings>",
+                Charsets.UTF_8);
+    }
+
+    static String sha1(String content) {
+        return Hashing.sha1()
+                .hashString(content, Charsets.UTF_8)
+                .toString();
+    }
+}
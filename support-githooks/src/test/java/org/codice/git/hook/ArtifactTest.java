@@ -36,6 +36,8 @@ import org.junit.Test;
 import com.google.common.base.Charsets;
 
 public class ArtifactTest {
+    private static final long TWO_DAYS = 2L * 24L * 60L * 60L * 1000L;
+
     // Configure the logging for this test
     static {
         ConfigureLogging cfg = new ConfigureLogging();
@@ -240,4 +242,152 @@ public class ArtifactTest {
         assertEquals("group:artifact:version:type:classifier", a.getMavenInfo());
         assertEquals("artifact.type", a.getMavenName());
     }
+
+    @Test
+    public void testDownloadUsingResolver() throws Exception {
+        final File settings = ArtifactResolverTest.createRepository(rootdir, "Bill\n");
+
+        GitIntegrationTest.writeToFile(aifile, "com.example:blacklist-words:RELEASE:txt,blacklist-words.txt");
+
+        a.download(settings.getAbsolutePath(), System.out);
+
+        assertEquals("Bill\n", FileUtils.readFileToString(repHandler.getBlacklistFile(), Charsets.UTF_8));
+    }
+
+    @Test
+    public void testDownloadUsingResolverWhenDisabled() throws Exception {
+        final File settings = ArtifactResolverTest.createRepository(rootdir, "Bill\n");
+
+        repHandler.setConfigString("githooks", null, Artifact.EMBEDDED_RESOLVER_SETTING, "false");
+        a.mvnInfo = "com.example:blacklist-words:RELEASE:txt";
+        a.mvnName = "blacklist-words.txt";
+
+        assertFalse(a.downloadUsingResolver(settings.getAbsolutePath(), System.out));
+        assertFalse(repHandler.getBlacklistFile()
+                .exists());
+    }
+
+    @Test
+    public void testDownloadWhenChecksumUnchanged() throws Exception {
+        final File settings = ArtifactResolverTest.createRepository(rootdir, "Bill\n");
+        final File blacklist = repHandler.getBlacklistFile();
+
+        GitIntegrationTest.writeToFile(aifile, "com.example:blacklist-words:RELEASE:txt,blacklist-words.txt");
+        a.download(settings.getAbsolutePath(), System.out);
+        assertEquals(ArtifactResolverTest.sha1("Bill\n"),
+                FileUtils.readFileToString(new File(basedir, "blacklist-words.sha1"), Charsets.UTF_8));
+        // change it locally to detect if it gets downloaded again
+        GitIntegrationTest.writeToFile(blacklist, "Local\n");
+        blacklist.setLastModified(System.currentTimeMillis() - TWO_DAYS);
+
+        a.download(settings.getAbsolutePath(), System.out);
+
+        assertEquals("Local\n", FileUtils.readFileToString(blacklist, Charsets.UTF_8));
+        assertFalse(a.isRefreshDue());
+    }
+
+    @Test
+    public void testDownloadWhenChecksumChanged() throws Exception {
+        final File settings = ArtifactResolverTest.createRepository(rootdir, "Bill\n");
+        final File blacklist = repHandler.getBlacklistFile();
+
+        GitIntegrationTest.writeToFile(aifile, "com.example:blacklist-words:RELEASE:txt,blacklist-words.txt");
+        GitIntegrationTest.writeToFile(new File(basedir, "blacklist-words.sha1"), ArtifactResolverTest.sha1("Old\n"));
+        GitIntegrationTest.writeToFile(blacklist, "Old\n");
+        blacklist.setLastModified(System.currentTimeMillis() - TWO_DAYS);
+
+        a.download(settings.getAbsolutePath(), System.out);
+
+        assertEquals("Bill\n", FileUtils.readFileToString(blacklist, Charsets.UTF_8));
+        assertEquals(ArtifactResolverTest.sha1("Bill\n"),
+                FileUtils.readFileToString(new File(basedir, "blacklist-words.sha1"), Charsets.UTF_8));
+    }
+
+    @Test
+    public void testReadInfoWithPolicy() throws Exception {
+        GitIntegrationTest.writeToFile(aifile, "a,b,never");
+
+        a.readInfo();
+
+        assertEquals("a", a.getMavenInfo());
+        assertEquals("b", a.getMavenName());
+        assertEquals("never", a.getRefreshPolicy()
+                .toString());
+    }
+
+    @Test
+    public void testConfiguredPolicyOverridesCachedOne() throws Exception {
+        GitIntegrationTest.writeToFile(aifile, "a,b,never");
+        repHandler.setConfigString("githooks", null, Artifact.REFRESH_POLICY_SETTING, "always");
+
+        a.readInfo();
+
+        assertEquals("always", a.getRefreshPolicy()
+                .toString());
+    }
+
+    @Test
+    public void testInvalidPolicyDefaultsToDaily() throws Exception {
+        repHandler.setConfigString("githooks", null, Artifact.REFRESH_POLICY_SETTING, "weekly");
+
+        assertEquals("daily", a.getRefreshPolicy()
+                .toString());
+    }
+
+    @Test
+    public void testDownloadCachesPolicyAtInstall() throws Exception {
+        final File blacklist = repHandler.getBlacklistFile();
+
+        GitIntegrationTest.writeToFile(aifile, "com.example:blacklist-words:RELEASE:txt,blacklist-words.txt");
+        GitIntegrationTest.writeToFile(blacklist, "Old\n");
+        repHandler.setConfigString("githooks", null, Artifact.REFRESH_POLICY_SETTING, "offline");
+
+        a.download("", System.out);
+
+        assertEquals("com.example:blacklist-words:RELEASE:txt,blacklist-words.txt,offline",
+                FileUtils.readFileToString(aifile, Charsets.UTF_8));
+    }
+
+    @Test
+    public void testDownloadWhenOffline() throws Exception {
+        final File settings = ArtifactResolverTest.createRepository(rootdir, "Bill\n");
+
+        GitIntegrationTest.writeToFile(aifile, "com.example:blacklist-words:RELEASE:txt,blacklist-words.txt,offline");
+
+        a.download(settings.getAbsolutePath(), System.out);
+
+        assertFalse(repHandler.getBlacklistFile()
+                .exists());
+    }
+
+    @Test
+    public void testDownloadWhenNeverRefreshed() throws Exception {
+        final File settings = ArtifactResolverTest.createRepository(rootdir, "Bill\n");
+        final File blacklist = repHandler.getBlacklistFile();
+
+        GitIntegrationTest.writeToFile(aifile, "com.example:blacklist-words:RELEASE:txt,blacklist-words.txt,never");
+        GitIntegrationTest.writeToFile(blacklist, "Old\n");
+        blacklist.setLastModified(System.currentTimeMillis() - TWO_DAYS);
+
+        assertFalse(a.isRefreshDue());
+        a.download(settings.getAbsolutePath(), System.out);
+
+        assertEquals("Old\n", FileUtils.readFileToString(blacklist, Charsets.UTF_8));
+    }
+
+    @Test
+    public void testDownloadWithInterval() throws Exception {
+        final File settings = ArtifactResolverTest.createRepository(rootdir, "Bill\n");
+        final File blacklist = repHandler.getBlacklistFile();
+
+        GitIntegrationTest.writeToFile(aifile, "com.example:blacklist-words:RELEASE:txt,blacklist-words.txt");
+        GitIntegrationTest.writeToFile(blacklist, "Old\n");
+        blacklist.setLastModified(System.currentTimeMillis() - 2L * 60L * 60L * 1000L);
+        repHandler.setConfigString("githooks", null, Artifact.REFRESH_POLICY_SETTING, "interval:60");
+
+        assertTrue(a.isRefreshDue());
+        a.download(settings.getAbsolutePath(), System.out);
+
+        assertEquals("Bill\n", FileUtils.readFileToString(blacklist, Charsets.UTF_8));
+    }
 }
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.codice.git.AuditListener;
+import org.codice.git.ConfigureLogging;
+import org.codice.git.MockRepoHandler;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class AuditTest {
+    // Configure the logging for this test
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    @Test
+    public void testExecuteHook() throws Exception {
+        final Audit audit = new Audit(new AuditRepoHandler());
+
+        assertTrue(audit.executeHook(new String[0]));
+        assertEquals("{\"scope\":\"all\",\"paths\":3,\"clean\":false,\"findings\":[\n"
+                        + "{\"path\":\"App.java\",\"commit\":\"aaa\",\"type\":\"content\",\"words\":[\"Bill\"]},\n"
+                        + "{\"path\":\"App.java\",\"commit\":\"ccc\",\"type\":\"content\",\"words\":[\"WHAT\"]},\n"
+                        + "{\"path\":\"Bill.txt\",\"commit\":\"bbb\",\"type\":\"path\",\"words\":[\"Bill\"]}\n"
+                        + "]}\n",
+                report(audit, "all"));
+    }
+
+    @Test
+    public void testExecuteHookOnWorkTree() throws Exception {
+        final AuditRepoHandler handler = new AuditRepoHandler();
+
+        handler.setDirtyWords("Ray");
+        final Audit audit = new Audit(handler);
+
+        assertFalse(audit.executeHook(new String[] {Audit.WORKTREE_OPTION}));
+        assertEquals("{\"scope\":\"worktree\",\"paths\":1,\"clean\":true,\"findings\":[]}\n",
+                report(audit, "worktree"));
+    }
+
+    @Test
+    public void testExecuteHookWithInvalidArguments() throws Exception {
+        assertTrue(new Audit(new AuditRepoHandler()).executeHook(new String[] {Audit.WORKTREE_OPTION,
+                "HEAD"}));
+        assertTrue(new Audit(new AuditRepoHandler()).executeHook(new String[] {Audit.OUTPUT_OPTION}));
+    }
+
+    private static String report(Audit audit, String scope) {
+        final StringWriter sw = new StringWriter();
+        final PrintWriter out = new PrintWriter(sw);
+
+        audit.writeReport(out, scope);
+        out.flush();
+        return sw.toString()
+                .replace(System.lineSeparator(), "\n");
+    }
+
+    /**
+     * Repository handler which streams the same few paths and contents for any revisions and a
+     * single clean file for the working tree.
+     */
+    private static class AuditRepoHandler extends MockRepoHandler {
+        AuditRepoHandler() {
+            setDirtyWords(PreCommitTest.DIRTY_WORD_LIST);
+        }
+
+        @Override
+        public void streamBlobs(List<String> revs, AuditListener listener, int threads)
+                throws Exception {
+            listener.path("aaa", "App.java");
+            content(listener, "aaa", "App.java", "Hello Bill\n");
+            content(listener, "ccc", "App.java", "Hello what\nHello\n");
+            listener.path("bbb", "Bill.txt");
+            content(listener, "bbb", "Bill.txt", "clean\n");
+            listener.path("bbb", "Clean.txt");
+        }
+
+        @Override
+        public void streamWorkTree(AuditListener listener, int threads) throws Exception {
+            listener.path(null, "App.java");
+            content(listener, null, "App.java", "Hello Bill\n");
+        }
+
+        private static void content(AuditListener listener, String commit, String path, String content)
+                throws Exception {
+            final byte[] raw = content.getBytes(Charsets.UTF_8);
+
+            listener.content(commit, path, raw, 0, raw.length);
+        }
+    }
+}
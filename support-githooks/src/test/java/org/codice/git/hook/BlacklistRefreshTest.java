@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.apache.commons.io.FileUtils;
+import org.codice.git.ConfigureLogging;
+import org.codice.git.GitHandler;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class BlacklistRefreshTest extends RepositoryTestCase {
+    // Configure the logging for this test
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    private static final long TWO_DAYS = 2L * 24L * 60L * 60L * 1000L;
+
+    private GitHandler handler;
+
+    private File blacklist;
+
+    private String settings;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        final File basedir = new File(db.getWorkTree(), "gitsetup");
+
+        basedir.mkdirs();
+        this.handler = new GitHandler(db.getWorkTree(), db.getDirectory(), basedir);
+        this.blacklist = handler.getBlacklistFile();
+        this.settings = ArtifactResolverTest.createRepository(getTemporaryDirectory(), "Bill\n")
+                .getAbsolutePath();
+        FileUtils.writeStringToFile(new File(basedir, "blacklist-words.mvn"),
+                "com.example:blacklist-words:1.0:txt,blacklist-words.txt",
+                Charsets.UTF_8);
+        handler.setConfigString("githooks", null, BlacklistRefresh.BACKGROUND_SETTING, "true");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        handler.close();
+        super.tearDown();
+    }
+
+    @Test
+    public void testRefreshInBackground() throws Exception {
+        writeBlacklist(System.currentTimeMillis() - TWO_DAYS);
+
+        final Process p = BlacklistRefresh.refresh(handler, settings);
+
+        assertNotNull(p);
+        assertEquals("Old\n", FileUtils.readFileToString(blacklist, Charsets.UTF_8));
+        assertEquals(0, p.waitFor());
+        assertEquals("Bill\n", FileUtils.readFileToString(blacklist, Charsets.UTF_8));
+    }
+
+    @Test
+    public void testRefreshWhenNotDue() throws Exception {
+        writeBlacklist(System.currentTimeMillis());
+
+        assertNull(BlacklistRefresh.refresh(handler, settings));
+        assertEquals("Old\n", FileUtils.readFileToString(blacklist, Charsets.UTF_8));
+    }
+
+    @Test
+    public void testRefreshWithoutBlacklistIsDoneRightAway() throws Exception {
+        assertNull(BlacklistRefresh.refresh(handler, settings));
+        assertEquals("Bill\n", FileUtils.readFileToString(blacklist, Charsets.UTF_8));
+    }
+
+    @Test
+    public void testRefreshWhenDisabledIsDoneRightAway() throws Exception {
+        handler.setConfigString("githooks", null, BlacklistRefresh.BACKGROUND_SETTING, "false");
+        writeBlacklist(System.currentTimeMillis() - TWO_DAYS);
+
+        assertNull(BlacklistRefresh.refresh(handler, settings));
+        assertEquals("Bill\n", FileUtils.readFileToString(blacklist, Charsets.UTF_8));
+    }
+
+    @Test
+    public void testRunWhenAlreadyRefreshing() throws Exception {
+        final File lockFile = new File(handler.getCacheDir(), BlacklistRefresh.LOCK_FILE);
+
+        writeBlacklist(System.currentTimeMillis() - TWO_DAYS);
+        lockFile.getParentFile()
+                .mkdirs();
+        final RandomAccessFile raf = new RandomAccessFile(lockFile, "rw");
+
+        try {
+            raf.getChannel()
+                    .lock();
+            assertNull(BlacklistRefresh.refresh(handler, settings));
+            BlacklistRefresh.run(handler, settings);
+        } finally {
+            raf.close();
+        }
+        assertEquals("Old\n", FileUtils.readFileToString(blacklist, Charsets.UTF_8));
+    }
+
+    private void writeBlacklist(long lastModified) throws Exception {
+        FileUtils.writeStringToFile(blacklist, "Old\n", Charsets.UTF_8);
+        blacklist.setLastModified(lastModified);
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.codice.git.ConfigureLogging;
+import org.codice.git.MockRepoHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClassDataSharingTest {
+    // Configure the logging for this test
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    private File rootdir;
+
+    private MockRepoHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        this.rootdir = File.createTempFile("githook_test_", "_tmp");
+        final File basedir = new File(rootdir, "gitsetup");
+        final File metadir = new File(rootdir, ".git");
+
+        if (!rootdir.delete() || !basedir.mkdirs() || !metadir.mkdirs()) {
+            throw new IOException("Cannot create " + rootdir);
+        }
+        this.handler = new MockRepoHandler(basedir);
+        handler.setMetadir(metadir);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        System.clearProperty("githooks." + ClassDataSharing.SETTING);
+        FileUtils.deleteQuietly(rootdir);
+    }
+
+    @Test
+    public void testIsSupported() throws Exception {
+        assertFalse(ClassDataSharing.isSupported("1.8"));
+        assertFalse(ClassDataSharing.isSupported("11"));
+        assertTrue(ClassDataSharing.isSupported("13"));
+        assertTrue(ClassDataSharing.isSupported("17"));
+        assertFalse(ClassDataSharing.isSupported("bogus"));
+        assertFalse(ClassDataSharing.isSupported(null));
+    }
+
+    @Test
+    public void testGenerateWhenDisabled() throws Exception {
+        System.setProperty("githooks." + ClassDataSharing.SETTING, "false");
+
+        assertNull(ClassDataSharing.generate(handler, "", System.getProperty("java.class.path")));
+        assertFalse(new File(handler.getBasedir(), ClassDataSharing.ARCHIVE_FILE).exists());
+    }
+
+    @Test
+    public void testGenerateWithoutClasspath() throws Exception {
+        assertNull(ClassDataSharing.generate(handler, "", ""));
+    }
+}
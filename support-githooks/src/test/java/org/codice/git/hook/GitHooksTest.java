@@ -14,6 +14,7 @@
 package org.codice.git.hook;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -29,6 +30,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
+
 public class GitHooksTest {
     // Configure the logging for this test
     static {
@@ -78,6 +81,8 @@ public class GitHooksTest {
         for (final String name : GitHooks.HOOKS) {
             GitIntegrationTest.writeToFile(new File(hookdir, name), name);
         }
+        GitIntegrationTest.writeToFile(new File(hookdir, GitHooks.HOOKS_JAR), GitHooks.HOOKS_JAR);
+        GitIntegrationTest.writeToFile(new File(hookdir, GitHooks.HOOKS_BINARY), GitHooks.HOOKS_BINARY);
         // create classpath.txt, blacklist-words.txt, blacklist-words.mvn files
         GitIntegrationTest.writeToFile(new File(basedir, "classpath.txt"), "classpath.txt");
         GitIntegrationTest.writeToFile(new File(basedir, "commit-prefix.txt"), "commit-prefix.txt");
@@ -87,6 +92,10 @@ public class GitHooksTest {
                 "blacklist-words.txt");
         GitIntegrationTest.writeToFile(new File(basedir, "blacklist-words.mvn"),
                 "blacklist-words.mvn");
+        GitIntegrationTest.writeToFile(new File(basedir, ClassDataSharing.ARCHIVE_FILE),
+                ClassDataSharing.ARCHIVE_FILE);
+        GitIntegrationTest.writeToFile(new File(basedir, ClassDataSharing.KEY_FILE),
+                ClassDataSharing.KEY_FILE);
 
         GitHooks.clean(repHandler);
 
@@ -117,4 +126,54 @@ public class GitHooksTest {
             assertTrue(files.contains(name));
         }
     }
+
+    @Test
+    public void testInstallWithHooksJar() throws Exception {
+        final File jar = new File(rootdir, "support-githooks-hooks.jar");
+
+        GitIntegrationTest.writeToFile(jar, "jar");
+        GitHooks.install(repHandler, "", jar);
+
+        final File installed = new File(hookdir, GitHooks.HOOKS_JAR);
+
+        assertTrue(installed.isFile());
+        assertEquals("jar", FileUtils.readFileToString(installed, Charsets.UTF_8));
+        for (final String name : GitHooks.HOOKS) {
+            assertTrue(name,
+                    FileUtils.readFileToString(new File(hookdir, name), Charsets.UTF_8)
+                            .contains("CP=\"" + installed.getAbsolutePath()
+                                    .replace('\\', '/') + '"'));
+        }
+    }
+
+    @Test
+    public void testInstallWithHooksBinary() throws Exception {
+        final File binary = new File(rootdir, "githooks-native");
+
+        GitIntegrationTest.writeToFile(binary, "binary");
+        GitHooks.install(repHandler, "", null, binary);
+
+        final File installed = new File(hookdir, GitHooks.HOOKS_BINARY);
+
+        assertTrue(installed.isFile());
+        assertTrue(installed.canExecute());
+        for (final String name : GitHooks.HOOKS) {
+            assertTrue(name,
+                    FileUtils.readFileToString(new File(hookdir, name), Charsets.UTF_8)
+                            .contains('"' + installed.getAbsolutePath()
+                                    .replace('\\', '/') + "\" -Dgithooks.hookStart="));
+        }
+    }
+
+    @Test
+    public void testInstallWithMissingHooksJar() throws Exception {
+        GitHooks.install(repHandler, "", new File(rootdir, "missing.jar"));
+
+        assertFalse(new File(hookdir, GitHooks.HOOKS_JAR).exists());
+        for (final String name : GitHooks.HOOKS) {
+            assertFalse(name,
+                    FileUtils.readFileToString(new File(hookdir, name), Charsets.UTF_8)
+                            .contains("@{HOOKS"));
+        }
+    }
 }
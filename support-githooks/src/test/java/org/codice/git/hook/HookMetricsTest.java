@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.codice.git.ConfigureLogging;
+import org.codice.git.MockRepoHandler;
+import org.codice.git.RepositoryHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class HookMetricsTest {
+    // Configure the logging for this test
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dir = File.createTempFile("githook_test_", "_tmp");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Cannot create " + dir);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testToJson() throws Exception {
+        final HookMetrics metrics = new HookMetrics("org.codice.git.hook.PreCommit");
+
+        metrics.set("daemon", true);
+        metrics.addPhase("diff", 1500000L);
+        metrics.addPhase("scan", 250000L);
+        metrics.addPhase("scan", 250000L);
+        metrics.count("files", 2L);
+        metrics.count("files", 1L);
+        metrics.count("scannedChars", 42L);
+        final String json = metrics.toJson(1, new IOException("a \"quoted\"\nmessage"));
+
+        assertTrue(json, json.startsWith("{\"timestamp\":\""));
+        assertTrue(json,
+                json.contains(",\"hook\":\"PreCommit\",\"daemon\":true,\"exitCode\":1,"
+                        + "\"error\":\"a \\\"quoted\\\"\\nmessage\",\"totalMillis\":"));
+        assertTrue(json,
+                json.endsWith(",\"phases\":{\"diff\":1.5,\"scan\":0.5},"
+                        + "\"counters\":{\"files\":3,\"scannedChars\":42}}"));
+        assertEquals(3L, metrics.getCount("files"));
+    }
+
+    @Test
+    public void testWriteAppendsJsonLines() throws Exception {
+        final MockRepoHandler repHandler = new MockRepoHandler(dir);
+        final File file = new File(new File(dir, "metrics"), "hooks.json");
+
+        repHandler.setConfigString(RepositoryHandler.SETTINGS_SECTION,
+                null,
+                HookMetrics.FILE_SETTING,
+                "metrics/hooks.json");
+        new HookMetrics("CommitMsg").write(repHandler, 0, null);
+        new HookMetrics("PreCommit").write(repHandler, 1, null);
+        final List<String> lines = FileUtils.readLines(file, Charsets.UTF_8);
+
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0)
+                .contains("\"hook\":\"CommitMsg\",\"exitCode\":0,"));
+        assertTrue(lines.get(1), lines.get(1)
+                .contains("\"hook\":\"PreCommit\",\"exitCode\":1,"));
+    }
+
+    @Test
+    public void testWriteIsDisabledByDefault() throws Exception {
+        final MockRepoHandler repHandler = new MockRepoHandler(dir);
+
+        new HookMetrics("PreCommit").write(repHandler, 0, null);
+        assertEquals(0, dir.list().length);
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.codice.git.ConfigureLogging;
+import org.codice.git.GitIntegrationTest;
+import org.codice.git.RepositoryHandler;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class HookServerTest extends RepositoryTestCase {
+    // Configure the logging for this test
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    private File basedir;
+
+    private File portFile;
+
+    private HookServer server;
+
+    private Thread thread;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        // set fake user home directory
+        System.setProperty("user.home", getTemporaryDirectory().getAbsolutePath());
+        this.basedir = new File(db.getWorkTree(), "gitsetup");
+        this.portFile = new File(getTemporaryDirectory(), "hookd.port");
+        basedir.mkdirs();
+        FileUtils.writeStringToFile(new File(basedir, "blacklist-words.txt"), "Bill\n", Charsets.UTF_8);
+        this.server = new HookServer(portFile, 60000L);
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.serve();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+        for (int i = 0; (i < 100) && !portFile.exists(); i++) {
+            Thread.sleep(50L);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        thread.join(5000L);
+        super.tearDown();
+    }
+
+    @Test
+    public void testServerIsAdvertised() throws Exception {
+        assertEquals(server.getPort() + " " + server.getToken() + "\n",
+                FileUtils.readFileToString(portFile, Charsets.UTF_8));
+        assertTrue(HookServer.isRunning(portFile));
+    }
+
+    @Test
+    public void testRequestIsServed() throws Exception {
+        assertEquals("pre-commit hook invoked with 2 arguments\n"
+                        + "  arg[0]: a\n"
+                        + "  arg[1]: b c\n"
+                        + HookServer.EXIT_MARKER + "0\n",
+                send(server.getToken(), "org.codice.git.hook.noops.PreCommit", "a", "b c"));
+    }
+
+    @Test
+    public void testDirtyWordsAreReportedAndRepositoryIsReused() throws Exception {
+        final Git git = new Git(db);
+
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "SomeFile.txt"), "Hello World.\n");
+        git.add()
+                .addFilepattern("SomeFile.txt")
+                .call();
+        git.commit()
+                .setMessage("Initial commit")
+                .call();
+        assertEquals("Commit is clean.\n" + HookServer.EXIT_MARKER + "0\n",
+                send(server.getToken(), "org.codice.git.hook.PreCommit"));
+        GitIntegrationTest.writeToFile(new File(db.getWorkTree(), "SomeFile.txt"), "Hello Bill.\n");
+        git.add()
+                .addFilepattern("SomeFile.txt")
+                .call();
+        final String response = send(server.getToken(), "org.codice.git.hook.PreCommit");
+
+        assertTrue(response, response.contains("\tBill\n"));
+        assertTrue(response, response.endsWith(HookServer.EXIT_MARKER + Hook.ERROR_CODE + "\n"));
+    }
+
+    @Test
+    public void testIdleMinutesCanBeSetAsSystemProperty() throws Exception {
+        final String property = RepositoryHandler.SETTINGS_SECTION + '.' + HookServer.IDLE_SETTING;
+
+        System.setProperty(property, "5");
+        try {
+            assertEquals(5, HookServer.getIdleMinutes(new File(".")));
+        } finally {
+            System.clearProperty(property);
+        }
+    }
+
+    @Test
+    public void testRequestWithInvalidTokenIsRejected() throws Exception {
+        final Socket s = new Socket(InetAddress.getByName(null), server.getPort());
+
+        try {
+            final OutputStream out = s.getOutputStream();
+
+            out.write("bad-token\n".getBytes(Charsets.UTF_8));
+            out.flush();
+            assertEquals("", IOUtils.toString(s.getInputStream(), Charsets.UTF_8));
+        } finally {
+            s.close();
+        }
+    }
+
+    private String send(String token, String hookClass, String... args) throws IOException {
+        final Socket s = new Socket(InetAddress.getByName(null), server.getPort());
+
+        try {
+            final StringBuilder sb = new StringBuilder();
+
+            sb.append(token)
+                    .append('\n')
+                    .append(db.getWorkTree()
+                            .getAbsolutePath())
+                    .append('\n')
+                    .append(db.getDirectory()
+                            .getAbsolutePath())
+                    .append("\n\n")
+                    .append(basedir.getAbsolutePath())
+                    .append("\n\n")
+                    .append(hookClass)
+                    .append('\n')
+                    .append(args.length)
+                    .append('\n');
+            for (final String a: args) {
+                sb.append(a)
+                        .append('\n');
+            }
+            final OutputStream out = s.getOutputStream();
+
+            out.write(sb.toString()
+                    .getBytes(Charsets.UTF_8));
+            out.flush();
+            return IOUtils.toString(s.getInputStream(), Charsets.UTF_8);
+        } finally {
+            s.close();
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.Set;
 import org.apache.commons.io.FileUtils;
 import org.codice.git.ConfigureLogging;
 import org.codice.git.MockRepoHandler;
+import org.codice.git.RepositoryHandler;
 import org.eclipse.jgit.junit.RepositoryTestCase;
 import org.junit.After;
 import org.junit.Before;
@@ -89,6 +90,24 @@ public class HookTest extends RepositoryTestCase {
         assertFoundAndClear(found, "REGEX:System\\.ouch\\.print(f|ln)?");
     }
 
+    @Test
+    public void testRunRecordsScanMetricsOnceCompleted() throws Exception {
+        final HookMetrics metrics = new HookMetrics(ScanningHook.class.getName());
+
+        // never look for a new blacklist from the test
+        System.setProperty("githooks." + Artifact.REFRESH_POLICY_SETTING, "offline");
+        try {
+            assertEquals(Hook.ERROR_CODE,
+                    Hook.run(repHandler, "", ScanningHook.class.getName(), new String[] {"Hello Bill.", "Hello Ray."},
+                            metrics));
+        } finally {
+            System.clearProperty("githooks." + Artifact.REFRESH_POLICY_SETTING);
+        }
+        assertEquals(21L, metrics.getCount("scannedChars"));
+        assertTrue(metrics.toJson(0, null)
+                .contains("\"scan\":"));
+    }
+
     @Test
     public void testHasDirtyWords() throws Exception {
         final Hook hook = new Hook(repHandler);
@@ -104,6 +123,24 @@ public class HookTest extends RepositoryTestCase {
         assertFalse(hook.hasDirtyWords());
     }
 
+    public static class ScanningHook extends Hook {
+        public ScanningHook(RepositoryHandler handler) throws IOException {
+            super(handler);
+        }
+
+        @Override
+        public boolean executeHook(String[] args) throws Exception {
+            final Set<String> found = new HashSet<String>();
+            boolean dirty = false;
+
+            for (final String a: args) {
+                dirty |= containsDirtyWords(a, found);
+            }
+            // nothing is recorded until the hook completes
+            return dirty && (metrics.getCount("scannedChars") == 0L);
+        }
+    }
+
     private static void assertFoundAndClear(Set<String> found, String... expected) {
         assertEquals(expected.length, found.size());
         for (final String e: expected) {
@@ -16,10 +16,21 @@ package org.codice.git.hook;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
 import org.codice.git.ConfigureLogging;
+import org.codice.git.DiffListener;
 import org.codice.git.MockRepoHandler;
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
+
 public class PreCommitTest {
     protected static final String COMMIT_PREFIX = "PREFIX";
 
@@ -79,4 +90,99 @@ public class PreCommitTest {
         assertFalse(preCommit.executeHook(null));
 
     }
+
+    @Test
+    public void testExecuteHookReportsHitsCappedPerFile() throws Exception {
+        final MockRepoHandler repHandler = new MockRepoHandler() {
+            @Override
+            public void streamDiff(DiffListener listener, int threads) throws Exception {
+                final byte[] raw = "bill and bill\nwhat\nBill\n".getBytes(Charsets.UTF_8);
+
+                listener.startFile("dirty-file");
+                listener.addedLines("dirty-file", raw, 0, raw.length, new int[] {2, 5, 6});
+                listener.endFile("dirty-file");
+                listener.startFile("other-file");
+                listener.addedLines("other-file", raw, 14, 19, new int[] {7});
+                listener.endFile("other-file");
+            }
+        };
+        final PrintStream out = System.out;
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        repHandler.setDirtyWords(DIRTY_WORD_LIST);
+        System.setProperty("githooks." + PreCommit.MAX_HITS_SETTING, "3");
+        System.setOut(new PrintStream(baos, true, "UTF-8"));
+        try {
+            assertTrue(new PreCommit(repHandler).executeHook(null));
+        } finally {
+            System.setOut(out);
+            System.clearProperty("githooks." + PreCommit.MAX_HITS_SETTING);
+        }
+        final String output = baos.toString("UTF-8")
+                .replace(System.lineSeparator(), "\n");
+
+        assertTrue(output, output.contains("In files:\n"
+                + "\tdirty-file\n"
+                + "\t\t2:1: Bill\n"
+                + "\t\t2:10: Bill\n"
+                + "\t\t5:1: WHAT\n"
+                + "\t\t... more not shown\n"
+                + "\tother-file\n"
+                + "\t\t7:1: WHAT\n"
+                + "To commit anyway"));
+    }
+
+    @Test
+    public void testExecuteHookWithScopedDirtyWords() throws Exception {
+        final MockRepoHandler repHandler = new MockRepoHandler();
+
+        repHandler.setDirtyWords("Bill");
+        repHandler.setScopedDirtyWords("vendor/", "");
+        repHandler.setScopedDirtyWords("src/", "Bill,madness");
+        final PreCommit preCommit = new PreCommit(repHandler);
+
+        repHandler.setDiffString("+++ b/vendor/lib.js\n+bill\n");
+        assertFalse(preCommit.executeHook(null));
+        repHandler.setDiffString("+++ b/vendor/lib.js\n+bill\n+++ b/src/App.java\n+march madness\n");
+        assertTrue(preCommit.executeHook(null));
+        repHandler.setDiffString("+++ b/README.md\n+march madness\n");
+        assertFalse(preCommit.executeHook(null));
+    }
+
+    @Test
+    public void testExecuteHookDoesNotReuseCleanChangesFromOtherScopes() throws Exception {
+        final File metadir = File.createTempFile("githook_test_", "_tmp");
+        final List<String> paths = new ArrayList<String>();
+        final MockRepoHandler repHandler = new MockRepoHandler() {
+            @Override
+            public void streamDiff(DiffListener listener, int threads) throws Exception {
+                for (final String path: paths) { // same blob pair every time
+                    listener.startFile(path);
+                    if (!listener.skipContent(path, "0123", "4567")) {
+                        listener.addedLines(path, "bill\n");
+                    }
+                    listener.endFile(path);
+                }
+            }
+        };
+
+        if (!metadir.delete() || !metadir.mkdir()) {
+            throw new IOException("Cannot create " + metadir);
+        }
+        try {
+            repHandler.setMetadir(metadir);
+            repHandler.setDirtyWords("Bill");
+            repHandler.setScopedDirtyWords("vendor/", "");
+            final PreCommit preCommit = new PreCommit(repHandler);
+
+            paths.add("vendor/a.txt");
+            assertFalse(preCommit.executeHook(null));
+            paths.set(0, "src/a.txt");
+            assertTrue(preCommit.executeHook(null));
+            paths.set(0, "vendor/b.txt");
+            assertFalse(preCommit.executeHook(null));
+        } finally {
+            FileUtils.deleteQuietly(metadir);
+        }
+    }
 }
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.codice.git.CommitListener;
+import org.codice.git.ConfigureLogging;
+import org.codice.git.DiffListener;
+import org.codice.git.MockRepoHandler;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class RangeScanTest {
+    // Configure the logging for this test
+    static {
+        ConfigureLogging cfg = new ConfigureLogging();
+    }
+
+    @Test
+    public void testExecuteHook() throws Exception {
+        final RangeScan scan = new RangeScan(new CommitsRepoHandler());
+
+        assertTrue(scan.executeHook(new String[] {"origin/master..HEAD"}));
+        assertEquals("{\"range\":\"origin/master..HEAD\",\"commits\":3,\"clean\":false,\"findings\":[\n"
+                        + "{\"commit\":\"aaa\",\"type\":\"message\",\"words\":[\"Bill\"]},\n"
+                        + "{\"commit\":\"aaa\",\"type\":\"file\",\"path\":\"Bill\\\"s.txt\",\"words\":[\"Bill\"]},\n"
+                        + "{\"commit\":\"ccc\",\"type\":\"file\",\"path\":\"App.java\",\"words\":[\"REGEX:System\\\\.ouch\\\\.print(f|ln)?\",\"WHAT\"]}\n"
+                        + "]}\n",
+                report(scan, "origin/master..HEAD"));
+    }
+
+    @Test
+    public void testExecuteHookWhenClean() throws Exception {
+        final CommitsRepoHandler handler = new CommitsRepoHandler();
+
+        handler.setDirtyWords("Ray");
+        final RangeScan scan = new RangeScan(handler);
+
+        assertFalse(scan.executeHook(new String[] {"HEAD"}));
+        assertEquals("{\"range\":\"HEAD\",\"commits\":3,\"clean\":true,\"findings\":[]}\n",
+                report(scan, "HEAD"));
+    }
+
+    @Test
+    public void testExecuteHookWithoutRange() throws Exception {
+        assertTrue(new RangeScan(new CommitsRepoHandler()).executeHook(new String[0]));
+    }
+
+    private static String report(RangeScan scan, String range) {
+        final StringWriter sw = new StringWriter();
+        final PrintWriter out = new PrintWriter(sw);
+
+        scan.writeReport(out, range);
+        out.flush();
+        return sw.toString()
+                .replace(System.lineSeparator(), "\n");
+    }
+
+    /**
+     * Repository handler which streams the same 3 commits for any ranges.
+     */
+    private static class CommitsRepoHandler extends MockRepoHandler {
+        CommitsRepoHandler() {
+            setDirtyWords(PreCommitTest.DIRTY_WORD_LIST);
+        }
+
+        @Override
+        public void streamCommits(String range, CommitListener listener, int threads)
+                throws Exception {
+            commit(listener, "ccc", "PREFIX-3 clean message", "App.java", "System.ouch.println(what);\n");
+            commit(listener, "bbb", "PREFIX-2 clean message", "Clean.txt", "clean\n");
+            commit(listener, "aaa", "PREFIX-1 fixed Bill's bug", "Bill\"s.txt", "clean\n");
+        }
+
+        private static void commit(CommitListener listener, String id, String message, String path,
+                String lines) throws Exception {
+            final DiffListener diffListener = listener.startCommit(id, message);
+            final byte[] raw = lines.getBytes(Charsets.UTF_8);
+
+            if (diffListener != null) {
+                diffListener.startFile(path);
+                diffListener.addedLines(path, raw, 0, raw.length);
+                diffListener.endFile(path);
+            }
+            listener.endCommit(id);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) Codice Foundation
+ * <p/>
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ */
+package org.codice.git.hook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RefreshPolicyTest {
+    private static final long MINUTE = 60L * 1000L;
+
+    @Test
+    public void testAlways() throws Exception {
+        final RefreshPolicy p = RefreshPolicy.parse("always");
+
+        assertTrue(p.isDue(System.currentTimeMillis()));
+        assertFalse(p.isOffline());
+    }
+
+    @Test
+    public void testDaily() throws Exception {
+        final RefreshPolicy p = RefreshPolicy.parse(" Daily ");
+
+        assertFalse(p.isDue(System.currentTimeMillis() - 60L * MINUTE));
+        assertTrue(p.isDue(System.currentTimeMillis() - 24L * 60L * MINUTE));
+        assertEquals("daily", p.toString());
+    }
+
+    @Test
+    public void testInterval() throws Exception {
+        final RefreshPolicy p = RefreshPolicy.parse("interval:30");
+
+        assertFalse(p.isDue(System.currentTimeMillis() - 10L * MINUTE));
+        assertTrue(p.isDue(System.currentTimeMillis() - 30L * MINUTE));
+    }
+
+    @Test
+    public void testNever() throws Exception {
+        final RefreshPolicy p = RefreshPolicy.parse("never");
+
+        assertFalse(p.isDue(0L));
+        assertFalse(p.isOffline());
+    }
+
+    @Test
+    public void testOffline() throws Exception {
+        final RefreshPolicy p = RefreshPolicy.parse("offline");
+
+        assertFalse(p.isDue(0L));
+        assertTrue(p.isOffline());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid() throws Exception {
+        RefreshPolicy.parse("weekly");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidInterval() throws Exception {
+        RefreshPolicy.parse("interval:-5");
+    }
+}